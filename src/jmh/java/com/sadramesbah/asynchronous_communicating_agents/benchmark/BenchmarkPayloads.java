@@ -0,0 +1,57 @@
+package com.sadramesbah.asynchronous_communicating_agents.benchmark;
+
+import com.sadramesbah.asynchronous_communicating_agents.handler.BinaryMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.handler.JsonMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+
+// builds valid messages of every format whose body has the requested number of characters
+final class BenchmarkPayloads {
+
+  private BenchmarkPayloads() {
+  }
+
+  static String message(MessageType messageType, int bodySize) throws Exception {
+    return switch (messageType) {
+      case JSON -> json(bodySize);
+      case XML -> xml(bodySize);
+      case SOAP -> soap(bodySize);
+      case BINARY -> binary(bodySize);
+    };
+  }
+
+  static String json(int bodySize) {
+    return "{\"MessageID\":10854,\"MessageTitle\":\"Benchmark Title\",\"MessageBody\":\""
+        + body(bodySize) + "\",\"CreationTime\":\"2024-12-20T11:25:00Z\","
+        + "\"LastModified\":\"2024-12-20T11:50:00Z\",\"LastAgent\":\"Agent-108\","
+        + "\"Status\":\"Active\"}";
+  }
+
+  static String xml(int bodySize) {
+    return "<Message><MessageID>10853</MessageID><MessageTitle>Benchmark Title</MessageTitle>"
+        + "<MessageBody>" + body(bodySize) + "</MessageBody>"
+        + "<CreationTime>2024-12-20T10:25:00Z</CreationTime>"
+        + "<LastModified>2024-12-20T11:45:00Z</LastModified><LastAgent>Agent-109</LastAgent>"
+        + "<Status>Active</Status></Message>";
+  }
+
+  static String soap(int bodySize) {
+    return "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+        + "<soapenv:Header/><soapenv:Body>" + xml(bodySize) + "</soapenv:Body>"
+        + "</soapenv:Envelope>";
+  }
+
+  // the JSON payload converted to the binary format and encoded with Base64
+  static String binary(int bodySize) throws Exception {
+    return new BinaryMessageHandler().toBinaryString(
+        new JsonMessageHandler().parse(json(bodySize)));
+  }
+
+  private static String body(int bodySize) {
+    StringBuilder body = new StringBuilder(bodySize);
+    while (body.length() < bodySize) {
+      body.append("Benchmark body text ");
+    }
+    body.setLength(bodySize);
+    return body.toString();
+  }
+}
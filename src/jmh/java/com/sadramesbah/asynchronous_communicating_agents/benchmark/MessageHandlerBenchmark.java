@@ -0,0 +1,127 @@
+package com.sadramesbah.asynchronous_communicating_agents.benchmark;
+
+import com.sadramesbah.asynchronous_communicating_agents.handler.BinaryMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.handler.JsonMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageHandlerRegistry;
+import com.sadramesbah.asynchronous_communicating_agents.handler.SoapMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.handler.XmlMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.message.BinaryMessage;
+import com.sadramesbah.asynchronous_communicating_agents.message.JsonMessage;
+import com.sadramesbah.asynchronous_communicating_agents.message.XmlMessage;
+import jakarta.xml.soap.SOAPMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.concurrent.TimeUnit;
+
+// measures parsing and serialization of each handler on its own for every body size
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-jmh.xml")
+@Threads(1)
+public class MessageHandlerBenchmark {
+
+  @Param({"200", "10240", "1048576"})
+  private int bodySize;
+
+  private JsonMessageHandler jsonHandler;
+  private XmlMessageHandler xmlHandler;
+  private SoapMessageHandler soapHandler;
+  private BinaryMessageHandler binaryHandler;
+  private String jsonMessage;
+  private String xmlMessage;
+  private String soapMessage;
+  private byte[] binaryMessage;
+
+  @Setup
+  public void setUp() throws Exception {
+    MessageHandlerRegistry handlerRegistry = MessageHandlerRegistry.defaultRegistry();
+    jsonHandler = handlerRegistry.getJsonHandler();
+    xmlHandler = handlerRegistry.getXmlHandler();
+    soapHandler = handlerRegistry.getSoapHandler();
+    binaryHandler = handlerRegistry.getBinaryHandler();
+    jsonMessage = BenchmarkPayloads.json(bodySize);
+    xmlMessage = BenchmarkPayloads.xml(bodySize);
+    soapMessage = BenchmarkPayloads.soap(bodySize);
+    binaryMessage = binaryHandler.toBytes(jsonHandler.parse(jsonMessage));
+  }
+
+  @Benchmark
+  public JsonMessage parseJson() throws Exception {
+    return jsonHandler.parse(jsonMessage);
+  }
+
+  @Benchmark
+  public String toJsonString(Parsed parsed) throws Exception {
+    return jsonHandler.toJsonString(parsed.jsonMessage);
+  }
+
+  @Benchmark
+  public XmlMessage parseXml() throws Exception {
+    return xmlHandler.parse(xmlMessage);
+  }
+
+  @Benchmark
+  public String toXmlString(Parsed parsed) throws Exception {
+    return xmlHandler.toXmlString(parsed.xmlMessage);
+  }
+
+  @Benchmark
+  public SOAPMessage parseSoap() throws Exception {
+    return soapHandler.parse(soapMessage);
+  }
+
+  @Benchmark
+  public String toSoapString(Parsed parsed) throws Exception {
+    return soapHandler.toSoapString(parsed.soapMessage);
+  }
+
+  @Benchmark
+  public BinaryMessage parseBinary() throws Exception {
+    return binaryHandler.parse(binaryMessage);
+  }
+
+  @Benchmark
+  public byte[] toBytes(Parsed parsed) throws Exception {
+    return binaryHandler.toBytes(parsed.binaryMessage);
+  }
+
+  // the parsed messages are mutable, a SAAJ message is not even safe to read concurrently, so
+  // every benchmark thread serializes its own copies
+  @State(Scope.Thread)
+  public static class Parsed {
+
+    private JsonMessage jsonMessage;
+    private XmlMessage xmlMessage;
+    private SOAPMessage soapMessage;
+    private BinaryMessage binaryMessage;
+
+    @Setup
+    public void setUp(MessageHandlerBenchmark benchmark) throws Exception {
+      jsonMessage = benchmark.jsonHandler.parse(benchmark.jsonMessage);
+      xmlMessage = benchmark.xmlHandler.parse(benchmark.xmlMessage);
+      soapMessage = benchmark.soapHandler.parse(benchmark.soapMessage);
+      binaryMessage = benchmark.binaryHandler.parse(benchmark.binaryMessage);
+    }
+  }
+
+  @Threads(4)
+  public static class FourThreads extends MessageHandlerBenchmark {
+  }
+
+  @Threads(Threads.MAX)
+  public static class AllProcessors extends MessageHandlerBenchmark {
+  }
+}
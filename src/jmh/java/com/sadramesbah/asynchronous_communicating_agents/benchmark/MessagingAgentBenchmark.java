@@ -0,0 +1,69 @@
+package com.sadramesbah.asynchronous_communicating_agents.benchmark;
+
+import com.sadramesbah.asynchronous_communicating_agents.agent.AgentOptions;
+import com.sadramesbah.asynchronous_communicating_agents.agent.MessagingAgent;
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageHandlerRegistry;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.concurrent.TimeUnit;
+
+// measures MessagingAgent.handleInputMessage end to end for every format and body size; the
+// nested subclasses run the same benchmark with several threads sharing one agent
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-jmh.xml")
+@Threads(1)
+public class MessagingAgentBenchmark {
+
+  // the _STREAMING formats rewrite with StAX instead of the JAXB and SAAJ round-trips; JSON
+  // always streams and binary never does, so they run once
+  @Param({"JSON", "XML", "XML_STREAMING", "SOAP", "SOAP_STREAMING", "BINARY"})
+  private String format;
+
+  @Param({"200", "10240", "1048576"})
+  private int bodySize;
+
+  private MessageType messageType;
+  private MessagingAgent messagingAgent;
+  private String inputMessage;
+
+  @Setup
+  public void setUp() throws Exception {
+    boolean streaming = format.endsWith("_STREAMING");
+    messageType = MessageType.valueOf(streaming
+        ? format.substring(0, format.length() - "_STREAMING".length()) : format);
+    AgentOptions options = AgentOptions.defaults()
+        .withStreamingXml(streaming)
+        .withStreamingSoap(streaming);
+    messagingAgent = new MessagingAgent("Agent-Benchmark", MessageHandlerRegistry.defaultRegistry(),
+        options);
+    inputMessage = BenchmarkPayloads.message(messageType, bodySize);
+  }
+
+  @Benchmark
+  public String handleInputMessage() throws Exception {
+    return messagingAgent.handleInputMessage(inputMessage, messageType);
+  }
+
+  @Threads(4)
+  public static class FourThreads extends MessagingAgentBenchmark {
+  }
+
+  @Threads(Threads.MAX)
+  public static class AllProcessors extends MessagingAgentBenchmark {
+  }
+}
@@ -0,0 +1,57 @@
+package com.sadramesbah.asynchronous_communicating_agents.agent;
+
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidBinaryMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidJsonMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.soap.SOAPException;
+import java.io.IOException;
+import java.util.List;
+
+// runs messages through agents of the same JVM in order without handing strings from one agent
+// to the next: a message is parsed once, gets the update of every agent and is serialized once.
+// the result matches passing the output of each agent's handleInputMessage to the next agent,
+// with the last agent's options selecting the path: a SOAP envelope gets a SecurityToken header
+// per agent, the body length rule is checked on the body each agent would receive, and a JSON or
+// XML chain whose agents differ in keeping a separate trail gets a pass per run of agents that
+// agree on it. transcoding hands the message on in its input format up to the last agent, which
+// transcodes it
+public final class AgentChain {
+
+  private final List<MessagingAgent> agents;
+
+  public AgentChain(List<MessagingAgent> agents) {
+    if (agents.isEmpty()) {
+      throw new IllegalArgumentException("An agent chain needs at least one agent");
+    }
+    this.agents = List.copyOf(agents);
+  }
+
+  public static AgentChain of(MessagingAgent... agents) {
+    return new AgentChain(List.of(agents));
+  }
+
+  // handles the input message based on message type; binary messages are Base64 encoded
+  public String handleInputMessage(String inputMessage, MessageType inputMessageType)
+      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+      InvalidBinaryMessageException {
+    return lastAgent().handleChainedMessage(inputMessage, inputMessageType, agents);
+  }
+
+  // handles the input message and returns it in the output format
+  public String transcode(String inputMessage, MessageType inputMessageType,
+      MessageType outputMessageType)
+      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+      InvalidBinaryMessageException {
+    return lastAgent().transcodeChained(inputMessage, inputMessageType, outputMessageType,
+        agents);
+  }
+
+  public List<MessagingAgent> getAgents() {
+    return agents;
+  }
+
+  private MessagingAgent lastAgent() {
+    return agents.get(agents.size() - 1);
+  }
+}
@@ -0,0 +1,75 @@
+package com.sadramesbah.asynchronous_communicating_agents.agent;
+
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageValidator;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import com.sadramesbah.asynchronous_communicating_agents.metrics.MessageMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Map;
+
+// builds the options of the agents created by MessagingAgentFactory, the dispatcher that runs
+// them, the registry that routes messages to them and the validator their handlers share from
+// application properties
+@Configuration
+public class AgentConfig {
+
+  @Bean
+  public AgentOptions agentOptions(
+      @Value("${agent.xml.streaming:false}") boolean streamingXml,
+      @Value("${agent.soap.streaming:false}") boolean streamingSoap,
+      @Value("${agent.clock.coarse:false}") boolean coarseClock,
+      @Value("${agent.processing-trail.separate:false}") boolean separateProcessingTrail,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    MeterRegistry registry = meterRegistry.getIfAvailable();
+    return AgentOptions.defaults()
+        .withStreamingXml(streamingXml)
+        .withStreamingSoap(streamingSoap)
+        .withMetrics(registry != null ? new MessageMetrics(registry) : MessageMetrics.noop())
+        .withClock(coarseClock ? CoarseClock.systemDefaultZone() : Clock.systemDefaultZone())
+        .withSeparateProcessingTrail(separateProcessingTrail);
+  }
+
+  // a maximum body length of zero and an empty list of statuses leave those rules off; strict
+  // schema validation compiles the bundled schemas here, so a broken schema fails the startup
+  @Bean
+  public MessageValidator messageValidator(
+      @Value("${message.validation.max-body-length:0}") int maxBodyLength,
+      @Value("${message.validation.allowed-statuses:}") String[] allowedStatuses,
+      @Value("${message.validation.schema.strict:false}") boolean strictSchemaValidation) {
+    return MessageValidator.defaults()
+        .withMaxBodyLength(maxBodyLength)
+        .withAllowedStatuses(Arrays.stream(allowedStatuses)
+            .map(String::trim)
+            .filter(status -> !status.isEmpty())
+            .toList())
+        .withSchemaValidation(strictSchemaValidation);
+  }
+
+  @Bean
+  public AgentDispatcher agentDispatcher(
+      @Value("${agent.dispatcher.max-concurrency-per-agent:0}") int maxConcurrencyPerAgent,
+      @Value("${agent.dispatcher.max-concurrency.json:0}") int maxJsonConcurrency,
+      @Value("${agent.dispatcher.max-concurrency.xml:0}") int maxXmlConcurrency,
+      @Value("${agent.dispatcher.max-concurrency.soap:0}") int maxSoapConcurrency,
+      @Value("${agent.dispatcher.max-concurrency.binary:0}") int maxBinaryConcurrency) {
+    return new AgentDispatcher(maxConcurrencyPerAgent, Map.of(
+        MessageType.JSON, maxJsonConcurrency,
+        MessageType.XML, maxXmlConcurrency,
+        MessageType.SOAP, maxSoapConcurrency,
+        MessageType.BINARY, maxBinaryConcurrency));
+  }
+
+  // starts empty; MessagingAgentFactory.createRegisteredAgent adds the agents that serve routed
+  // messages
+  @Bean
+  public AgentRegistry agentRegistry(
+      @Value("${agent.registry.virtual-nodes:128}") int virtualNodes) {
+    return new AgentRegistry(virtualNodes,
+        message -> Integer.toString(message.getMessageId()));
+  }
+}
@@ -0,0 +1,140 @@
+package com.sadramesbah.asynchronous_communicating_agents.agent;
+
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+
+// runs messaging agents on virtual threads, one per message, while bounding how many messages
+// each agent and each message type process at the same time; a limit of zero or less means
+// unbounded
+public class AgentDispatcher implements AutoCloseable {
+
+  private final ExecutorService executor;
+  private final int maxConcurrencyPerAgent;
+  private final Map<MessageType, Semaphore> messageTypePermits = new EnumMap<>(MessageType.class);
+  private final ConcurrentMap<String, AgentPermits> agentPermits = new ConcurrentHashMap<>();
+
+  public AgentDispatcher(int maxConcurrencyPerAgent,
+      Map<MessageType, Integer> maxConcurrencyPerMessageType) {
+    this.executor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("agent-dispatcher-", 0).factory());
+    this.maxConcurrencyPerAgent = maxConcurrencyPerAgent;
+    maxConcurrencyPerMessageType.forEach((messageType, maxConcurrency) -> {
+      if (maxConcurrency > 0) {
+        messageTypePermits.put(messageType, new Semaphore(maxConcurrency));
+      }
+    });
+  }
+
+  // processes the message on a virtual thread once both limits admit it
+  public CompletableFuture<String> dispatch(MessagingAgent agent, String inputMessage,
+      MessageType inputMessageType) {
+    CompletableFuture<String> result = new CompletableFuture<>();
+    executor.execute(() -> process(agent, inputMessage, inputMessageType, result));
+    return result;
+  }
+
+  // processes the message on a virtual thread and passes the result or failure to the callback
+  public void dispatch(MessagingAgent agent, String inputMessage, MessageType inputMessageType,
+      BiConsumer<String, Throwable> callback) {
+    dispatch(agent, inputMessage, inputMessageType).whenComplete(callback);
+  }
+
+  // blocking on the permits only parks the virtual thread, so waiting messages hold no carrier;
+  // the agent permit is taken first, so messages queued behind one busy agent do not hold the
+  // permits of their message type that the other agents of that type need
+  private void process(MessagingAgent agent, String inputMessage, MessageType inputMessageType,
+      CompletableFuture<String> result) {
+    Semaphore typePermit = messageTypePermits.get(inputMessageType);
+    AgentPermits agentPermit = maxConcurrencyPerAgent > 0 ? enter(agent.getId()) : null;
+    String outputMessage = null;
+    Throwable failure = null;
+    try {
+      acquire(agentPermit == null ? null : agentPermit.semaphore);
+      try {
+        acquire(typePermit);
+        try {
+          outputMessage = agent.handleInputMessage(inputMessage, inputMessageType);
+        } finally {
+          release(typePermit);
+        }
+      } finally {
+        release(agentPermit == null ? null : agentPermit.semaphore);
+      }
+    } catch (InterruptedException intException) {
+      Thread.currentThread().interrupt();
+      failure = intException;
+    } catch (Throwable throwable) {
+      // errors complete the future as well, so that no caller waits forever
+      failure = throwable;
+    } finally {
+      if (agentPermit != null) {
+        leave(agent.getId());
+      }
+    }
+    // completed once the permits are returned, so callers see them free again
+    if (failure != null) {
+      result.completeExceptionally(failure);
+    } else {
+      result.complete(outputMessage);
+    }
+  }
+
+  // counts the message against the permits of its agent, creating them for the first one
+  private AgentPermits enter(String agentId) {
+    return agentPermits.compute(agentId, (id, permits) -> {
+      AgentPermits entered = permits != null ? permits : new AgentPermits(maxConcurrencyPerAgent);
+      entered.messages++;
+      return entered;
+    });
+  }
+
+  // drops the permits of an agent with no message running or waiting, so that the map does not
+  // grow with every agent id ever dispatched
+  private void leave(String agentId) {
+    agentPermits.computeIfPresent(agentId,
+        (id, permits) -> --permits.messages == 0 ? null : permits);
+  }
+
+  // number of agents with messages running or waiting for a permit
+  int activeAgents() {
+    return agentPermits.size();
+  }
+
+  private static void acquire(Semaphore permit) throws InterruptedException {
+    if (permit != null) {
+      permit.acquire();
+    }
+  }
+
+  private static void release(Semaphore permit) {
+    if (permit != null) {
+      permit.release();
+    }
+  }
+
+  // stops accepting messages and waits for the dispatched ones to finish
+  @Override
+  public void close() {
+    executor.close();
+  }
+
+  // the permits of one agent and the number of its messages running or waiting for them, which
+  // is only changed inside the map's compute methods
+  private static final class AgentPermits {
+
+    private final Semaphore semaphore;
+    private int messages;
+
+    private AgentPermits(int maxConcurrency) {
+      this.semaphore = new Semaphore(maxConcurrency);
+    }
+  }
+}
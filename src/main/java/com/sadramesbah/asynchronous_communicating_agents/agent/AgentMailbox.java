@@ -0,0 +1,238 @@
+package com.sadramesbah.asynchronous_communicating_agents.agent;
+
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import com.sadramesbah.asynchronous_communicating_agents.metrics.AgentMetrics;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+
+// bounded inbox of a messaging agent: any number of threads submit messages to a lock-free queue
+// and one virtual thread hands them to the agent in submission order. a full mailbox applies its
+// overflow policy, so that callers feel backpressure instead of piling up threads and messages.
+// the number of waiting messages, the time they wait and the overflows are recorded to the
+// metrics of the agent
+public final class AgentMailbox implements AutoCloseable {
+
+  // what submitting to a full mailbox does
+  public enum OverflowPolicy {
+    // parks the submitting thread until a message leaves the mailbox
+    BLOCK,
+    // fails the oldest waiting message with a RejectedExecutionException to make room
+    DROP_OLDEST,
+    // fails the submitted message with a RejectedExecutionException
+    REJECT,
+    // hands the submitted message to the spill, for instance a Kafka topic
+    SPILL
+  }
+
+  // takes the messages a full mailbox does not keep; the returned future completes once the
+  // message is stored elsewhere
+  @FunctionalInterface
+  public interface Spill {
+
+    CompletableFuture<?> spill(String inputMessage, MessageType inputMessageType);
+  }
+
+  private final MessagingAgent agent;
+  private final int capacity;
+  private final OverflowPolicy overflowPolicy;
+  private final Spill spill;
+  private final AgentMetrics metrics;
+  private final Queue<Envelope> queue = new ConcurrentLinkedQueue<>();
+  // one permit per free slot; taken by the submitter and returned by the consumer
+  private final Semaphore freeSlots;
+  // the depth reported to the metrics, kept to remove exactly this mailbox from the gauge
+  private final IntSupplier depthGauge = this::getDepth;
+  private final Thread consumer;
+  private volatile boolean idle;
+  private volatile boolean closed;
+
+  public AgentMailbox(MessagingAgent agent, int capacity, OverflowPolicy overflowPolicy) {
+    this(agent, capacity, overflowPolicy, null);
+  }
+
+  // the spill is only used by the SPILL policy, which requires one
+  public AgentMailbox(MessagingAgent agent, int capacity, OverflowPolicy overflowPolicy,
+      Spill spill) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Mailbox capacity must be positive: " + capacity);
+    }
+    if (overflowPolicy == OverflowPolicy.SPILL && spill == null) {
+      throw new IllegalArgumentException("The SPILL overflow policy needs a spill");
+    }
+    this.agent = agent;
+    this.capacity = capacity;
+    this.overflowPolicy = overflowPolicy;
+    this.spill = spill;
+    this.metrics = agent.getMetrics();
+    this.freeSlots = new Semaphore(capacity);
+    metrics.gaugeMailboxDepth(depthGauge);
+    this.consumer = Thread.ofVirtual().name("agent-mailbox-" + agent.getId()).start(this::drain);
+  }
+
+  // queues the message for the agent; the future completes with the processed message, with
+  // null once a spilled message is stored, or exceptionally when the agent fails, the message is
+  // rejected or dropped, or the mailbox is closed. binary messages are Base64 encoded
+  public CompletableFuture<String> submit(String inputMessage, MessageType inputMessageType) {
+    CompletableFuture<String> result = new CompletableFuture<>();
+    if (closed) {
+      result.completeExceptionally(closedException());
+      return result;
+    }
+    if (!freeSlots.tryAcquire() && !overflow(inputMessage, inputMessageType, result)) {
+      return result;
+    }
+    Envelope envelope = new Envelope(inputMessage, inputMessageType, result, metrics.startTime());
+    queue.offer(envelope);
+    // a close that raced with this submission may have missed the envelope
+    if (closed && queue.remove(envelope)) {
+      freeSlots.release();
+      result.completeExceptionally(closedException());
+      return result;
+    }
+    if (idle) {
+      LockSupport.unpark(consumer);
+    }
+    return result;
+  }
+
+  public int getDepth() {
+    return capacity - freeSlots.availablePermits();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public MessagingAgent getAgent() {
+    return agent;
+  }
+
+  // stops accepting messages and waits until the agent processed the queued ones
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(consumer);
+    boolean interrupted = false;
+    while (true) {
+      try {
+        consumer.join();
+        break;
+      } catch (InterruptedException intException) {
+        interrupted = true;
+      }
+    }
+    metrics.removeMailboxDepth(depthGauge);
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // applies the overflow policy; returns true when the message got a slot after all
+  private boolean overflow(String inputMessage, MessageType inputMessageType,
+      CompletableFuture<String> result) {
+    switch (overflowPolicy) {
+      case BLOCK -> {
+        try {
+          freeSlots.acquire();
+          return true;
+        } catch (InterruptedException intException) {
+          Thread.currentThread().interrupt();
+          result.completeExceptionally(intException);
+          return false;
+        }
+      }
+      case DROP_OLDEST -> {
+        // the slot of the dropped message passes to the submitted one
+        while (true) {
+          Envelope oldest = queue.poll();
+          if (oldest != null) {
+            metrics.recordMailboxOverflow("dropped");
+            oldest.result().completeExceptionally(new RejectedExecutionException(
+                "Dropped from the full mailbox of agent " + agent.getId()));
+            return true;
+          }
+          // the consumer took the last message in the meantime, so a slot is freed soon
+          if (freeSlots.tryAcquire()) {
+            return true;
+          }
+          Thread.onSpinWait();
+        }
+      }
+      case REJECT -> {
+        metrics.recordMailboxOverflow("rejected");
+        result.completeExceptionally(new RejectedExecutionException(
+            "The mailbox of agent " + agent.getId() + " is full"));
+        return false;
+      }
+      case SPILL -> {
+        metrics.recordMailboxOverflow("spilled");
+        try {
+          spill.spill(inputMessage, inputMessageType).whenComplete((stored, throwable) -> {
+            if (throwable != null) {
+              result.completeExceptionally(throwable);
+            } else {
+              result.complete(null);
+            }
+          });
+        } catch (RuntimeException exception) {
+          result.completeExceptionally(exception);
+        }
+        return false;
+      }
+      default -> throw new IllegalStateException("Unknown overflow policy: " + overflowPolicy);
+    }
+  }
+
+  // the only consumer of the queue apart from DROP_OLDEST submitters, which take from its head
+  private void drain() {
+    while (true) {
+      Envelope envelope = queue.poll();
+      if (envelope == null) {
+        // announce the park before checking again, so a submitter either sees idle or the
+        // consumer sees its envelope
+        idle = true;
+        envelope = queue.poll();
+        if (envelope == null) {
+          if (closed) {
+            idle = false;
+            return;
+          }
+          LockSupport.park(this);
+          idle = false;
+          continue;
+        }
+        idle = false;
+      }
+      freeSlots.release();
+      metrics.recordMailboxWait(envelope.enqueueTime());
+      process(envelope);
+    }
+  }
+
+  private void process(Envelope envelope) {
+    try {
+      envelope.result().complete(
+          agent.handleInputMessage(envelope.inputMessage(), envelope.inputMessageType()));
+    } catch (Throwable throwable) {
+      // errors complete the future as well, so that no caller waits forever
+      envelope.result().completeExceptionally(throwable);
+    }
+  }
+
+  private RejectedExecutionException closedException() {
+    return new RejectedExecutionException("The mailbox of agent " + agent.getId() + " is closed");
+  }
+
+  private record Envelope(String inputMessage, MessageType inputMessageType,
+                          CompletableFuture<String> result, long enqueueTime) {
+  }
+}
@@ -0,0 +1,85 @@
+package com.sadramesbah.asynchronous_communicating_agents.agent;
+
+import com.sadramesbah.asynchronous_communicating_agents.metrics.MessageMetrics;
+import java.time.Clock;
+
+// immutable processing options of a messaging agent
+public final class AgentOptions {
+
+  private static final AgentOptions DEFAULTS =
+      new AgentOptions(false, false, MessageMetrics.noop(), Clock.systemDefaultZone(), false);
+
+  private final boolean streamingXml;
+  private final boolean streamingSoap;
+  private final MessageMetrics metrics;
+  private final Clock clock;
+  private final boolean separateProcessingTrail;
+
+  private AgentOptions(boolean streamingXml, boolean streamingSoap, MessageMetrics metrics,
+      Clock clock, boolean separateProcessingTrail) {
+    this.streamingXml = streamingXml;
+    this.streamingSoap = streamingSoap;
+    this.metrics = metrics;
+    this.clock = clock;
+    this.separateProcessingTrail = separateProcessingTrail;
+  }
+
+  public static AgentOptions defaults() {
+    return DEFAULTS;
+  }
+
+  // XML messages are rewritten with StAX instead of a JAXB round-trip when enabled
+  public AgentOptions withStreamingXml(boolean streamingXml) {
+    return new AgentOptions(streamingXml, streamingSoap, metrics, clock,
+        separateProcessingTrail);
+  }
+
+  // SOAP messages are rewritten with StAX instead of SAAJ when enabled, except for faults and
+  // envelopes whose body does not start with the message
+  public AgentOptions withStreamingSoap(boolean streamingSoap) {
+    return new AgentOptions(streamingXml, streamingSoap, metrics, clock,
+        separateProcessingTrail);
+  }
+
+  // stage timings, message sizes and failures are recorded to these metrics; no-op by default
+  public AgentOptions withMetrics(MessageMetrics metrics) {
+    return new AgentOptions(streamingXml, streamingSoap, metrics, clock,
+        separateProcessingTrail);
+  }
+
+  // stamps the LastModified time and the body suffix of processed messages; the system clock in
+  // the default time zone by default, a CoarseClock under load or a fixed clock in tests
+  public AgentOptions withClock(Clock clock) {
+    return new AgentOptions(streamingXml, streamingSoap, metrics, clock,
+        separateProcessingTrail);
+  }
+
+  // JSON and XML messages carry the processing trail in a ProcessingTrail field or element
+  // instead of appending it to MessageBody when enabled, on the bound and streaming paths alike;
+  // SOAP envelopes and binary messages append it. a message that already has a ProcessingTrail
+  // element or field gets its entry there whatever the option
+  public AgentOptions withSeparateProcessingTrail(boolean separateProcessingTrail) {
+    return new AgentOptions(streamingXml, streamingSoap, metrics, clock,
+        separateProcessingTrail);
+  }
+
+  public boolean isStreamingXml() {
+    return streamingXml;
+  }
+
+  public boolean isStreamingSoap() {
+    return streamingSoap;
+  }
+
+  public MessageMetrics getMetrics() {
+    return metrics;
+  }
+
+  public Clock getClock() {
+    return clock;
+  }
+
+  public boolean isSeparateProcessingTrail() {
+    return separateProcessingTrail;
+  }
+}
@@ -0,0 +1,125 @@
+package com.sadramesbah.asynchronous_communicating_agents.agent;
+
+import com.sadramesbah.asynchronous_communicating_agents.message.Message;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+// routes messages to the registered agents by consistent hashing of a routing key, MessageID by
+// default, so the messages of one key keep landing on the same agent while agents come and go.
+// every agent owns a number of virtual nodes on a hash ring and a key belongs to the first node
+// at or after its hash; adding or removing an agent only moves the keys of that agent's nodes.
+// the hash depends on nothing but the agent IDs and the key, so JVMs that register agents with
+// the same IDs, for instance per Kafka partition, route every key to the same agent ID
+public class AgentRegistry {
+
+  public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final int virtualNodes;
+  private final Function<Message, String> routingKey;
+  private final ConcurrentMap<String, MessagingAgent> agents = new ConcurrentHashMap<>();
+  private final ConcurrentNavigableMap<Long, MessagingAgent> ring = new ConcurrentSkipListMap<>();
+
+  public AgentRegistry() {
+    this(DEFAULT_VIRTUAL_NODES, message -> Integer.toString(message.getMessageId()));
+  }
+
+  // more virtual nodes spread the keys more evenly at the cost of a larger ring
+  public AgentRegistry(int virtualNodes, Function<Message, String> routingKey) {
+    if (virtualNodes <= 0) {
+      throw new IllegalArgumentException("Virtual nodes must be positive: " + virtualNodes);
+    }
+    this.virtualNodes = virtualNodes;
+    this.routingKey = routingKey;
+  }
+
+  // adds the agent to the ring, replacing a registered agent with the same ID on the same nodes;
+  // returns the replaced agent or null
+  public synchronized MessagingAgent register(MessagingAgent agent) {
+    MessagingAgent previous = agents.put(agent.getId(), agent);
+    for (int node = 0; node < virtualNodes; node++) {
+      long point = hash(agent.getId() + '#' + node);
+      // on the unlikely collision of two agents' nodes the node stays with its first owner
+      if (previous == null) {
+        ring.putIfAbsent(point, agent);
+      } else {
+        ring.replace(point, previous, agent);
+      }
+    }
+    return previous;
+  }
+
+  // removes the agent and its nodes; its keys move to the agents owning the following nodes
+  public synchronized MessagingAgent unregister(String agentId) {
+    MessagingAgent removed = agents.remove(agentId);
+    if (removed != null) {
+      for (int node = 0; node < virtualNodes; node++) {
+        ring.remove(hash(agentId + '#' + node), removed);
+      }
+    }
+    return removed;
+  }
+
+  // returns the agent that owns the routing key of the message
+  public MessagingAgent route(Message message) {
+    return route(routingKey.apply(message));
+  }
+
+  // returns the agent that owns the MessageID when routing by MessageID
+  public MessagingAgent route(int messageId) {
+    return route(Integer.toString(messageId));
+  }
+
+  // returns the agent that owns the key, such as the key of a Kafka record
+  public MessagingAgent route(String key) {
+    Map.Entry<Long, MessagingAgent> node = ring.ceilingEntry(hash(key));
+    if (node == null) {
+      node = ring.firstEntry();
+    }
+    if (node == null) {
+      throw new IllegalStateException("No agents are registered.");
+    }
+    return node.getValue();
+  }
+
+  public MessagingAgent getAgent(String agentId) {
+    return agents.get(agentId);
+  }
+
+  public Collection<MessagingAgent> getAgents() {
+    return Collections.unmodifiableCollection(agents.values());
+  }
+
+  public int size() {
+    return agents.size();
+  }
+
+  public int getVirtualNodes() {
+    return virtualNodes;
+  }
+
+  // 64-bit FNV-1a of the UTF-8 bytes, finished with the MurmurHash3 mixer so that keys differing
+  // only in their last characters, like consecutive MessageIDs, still spread over the whole ring
+  static long hash(String key) {
+    long hash = FNV_OFFSET_BASIS;
+    for (byte value : key.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= value & 0xff;
+      hash *= FNV_PRIME;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -0,0 +1,64 @@
+package com.sadramesbah.asynchronous_communicating_agents.agent;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// clock that returns a millisecond timestamp refreshed by one daemon thread instead of reading
+// the system clock on every call; readings lag the system clock by up to about a millisecond,
+// which is fine for stamping messages and much cheaper under load
+public final class CoarseClock extends Clock {
+
+  private final ZoneId zone;
+
+  private CoarseClock(ZoneId zone) {
+    this.zone = zone;
+  }
+
+  public static CoarseClock systemDefaultZone() {
+    return new CoarseClock(ZoneId.systemDefault());
+  }
+
+  public static CoarseClock system(ZoneId zone) {
+    return new CoarseClock(zone);
+  }
+
+  @Override
+  public ZoneId getZone() {
+    return zone;
+  }
+
+  @Override
+  public Clock withZone(ZoneId zone) {
+    return zone.equals(this.zone) ? this : new CoarseClock(zone);
+  }
+
+  @Override
+  public long millis() {
+    return Ticker.currentMillis;
+  }
+
+  @Override
+  public Instant instant() {
+    return Instant.ofEpochMilli(Ticker.currentMillis);
+  }
+
+  // the ticking thread is shared by all coarse clocks and started when the first one is read
+  private static final class Ticker {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static volatile long currentMillis = System.currentTimeMillis();
+
+    static {
+      Thread.ofPlatform().daemon().name("coarse-clock").start(() -> {
+        while (true) {
+          LockSupport.parkNanos(TICK_NANOS);
+          currentMillis = System.currentTimeMillis();
+        }
+      });
+    }
+  }
+}
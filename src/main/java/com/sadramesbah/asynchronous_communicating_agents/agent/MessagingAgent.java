@@ -1,99 +1,478 @@
 package com.sadramesbah.asynchronous_communicating_agents.agent;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidBinaryMessageException;
 import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidJsonMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.exception.MessageValidationException;
+import com.sadramesbah.asynchronous_communicating_agents.handler.BinaryMessageHandler;
 import com.sadramesbah.asynchronous_communicating_agents.handler.JsonMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageHandlerRegistry;
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageTranscoder;
+import com.sadramesbah.asynchronous_communicating_agents.handler.SoapMessageContext;
 import com.sadramesbah.asynchronous_communicating_agents.handler.SoapMessageHandler;
 import com.sadramesbah.asynchronous_communicating_agents.handler.XmlMessageHandler;
-import com.sadramesbah.asynchronous_communicating_agents.message.JsonMessage;
 import com.sadramesbah.asynchronous_communicating_agents.message.Message;
 import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageUpdate;
 import com.sadramesbah.asynchronous_communicating_agents.message.XmlMessage;
+import com.sadramesbah.asynchronous_communicating_agents.metrics.AgentMetrics;
+import com.sadramesbah.asynchronous_communicating_agents.metrics.MessageMetrics.FailureReason;
+import com.sadramesbah.asynchronous_communicating_agents.metrics.MessageMetrics.Stage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import jakarta.xml.bind.JAXBException;
-import jakarta.xml.soap.SOAPBody;
-import jakarta.xml.soap.SOAPElement;
 import jakarta.xml.soap.SOAPException;
-import jakarta.xml.soap.SOAPMessage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.sql.Timestamp;
-import java.util.Optional;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class MessagingAgent {
+public class MessagingAgent implements AutoCloseable {
+
+  private static final DateTimeFormatter BODY_SUFFIX_TIME_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.");
 
   private final String id;
+  private final String bodySuffixPrefix;
   private final JsonMessageHandler jsonHandler;
   private final XmlMessageHandler xmlHandler;
   private final SoapMessageHandler soapHandler;
+  private final BinaryMessageHandler binaryHandler;
+  private final MessageTranscoder transcoder;
+  private final AgentOptions options;
+  private final AgentMetrics metrics;
+  private final AtomicBoolean closed = new AtomicBoolean();
 
+  // creates an agent sharing the handlers of the default registry
   public MessagingAgent(String agentId) throws JAXBException, SOAPException {
+    this(agentId, MessageHandlerRegistry.defaultRegistry());
+  }
+
+  // creates an agent sharing the handlers of the given registry
+  public MessagingAgent(String agentId, MessageHandlerRegistry handlerRegistry) {
+    this(agentId, handlerRegistry, AgentOptions.defaults());
+  }
+
+  // creates an agent sharing the handlers of the given registry and processing with the options
+  public MessagingAgent(String agentId, MessageHandlerRegistry handlerRegistry,
+      AgentOptions options) {
     this.id = agentId;
-    this.jsonHandler = new JsonMessageHandler();
-    this.xmlHandler = new XmlMessageHandler();
-    this.soapHandler = new SoapMessageHandler();
+    this.bodySuffixPrefix = " Processed by Agent: " + agentId + " at ";
+    this.jsonHandler = handlerRegistry.getJsonHandler();
+    this.xmlHandler = handlerRegistry.getXmlHandler();
+    this.soapHandler = handlerRegistry.getSoapHandler();
+    this.binaryHandler = handlerRegistry.getBinaryHandler();
+    this.transcoder = new MessageTranscoder(handlerRegistry);
+    this.options = options;
+    this.metrics = options.getMetrics().forAgent(agentId);
   }
 
-  // handles the input message based on message type
+  // handles the input message based on message type; binary messages are Base64 encoded
   public String handleInputMessage(String inputMessage, MessageType inputMessageType)
-      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException {
+      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+      InvalidBinaryMessageException {
+    try {
+      String outputMessage = switch (inputMessageType) {
+        case JSON -> transformJsonMessage(inputMessage);
+        case XML -> options.isStreamingXml()
+            ? transformXmlMessage(inputMessage)
+            : updateXmlMessage(inputMessage);
+        case SOAP -> options.isStreamingSoap()
+            ? transformSoapMessage(inputMessage)
+            : updateSoapMessage(inputMessage);
+        case BINARY -> transformBinaryMessage(inputMessage);
+      };
+      metrics.recordSizes(inputMessageType, inputMessage.length(), outputMessage.length());
+      return outputMessage;
+    } catch (JAXBException | SOAPException | IOException | InvalidJsonMessageException
+             | InvalidBinaryMessageException | RuntimeException exception) {
+      recordFailure(inputMessageType, exception);
+      throw exception;
+    }
+  }
+
+  // handles the encoded input message based on message type and returns it encoded the same way,
+  // without decoding it to a string; binary messages are raw bytes rather than Base64
+  public byte[] handleInputMessage(byte[] inputMessage, MessageType inputMessageType)
+      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+      InvalidBinaryMessageException {
+    try {
+      byte[] outputMessage = switch (inputMessageType) {
+        case JSON -> transformJsonMessage(inputMessage);
+        case XML -> options.isStreamingXml()
+            ? transformXmlMessage(inputMessage)
+            : updateXmlMessage(inputMessage);
+        case SOAP -> options.isStreamingSoap()
+            ? transformSoapMessage(inputMessage)
+            : updateSoapMessage(inputMessage);
+        case BINARY -> transformBinaryMessage(inputMessage);
+      };
+      metrics.recordByteSizes(inputMessageType, inputMessage.length, outputMessage.length);
+      return outputMessage;
+    } catch (JAXBException | SOAPException | IOException | InvalidJsonMessageException
+             | InvalidBinaryMessageException | RuntimeException exception) {
+      recordFailure(inputMessageType, exception);
+      throw exception;
+    }
+  }
+
+  // handles the encoded input message in the remaining bytes of the buffer; JSON is read from
+  // the buffer directly and the other formats through a stream over it
+  public byte[] handleInputMessage(ByteBuffer inputMessage, MessageType inputMessageType)
+      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+      InvalidBinaryMessageException {
+    if (inputMessageType != MessageType.JSON) {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream(
+          inputMessage.remaining() + 256);
+      handleInputMessage(new ByteBufferBackedInputStream(inputMessage.slice()), outputStream,
+          inputMessageType);
+      return outputStream.toByteArray();
+    }
+    try {
+      long startTime = metrics.startTime();
+      int inputSize = inputMessage.remaining();
+      byte[] outputMessage = jsonHandler.transform(inputMessage.slice(), createUpdate());
+      metrics.recordStage(Stage.TRANSFORM, MessageType.JSON, startTime);
+      metrics.recordByteSizes(MessageType.JSON, inputSize, outputMessage.length);
+      return outputMessage;
+    } catch (IOException | InvalidJsonMessageException | RuntimeException exception) {
+      recordFailure(inputMessageType, exception);
+      throw exception;
+    }
+  }
+
+  // handles the input message read from the input stream and writes the output message to the
+  // output stream; JSON and streaming XML messages are transformed as they are read, the others
+  // are buffered first. the output is written only once the message passed validation, so a
+  // failed message leaves the output stream untouched, and both streams are left open
+  public void handleInputMessage(InputStream inputStream, OutputStream outputStream,
+      MessageType inputMessageType)
+      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+      InvalidBinaryMessageException {
+    if (inputMessageType == MessageType.SOAP
+        || (inputMessageType == MessageType.XML && !options.isStreamingXml())) {
+      outputStream.write(handleInputMessage(inputStream.readAllBytes(), inputMessageType));
+      return;
+    }
+    try {
+      long startTime = metrics.startTime();
+      switch (inputMessageType) {
+        case JSON -> jsonHandler.transform(inputStream, outputStream, createUpdate());
+        case XML -> xmlHandler.transform(inputStream, outputStream, createUpdate());
+        case BINARY -> binaryHandler.transform(inputStream, outputStream, createUpdate());
+        default -> throw new IllegalStateException("Unexpected message type " + inputMessageType);
+      }
+      metrics.recordStage(Stage.TRANSFORM, inputMessageType, startTime);
+    } catch (JAXBException | IOException | InvalidJsonMessageException
+             | InvalidBinaryMessageException | RuntimeException exception) {
+      recordFailure(inputMessageType, exception);
+      throw exception;
+    }
+  }
+
+  // handles the input message and returns it in the output format, parsing it once into the
+  // shared Message representation, updating it and serializing it once
+  public String transcode(String inputMessage, MessageType inputMessageType,
+      MessageType outputMessageType)
+      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+      InvalidBinaryMessageException {
+    if (inputMessageType == outputMessageType) {
+      return handleInputMessage(inputMessage, inputMessageType);
+    }
+    try {
+      long startTime = metrics.startTime();
+      Message message = transcoder.parse(inputMessage, inputMessageType);
+      startTime = metrics.recordStage(Stage.PARSE, inputMessageType, startTime);
+      updateMessageAttributes(message);
+      startTime = metrics.recordStage(Stage.UPDATE, inputMessageType, startTime);
+      String outputMessage = transcoder.serialize(message, outputMessageType);
+      metrics.recordStage(Stage.SERIALIZE, outputMessageType, startTime);
+      metrics.recordSizes(inputMessageType, inputMessage.length(), outputMessage.length());
+      return outputMessage;
+    } catch (JAXBException | SOAPException | IOException | InvalidJsonMessageException
+             | InvalidBinaryMessageException | RuntimeException exception) {
+      recordFailure(inputMessageType, exception);
+      throw exception;
+    }
+  }
+
+  // handles the input message for a chain of agents that ends with this one: the message is
+  // parsed once, gets the update of every agent of the chain in order and is serialized once,
+  // along the path this agent's options select for the format
+  String handleChainedMessage(String inputMessage, MessageType inputMessageType,
+      List<MessagingAgent> chain)
+      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+      InvalidBinaryMessageException {
+    try {
+      long startTime = metrics.startTime();
+      String outputMessage = processChained(inputMessage, inputMessageType, chain);
+      metrics.recordStage(Stage.TRANSFORM, inputMessageType, startTime);
+      metrics.recordSizes(inputMessageType, inputMessage.length(), outputMessage.length());
+      return outputMessage;
+    } catch (JAXBException | SOAPException | IOException | InvalidJsonMessageException
+             | InvalidBinaryMessageException | RuntimeException exception) {
+      recordFailure(inputMessageType, exception);
+      throw exception;
+    }
+  }
+
+  // transcodes the input message for a chain of agents that ends with this one: the agents
+  // before this one hand it on in the input format, as they would one hop at a time, and this
+  // agent transcodes the result
+  String transcodeChained(String inputMessage, MessageType inputMessageType,
+      MessageType outputMessageType, List<MessagingAgent> chain)
+      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+      InvalidBinaryMessageException {
+    if (inputMessageType == outputMessageType) {
+      return handleChainedMessage(inputMessage, inputMessageType, chain);
+    }
+    try {
+      long startTime = metrics.startTime();
+      String handedOnMessage = inputMessage;
+      if (chain.size() > 1) {
+        handedOnMessage = processChained(inputMessage, inputMessageType,
+            chain.subList(0, chain.size() - 1));
+        startTime = metrics.recordStage(Stage.TRANSFORM, inputMessageType, startTime);
+      }
+      Message message = transcoder.parse(handedOnMessage, inputMessageType);
+      startTime = metrics.recordStage(Stage.PARSE, inputMessageType, startTime);
+      updateMessageAttributes(message);
+      startTime = metrics.recordStage(Stage.UPDATE, inputMessageType, startTime);
+      String outputMessage = transcoder.serialize(message, outputMessageType);
+      metrics.recordStage(Stage.SERIALIZE, outputMessageType, startTime);
+      metrics.recordSizes(inputMessageType, inputMessage.length(), outputMessage.length());
+      return outputMessage;
+    } catch (JAXBException | SOAPException | IOException | InvalidJsonMessageException
+             | InvalidBinaryMessageException | RuntimeException exception) {
+      recordFailure(inputMessageType, exception);
+      throw exception;
+    }
+  }
+
+  // where a JSON or XML message keeps the trail, and whether it is rewritten or bound, depends on
+  // whether the agent keeps a separate trail, so each run of agents that agree on it gets a pass
+  // of its own, which gives the same result as handling the message one hop at a time
+  private String processChained(String inputMessage, MessageType inputMessageType,
+      List<MessagingAgent> chain)
+      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+      InvalidBinaryMessageException {
+    int runEnd = separateTrailRunEnd(chain);
+    if (runEnd < chain.size()
+        && (inputMessageType == MessageType.JSON || inputMessageType == MessageType.XML)) {
+      String handedOnMessage = processChained(inputMessage, inputMessageType,
+          chain.subList(0, runEnd));
+      return processChained(handedOnMessage, inputMessageType,
+          chain.subList(runEnd, chain.size()));
+    }
+    MessageUpdate update = combinedUpdate(chain);
     return switch (inputMessageType) {
-      case JSON -> updateJsonMessage(jsonHandler.parse(inputMessage));
-      case XML -> updateXmlMessage(xmlHandler.parse(inputMessage));
-      case SOAP -> updateSoapMessage(soapHandler.parse(inputMessage));
+      case JSON -> jsonHandler.transform(inputMessage, update);
+      case XML -> options.isStreamingXml()
+          ? xmlHandler.transform(inputMessage, update)
+          : xmlHandler.toXmlString(xmlHandler.applyUpdate(xmlHandler.parse(inputMessage), update));
+      case SOAP -> {
+        if (options.isStreamingSoap()) {
+          yield soapHandler.transform(inputMessage, update);
+        }
+        SoapMessageContext soapMessageContext = soapHandler.parseContext(inputMessage);
+        soapHandler.applyUpdate(soapMessageContext, update);
+        yield soapHandler.toSoapString(soapMessageContext);
+      }
+      case BINARY -> binaryHandler.transform(inputMessage, update);
     };
   }
 
-  // updates the Json message attributes and returns the updated Json message in String format
-  private String updateJsonMessage(JsonMessage jsonMessageObject)
-      throws InvalidJsonMessageException, JsonProcessingException {
-    return jsonHandler.toJsonString((JsonMessage) updateMessageAttributes(jsonMessageObject));
+  // the index of the first agent that does not keep the trail the way the first agent does, or
+  // the size of the chain
+  private static int separateTrailRunEnd(List<MessagingAgent> chain) {
+    boolean separateTrail = chain.get(0).options.isSeparateProcessingTrail();
+    for (int index = 1; index < chain.size(); index++) {
+      if (chain.get(index).options.isSeparateProcessingTrail() != separateTrail) {
+        return index;
+      }
+    }
+    return chain.size();
+  }
+
+  // handlers of every format report a broken rule with a MessageValidationException as the
+  // cause, which names the field that failed; anything else is classified by its type
+  private void recordFailure(MessageType messageType, Exception exception) {
+    MessageValidationException validationException =
+        MessageValidationException.findIn(exception);
+    if (validationException != null) {
+      metrics.recordValidationFailure(messageType, validationException.getField());
+    } else {
+      metrics.recordFailure(messageType, failureReason(exception));
+    }
+  }
+
+  private static FailureReason failureReason(Exception exception) {
+    if (exception instanceof InvalidJsonMessageException
+        || exception instanceof InvalidBinaryMessageException
+        || exception instanceof JAXBException || exception instanceof SOAPException
+        || exception instanceof JsonProcessingException) {
+      return FailureReason.PARSE;
+    }
+    return exception instanceof IOException ? FailureReason.IO : FailureReason.INTERNAL;
+  }
+
+  private static MessageUpdate combinedUpdate(List<MessagingAgent> chain) {
+    List<MessageUpdate> updates = new ArrayList<>(chain.size());
+    for (MessagingAgent agent : chain) {
+      updates.add(agent.createUpdate());
+    }
+    return MessageUpdate.combine(updates);
+  }
+
+  private String transformJsonMessage(String inputMessage)
+      throws IOException, InvalidJsonMessageException {
+    long startTime = metrics.startTime();
+    String outputMessage = jsonHandler.transform(inputMessage, createUpdate());
+    metrics.recordStage(Stage.TRANSFORM, MessageType.JSON, startTime);
+    return outputMessage;
+  }
+
+  private String transformXmlMessage(String inputMessage) throws JAXBException {
+    long startTime = metrics.startTime();
+    String outputMessage = xmlHandler.transform(inputMessage, createUpdate());
+    metrics.recordStage(Stage.TRANSFORM, MessageType.XML, startTime);
+    return outputMessage;
+  }
+
+  private String transformSoapMessage(String inputMessage) throws SOAPException, IOException {
+    long startTime = metrics.startTime();
+    String outputMessage = soapHandler.transform(inputMessage, createUpdate());
+    metrics.recordStage(Stage.TRANSFORM, MessageType.SOAP, startTime);
+    return outputMessage;
+  }
+
+  private String transformBinaryMessage(String inputMessage)
+      throws InvalidBinaryMessageException {
+    long startTime = metrics.startTime();
+    String outputMessage = binaryHandler.transform(inputMessage, createUpdate());
+    metrics.recordStage(Stage.TRANSFORM, MessageType.BINARY, startTime);
+    return outputMessage;
   }
 
   // updates the Xml message attributes and returns the updated Xml message in String format
-  private String updateXmlMessage(XmlMessage xmlMessageObject) throws JAXBException {
-    return xmlHandler.toXmlString((XmlMessage) updateMessageAttributes(xmlMessageObject));
+  private String updateXmlMessage(String inputMessage) throws JAXBException {
+    long startTime = metrics.startTime();
+    XmlMessage xmlMessageObject = xmlHandler.parse(inputMessage);
+    startTime = metrics.recordStage(Stage.PARSE, MessageType.XML, startTime);
+    updateMessageAttributes(xmlMessageObject);
+    startTime = metrics.recordStage(Stage.UPDATE, MessageType.XML, startTime);
+    String outputMessage = xmlHandler.toXmlString(xmlMessageObject);
+    metrics.recordStage(Stage.SERIALIZE, MessageType.XML, startTime);
+    return outputMessage;
   }
 
   // updates the Soap message attributes and returns the updated Soap message in String format
-  private String updateSoapMessage(SOAPMessage soapMessageObject)
-      throws SOAPException, IOException {
-    SOAPBody body = soapMessageObject.getSOAPPart().getEnvelope().getBody();
+  private String updateSoapMessage(String inputMessage) throws SOAPException, IOException {
+    long startTime = metrics.startTime();
+    SoapMessageContext soapMessageContext = soapHandler.parseContext(inputMessage);
+    startTime = metrics.recordStage(Stage.PARSE, MessageType.SOAP, startTime);
+    soapHandler.applyUpdate(soapMessageContext, createUpdate());
+    startTime = metrics.recordStage(Stage.UPDATE, MessageType.SOAP, startTime);
+    String outputMessage = soapHandler.toSoapString(soapMessageContext);
+    metrics.recordStage(Stage.SERIALIZE, MessageType.SOAP, startTime);
+    return outputMessage;
+  }
 
-    Optional.ofNullable((SOAPElement) body.getElementsByTagName("Message").item(0))
-        .ifPresent(messageElement -> {
+  private byte[] transformJsonMessage(byte[] inputMessage)
+      throws IOException, InvalidJsonMessageException {
+    long startTime = metrics.startTime();
+    byte[] outputMessage = jsonHandler.transform(inputMessage, createUpdate());
+    metrics.recordStage(Stage.TRANSFORM, MessageType.JSON, startTime);
+    return outputMessage;
+  }
 
-          Optional.ofNullable(
-                  (SOAPElement) messageElement.getElementsByTagName("MessageBody").item(0))
-              .ifPresent(messageBodyElement -> messageBodyElement.setTextContent(
-                  messageBodyElement.getTextContent() + " Processed by Agent: " + id + " at " +
-                      java.time.LocalDateTime.now().format(
-                          java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss."))));
+  private byte[] transformXmlMessage(byte[] inputMessage) throws JAXBException {
+    long startTime = metrics.startTime();
+    byte[] outputMessage = xmlHandler.transform(inputMessage, createUpdate());
+    metrics.recordStage(Stage.TRANSFORM, MessageType.XML, startTime);
+    return outputMessage;
+  }
 
-          Optional.ofNullable(
-                  (SOAPElement) messageElement.getElementsByTagName("LastAgent").item(0))
-              .ifPresent(lastAgentElement -> lastAgentElement.setTextContent(id));
+  private byte[] transformSoapMessage(byte[] inputMessage) throws SOAPException, IOException {
+    long startTime = metrics.startTime();
+    byte[] outputMessage = soapHandler.transform(inputMessage, createUpdate());
+    metrics.recordStage(Stage.TRANSFORM, MessageType.SOAP, startTime);
+    return outputMessage;
+  }
+
+  private byte[] transformBinaryMessage(byte[] inputMessage)
+      throws InvalidBinaryMessageException {
+    long startTime = metrics.startTime();
+    byte[] outputMessage = binaryHandler.transform(inputMessage, createUpdate());
+    metrics.recordStage(Stage.TRANSFORM, MessageType.BINARY, startTime);
+    return outputMessage;
+  }
 
-          Optional.ofNullable(
-                  (SOAPElement) messageElement.getElementsByTagName("LastModified").item(0))
-              .ifPresent(lastModifiedElement -> lastModifiedElement.setTextContent(
-                  java.time.Instant.now().toString()));
-        });
+  // updates the encoded Xml message attributes and returns the updated Xml message encoded
+  private byte[] updateXmlMessage(byte[] inputMessage) throws JAXBException {
+    long startTime = metrics.startTime();
+    XmlMessage xmlMessageObject = xmlHandler.parse(inputMessage);
+    startTime = metrics.recordStage(Stage.PARSE, MessageType.XML, startTime);
+    updateMessageAttributes(xmlMessageObject);
+    startTime = metrics.recordStage(Stage.UPDATE, MessageType.XML, startTime);
+    byte[] outputMessage = xmlHandler.toXmlBytes(xmlMessageObject);
+    metrics.recordStage(Stage.SERIALIZE, MessageType.XML, startTime);
+    return outputMessage;
+  }
 
-    soapMessageObject.saveChanges();
-    return soapHandler.toSoapString(soapMessageObject);
+  // updates the encoded Soap message attributes and returns the updated Soap message encoded
+  private byte[] updateSoapMessage(byte[] inputMessage) throws SOAPException, IOException {
+    long startTime = metrics.startTime();
+    SoapMessageContext soapMessageContext = soapHandler.parseContext(inputMessage);
+    startTime = metrics.recordStage(Stage.PARSE, MessageType.SOAP, startTime);
+    soapHandler.applyUpdate(soapMessageContext, createUpdate());
+    startTime = metrics.recordStage(Stage.UPDATE, MessageType.SOAP, startTime);
+    byte[] outputMessage = soapHandler.toSoapBytes(soapMessageContext);
+    metrics.recordStage(Stage.SERIALIZE, MessageType.SOAP, startTime);
+    return outputMessage;
   }
 
   // updates the message attributes and returns the updated message object
   private Message updateMessageAttributes(Message message) {
-    message.setMessageBody(
-        message.getMessageBody() + " Processed by Agent: " + id + " at "
-            + java.time.LocalDateTime.now()
-            .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.")));
-    message.setLastModified(new Timestamp(System.currentTimeMillis()));
-    message.setLastAgent(id);
-    return message;
+    return createUpdate().applyTo(message);
+  }
+
+  // describes the changes this agent applies to a message processed now; the body suffix and
+  // LastModified come from a single reading of the clock, so they always agree
+  private MessageUpdate createUpdate() {
+    Clock clock = options.getClock();
+    long now = clock.millis();
+    return new MessageUpdate(id, bodySuffixPrefix + BODY_SUFFIX_TIME_FORMAT.format(
+        LocalDateTime.ofInstant(Instant.ofEpochMilli(now), clock.getZone())),
+        new Timestamp(now), options.isSeparateProcessingTrail());
+  }
+
+  // releases the meters of the agent, which are removed once no other agent with its ID uses
+  // them; an agent that is discarded without closing keeps its meters registered
+  @Override
+  public void close() {
+    if (closed.compareAndSet(false, true)) {
+      metrics.release();
+    }
   }
 
   public String getId() {
     return id;
   }
+
+  AgentMetrics getMetrics() {
+    return metrics;
+  }
+
+  public AgentOptions getOptions() {
+    return options;
+  }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.sadramesbah.asynchronous_communicating_agents.agent;
+
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageHandlerRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+// creates messaging agents that share the handlers of one registry; agents that serve routed
+// messages are created through createRegisteredAgent, which adds them to the agent registry
+@Component
+public class MessagingAgentFactory {
+
+  private final MessageHandlerRegistry handlerRegistry;
+  private final AgentOptions agentOptions;
+  private final AgentRegistry agentRegistry;
+
+  public MessagingAgentFactory(MessageHandlerRegistry handlerRegistry, AgentOptions agentOptions) {
+    this(handlerRegistry, agentOptions, new AgentRegistry());
+  }
+
+  @Autowired
+  public MessagingAgentFactory(MessageHandlerRegistry handlerRegistry, AgentOptions agentOptions,
+      AgentRegistry agentRegistry) {
+    this.handlerRegistry = handlerRegistry;
+    this.agentOptions = agentOptions;
+    this.agentRegistry = agentRegistry;
+  }
+
+  // creates an agent that is not routed to, such as a short-lived or pipeline agent; close it
+  // once it is discarded, so that its meters are removed
+  public MessagingAgent createAgent(String agentId) {
+    return new MessagingAgent(agentId, handlerRegistry, agentOptions);
+  }
+
+  // creates an agent and adds it to the agent registry, replacing a registered agent with the
+  // same ID; unregister it through the agent registry once it stops serving, as its virtual
+  // nodes stay on the ring until then
+  public MessagingAgent createRegisteredAgent(String agentId) {
+    MessagingAgent agent = createAgent(agentId);
+    agentRegistry.register(agent);
+    return agent;
+  }
+
+  // creates an agent that takes its messages from a bounded mailbox; the spill is only used by
+  // the SPILL overflow policy
+  public AgentMailbox createMailbox(String agentId, int capacity,
+      AgentMailbox.OverflowPolicy overflowPolicy, AgentMailbox.Spill spill) {
+    return new AgentMailbox(createAgent(agentId), capacity, overflowPolicy, spill);
+  }
+
+  public MessageHandlerRegistry getHandlerRegistry() {
+    return handlerRegistry;
+  }
+
+  public AgentOptions getAgentOptions() {
+    return agentOptions;
+  }
+
+  public AgentRegistry getAgentRegistry() {
+    return agentRegistry;
+  }
+}
@@ -0,0 +1,12 @@
+package com.sadramesbah.asynchronous_communicating_agents.exception;
+
+public class InvalidBinaryMessageException extends Exception {
+
+  public InvalidBinaryMessageException(String message) {
+    super(message);
+  }
+
+  public InvalidBinaryMessageException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -5,4 +5,8 @@ public class InvalidJsonMessageException extends Exception {
   public InvalidJsonMessageException(String message) {
     super(message);
   }
+
+  public InvalidJsonMessageException(String message, Throwable cause) {
+    super(message, cause);
+  }
 }
@@ -0,0 +1,49 @@
+package com.sadramesbah.asynchronous_communicating_agents.exception;
+
+import com.sadramesbah.asynchronous_communicating_agents.handler.ValidationResult;
+
+// a message that is well-formed but breaks the message rules or, in strict mode, the schema;
+// handlers report it as the cause of the exception of their format, so that callers can tell it
+// apart from malformed input
+public class MessageValidationException extends Exception {
+
+  public static final String SCHEMA_FIELD = "Schema";
+  public static final String MESSAGE_FIELD = "Message";
+
+  private final ValidationResult validationResult;
+
+  public MessageValidationException(ValidationResult validationResult) {
+    super(validationResult.name());
+    this.validationResult = validationResult;
+  }
+
+  // a schema violation, which is not tied to a validator result
+  public MessageValidationException(String violation, Throwable cause) {
+    super(violation, cause);
+    this.validationResult = null;
+  }
+
+  // null for a schema violation
+  public ValidationResult getValidationResult() {
+    return validationResult;
+  }
+
+  // the field that failed validation, Message for a missing message and Schema for a schema
+  // violation; a fixed set of names, so it can tag meters
+  public String getField() {
+    if (validationResult == null) {
+      return SCHEMA_FIELD;
+    }
+    return validationResult.getField() != null ? validationResult.getField() : MESSAGE_FIELD;
+  }
+
+  // the validation failure among the causes of the exception, or null if it has none
+  public static MessageValidationException findIn(Throwable exception) {
+    for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+      if (cause instanceof MessageValidationException validationException) {
+        return validationException;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,346 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidBinaryMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.exception.MessageValidationException;
+import com.sadramesbah.asynchronous_communicating_agents.message.BinaryMessage;
+import com.sadramesbah.asynchronous_communicating_agents.message.Message;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+// reads and writes the compact binary format:
+//   version byte, flags byte, varint MessageID, MessageTitle, MessageBody,
+//   CreationTime, LastModified, LastAgent, Status
+// strings are a varint of the UTF-8 length plus one followed by the bytes, zero meaning null;
+// timestamps are written only when their flag is set, as zigzag varint epoch millis followed by
+// a varint of the sub-millisecond nanos when that flag is set, so conversions are lossless
+@Component
+public class BinaryMessageHandler {
+
+  private static final Logger logger = LoggerFactory.getLogger(BinaryMessageHandler.class);
+  private static final byte FORMAT_VERSION = 1;
+
+  private static final int CREATION_TIME_PRESENT = 1;
+  private static final int LAST_MODIFIED_PRESENT = 1 << 1;
+  private static final int CREATION_TIME_NANOS = 1 << 2;
+  private static final int LAST_MODIFIED_NANOS = 1 << 3;
+  private static final int KNOWN_FLAGS = (1 << 4) - 1;
+
+  private static final int NANOS_PER_MILLI = 1_000_000;
+  private static final int MAX_VARINT_BYTES = 10;
+
+  private final MessageValidator validator;
+
+  public BinaryMessageHandler() {
+    this(MessageValidator.defaults());
+  }
+
+  @Autowired
+  public BinaryMessageHandler(MessageValidator validator) {
+    this.validator = validator;
+  }
+
+  // parses a binary message and converts it to BinaryMessage object
+  public BinaryMessage parse(byte[] binaryMessage) throws InvalidBinaryMessageException {
+    BinaryMessage binaryMessageObject = decode(binaryMessage);
+    ValidationResult validationResult = validator.validate(binaryMessageObject);
+    if (!validationResult.isValid()) {
+      logger.warn("Invalid binary message structure occurred while parsing. MessageID: {}, "
+              + "Agent: {}, Failure: {}", binaryMessageObject.getMessageId(),
+          binaryMessageObject.getLastAgent(), validationResult);
+      throw new InvalidBinaryMessageException(
+          "Invalid binary message structure occurred while parsing: " + validationResult,
+          new MessageValidationException(validationResult));
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Parsed binary message successfully. MessageID: {}, Agent: {}",
+          binaryMessageObject.getMessageId(), binaryMessageObject.getLastAgent());
+    }
+    return binaryMessageObject;
+  }
+
+  // parses a Base64 encoded binary message and converts it to BinaryMessage object
+  public BinaryMessage parse(String binaryMessageInBase64) throws InvalidBinaryMessageException {
+    return parse(decodeBase64(binaryMessageInBase64));
+  }
+
+  // converts a message of any format to the binary format
+  public byte[] toBytes(Message messageObject) throws InvalidBinaryMessageException {
+    ValidationResult validationResult = validator.validate(messageObject);
+    if (!validationResult.isValid()) {
+      logger.warn("Invalid message structure occurred while converting to binary. MessageID: {}, "
+              + "Failure: {}", messageObject == null ? null : messageObject.getMessageId(),
+          validationResult);
+      throw new InvalidBinaryMessageException(
+          "Invalid binary message structure occurred while converting to bytes: "
+              + validationResult,
+          new MessageValidationException(validationResult));
+    }
+    return encode(messageObject);
+  }
+
+  // converts a message of any format to the binary format encoded with Base64
+  public String toBinaryString(Message messageObject) throws InvalidBinaryMessageException {
+    return Base64.getEncoder().encodeToString(toBytes(messageObject));
+  }
+
+  // applies the update to a binary message and returns the updated binary message; the format
+  // has no trail field, so the body grows with every update of a combined one
+  public byte[] transform(byte[] binaryMessage, MessageUpdate update)
+      throws InvalidBinaryMessageException {
+    BinaryMessage binaryMessageObject = parse(binaryMessage);
+    if (update.precedingSuffixLength() > 0) {
+      ValidationResult bodyResult = validator.validateMessageBody(
+          binaryMessageObject.getMessageBody(), update.precedingSuffixLength());
+      if (!bodyResult.isValid()) {
+        logger.warn("Invalid binary message structure occurred while transforming. MessageID: "
+            + "{}, Failure: {}", binaryMessageObject.getMessageId(), bodyResult);
+        throw new InvalidBinaryMessageException(
+            "Invalid binary message structure occurred while transforming: " + bodyResult,
+            new MessageValidationException(bodyResult));
+      }
+    }
+    update.applyTo(binaryMessageObject);
+    return encode(binaryMessageObject);
+  }
+
+  // applies the update to a binary message read from the input stream and writes it to the
+  // output stream; both streams are left open
+  public void transform(InputStream inputStream, OutputStream outputStream, MessageUpdate update)
+      throws InvalidBinaryMessageException, IOException {
+    outputStream.write(transform(inputStream.readAllBytes(), update));
+  }
+
+  // applies the update to a Base64 encoded binary message and returns it Base64 encoded
+  public String transform(String binaryMessageInBase64, MessageUpdate update)
+      throws InvalidBinaryMessageException {
+    return Base64.getEncoder().encodeToString(
+        transform(decodeBase64(binaryMessageInBase64), update));
+  }
+
+  private static byte[] decodeBase64(String binaryMessageInBase64)
+      throws InvalidBinaryMessageException {
+    try {
+      return Base64.getDecoder().decode(binaryMessageInBase64);
+    } catch (IllegalArgumentException illegalArgumentException) {
+      throw new InvalidBinaryMessageException("Binary message is not valid Base64.",
+          illegalArgumentException);
+    }
+  }
+
+  // writes the fields into an array allocated once with the exact encoded size
+  private static byte[] encode(Message messageObject) {
+    byte[] title = utf8(messageObject.getMessageTitle());
+    // the binary format has no trail field, so a separate trail is appended to the body
+    byte[] body = utf8(messageObject.bodyWithProcessingTrail());
+    byte[] lastAgent = utf8(messageObject.getLastAgent());
+    byte[] status = utf8(messageObject.getStatus());
+    Timestamp creationTime = messageObject.getCreationTime();
+    Timestamp lastModified = messageObject.getLastModified();
+    int flags = timestampFlags(creationTime, CREATION_TIME_PRESENT, CREATION_TIME_NANOS)
+        | timestampFlags(lastModified, LAST_MODIFIED_PRESENT, LAST_MODIFIED_NANOS);
+
+    int size = 2 + varintSize(Integer.toUnsignedLong(messageObject.getMessageId()))
+        + stringSize(title) + stringSize(body) + stringSize(lastAgent) + stringSize(status)
+        + timestampSize(creationTime) + timestampSize(lastModified);
+    BinaryWriter writer = new BinaryWriter(size);
+    writer.writeByte(FORMAT_VERSION);
+    writer.writeByte(flags);
+    writer.writeVarint(Integer.toUnsignedLong(messageObject.getMessageId()));
+    writer.writeString(title);
+    writer.writeString(body);
+    writer.writeTimestamp(creationTime);
+    writer.writeTimestamp(lastModified);
+    writer.writeString(lastAgent);
+    writer.writeString(status);
+    return writer.buffer;
+  }
+
+  private static BinaryMessage decode(byte[] binaryMessage) throws InvalidBinaryMessageException {
+    if (binaryMessage == null) {
+      throw new InvalidBinaryMessageException("Binary message is null.");
+    }
+    BinaryReader reader = new BinaryReader(binaryMessage);
+    int version = reader.readByte();
+    if (version != FORMAT_VERSION) {
+      throw new InvalidBinaryMessageException("Unsupported binary message version " + version);
+    }
+    int flags = reader.readByte();
+    if ((flags & ~KNOWN_FLAGS) != 0) {
+      throw new InvalidBinaryMessageException("Unknown binary message flags " + flags);
+    }
+    long messageId = reader.readVarint();
+    if (messageId < 0 || messageId > 0xFFFFFFFFL) {
+      throw new InvalidBinaryMessageException("MessageID does not fit in 32 bits.");
+    }
+    BinaryMessage binaryMessageObject = new BinaryMessage();
+    binaryMessageObject.setMessageId((int) messageId);
+    binaryMessageObject.setMessageTitle(reader.readString());
+    binaryMessageObject.setMessageBody(reader.readString());
+    binaryMessageObject.setCreationTime(
+        reader.readTimestamp(flags, CREATION_TIME_PRESENT, CREATION_TIME_NANOS));
+    binaryMessageObject.setLastModified(
+        reader.readTimestamp(flags, LAST_MODIFIED_PRESENT, LAST_MODIFIED_NANOS));
+    binaryMessageObject.setLastAgent(reader.readString());
+    binaryMessageObject.setStatus(reader.readString());
+    if (reader.position != binaryMessage.length) {
+      throw new InvalidBinaryMessageException("Binary message has trailing bytes.");
+    }
+    return binaryMessageObject;
+  }
+
+  private static byte[] utf8(String value) {
+    return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static int timestampFlags(Timestamp timestamp, int presentFlag, int nanosFlag) {
+    if (timestamp == null) {
+      return 0;
+    }
+    return timestamp.getNanos() % NANOS_PER_MILLI != 0 ? presentFlag | nanosFlag : presentFlag;
+  }
+
+  private static int stringSize(byte[] value) {
+    return value == null ? 1 : varintSize(value.length + 1L) + value.length;
+  }
+
+  private static int timestampSize(Timestamp timestamp) {
+    if (timestamp == null) {
+      return 0;
+    }
+    int subMilliNanos = timestamp.getNanos() % NANOS_PER_MILLI;
+    return varintSize(zigzag(timestamp.getTime()))
+        + (subMilliNanos != 0 ? varintSize(subMilliNanos) : 0);
+  }
+
+  private static int varintSize(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static final class BinaryWriter {
+
+    private final byte[] buffer;
+    private int position;
+
+    private BinaryWriter(int size) {
+      this.buffer = new byte[size];
+    }
+
+    private void writeByte(int value) {
+      buffer[position++] = (byte) value;
+    }
+
+    private void writeVarint(long value) {
+      while ((value & ~0x7FL) != 0) {
+        buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    private void writeString(byte[] value) {
+      if (value == null) {
+        writeVarint(0);
+        return;
+      }
+      writeVarint(value.length + 1L);
+      System.arraycopy(value, 0, buffer, position, value.length);
+      position += value.length;
+    }
+
+    private void writeTimestamp(Timestamp timestamp) {
+      if (timestamp == null) {
+        return;
+      }
+      writeVarint(zigzag(timestamp.getTime()));
+      int subMilliNanos = timestamp.getNanos() % NANOS_PER_MILLI;
+      if (subMilliNanos != 0) {
+        writeVarint(subMilliNanos);
+      }
+    }
+  }
+
+  private static final class BinaryReader {
+
+    private final byte[] buffer;
+    private int position;
+
+    private BinaryReader(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    private int readByte() throws InvalidBinaryMessageException {
+      if (position >= buffer.length) {
+        throw new InvalidBinaryMessageException("Binary message is truncated.");
+      }
+      return buffer[position++] & 0xFF;
+    }
+
+    private long readVarint() throws InvalidBinaryMessageException {
+      long value = 0;
+      for (int shift = 0, count = 0; count < MAX_VARINT_BYTES; shift += 7, count++) {
+        int current = readByte();
+        // the last byte holds only the top bit of a long, anything more overflows it
+        if (count == MAX_VARINT_BYTES - 1 && (current & 0x7F) > 1) {
+          break;
+        }
+        value |= (long) (current & 0x7F) << shift;
+        if ((current & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new InvalidBinaryMessageException("Binary message contains a malformed varint.");
+    }
+
+    private String readString() throws InvalidBinaryMessageException {
+      long lengthPlusOne = readVarint();
+      if (lengthPlusOne == 0) {
+        return null;
+      }
+      if (lengthPlusOne < 0) {
+        throw new InvalidBinaryMessageException("Binary message contains an invalid length.");
+      }
+      long length = lengthPlusOne - 1;
+      if (length > buffer.length - position) {
+        throw new InvalidBinaryMessageException("Binary message is truncated.");
+      }
+      String value = new String(buffer, position, (int) length, StandardCharsets.UTF_8);
+      position += (int) length;
+      return value;
+    }
+
+    private Timestamp readTimestamp(int flags, int presentFlag, int nanosFlag)
+        throws InvalidBinaryMessageException {
+      if ((flags & presentFlag) == 0) {
+        return null;
+      }
+      long zigzagMillis = readVarint();
+      Timestamp timestamp = new Timestamp((zigzagMillis >>> 1) ^ -(zigzagMillis & 1));
+      if ((flags & nanosFlag) != 0) {
+        long subMilliNanos = readVarint();
+        if (subMilliNanos < 0 || subMilliNanos >= NANOS_PER_MILLI) {
+          throw new InvalidBinaryMessageException("Binary message contains invalid nanos.");
+        }
+        timestamp.setNanos(timestamp.getNanos() + (int) subMilliNanos);
+      }
+      return timestamp;
+    }
+  }
+}
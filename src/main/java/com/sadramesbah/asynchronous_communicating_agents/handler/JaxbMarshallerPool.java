@@ -0,0 +1,139 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import com.sadramesbah.asynchronous_communicating_agents.message.XmlMessage;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.validation.Schema;
+
+// bounded lock-free pool of Marshaller and Unmarshaller instances over one shared JAXBContext;
+// JAXBContext is thread-safe while marshallers and unmarshallers are not, so every operation
+// borrows an instance for its exclusive use and returns it afterward
+public class JaxbMarshallerPool {
+
+  private static volatile JAXBContext xmlMessageContext;
+
+  private final JAXBContext jaxbContext;
+  private final Map<String, Object> marshallerProperties;
+  // checked by every unmarshaller while it reads, or null for no schema validation
+  private final Schema unmarshallerSchema;
+  private final int maxIdle;
+  private final Queue<Marshaller> idleMarshallers = new ConcurrentLinkedQueue<>();
+  private final Queue<Unmarshaller> idleUnmarshallers = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger idleMarshallerCount = new AtomicInteger();
+  private final AtomicInteger idleUnmarshallerCount = new AtomicInteger();
+
+  public JaxbMarshallerPool(JAXBContext jaxbContext, Map<String, Object> marshallerProperties,
+      Schema unmarshallerSchema, int maxIdle) {
+    this.jaxbContext = jaxbContext;
+    this.marshallerProperties = Map.copyOf(marshallerProperties);
+    this.unmarshallerSchema = unmarshallerSchema;
+    this.maxIdle = maxIdle;
+  }
+
+  public JaxbMarshallerPool(JAXBContext jaxbContext, Map<String, Object> marshallerProperties,
+      int maxIdle) {
+    this(jaxbContext, marshallerProperties, null, maxIdle);
+  }
+
+  public JaxbMarshallerPool(JAXBContext jaxbContext, Map<String, Object> marshallerProperties,
+      Schema unmarshallerSchema) {
+    this(jaxbContext, marshallerProperties, unmarshallerSchema,
+        Runtime.getRuntime().availableProcessors() * 2);
+  }
+
+  public JaxbMarshallerPool(JAXBContext jaxbContext, Map<String, Object> marshallerProperties) {
+    this(jaxbContext, marshallerProperties, null);
+  }
+
+  // returns the JAXBContext for XmlMessage, which is built once and shared by every handler
+  public static JAXBContext xmlMessageContext() throws JAXBException {
+    JAXBContext context = xmlMessageContext;
+    if (context == null) {
+      synchronized (JaxbMarshallerPool.class) {
+        context = xmlMessageContext;
+        if (context == null) {
+          context = JAXBContext.newInstance(XmlMessage.class);
+          xmlMessageContext = context;
+        }
+      }
+    }
+    return context;
+  }
+
+  // runs the operation with a marshaller that is not used by any other thread meanwhile
+  public <R> R withMarshaller(JaxbOperation<Marshaller, R> operation) throws JAXBException {
+    Marshaller marshaller = idleMarshallers.poll();
+    if (marshaller == null) {
+      marshaller = createMarshaller();
+    } else {
+      idleMarshallerCount.decrementAndGet();
+    }
+    try {
+      return operation.apply(marshaller);
+    } finally {
+      release(marshaller, idleMarshallers, idleMarshallerCount);
+    }
+  }
+
+  // runs the operation with an unmarshaller that is not used by any other thread meanwhile
+  public <R> R withUnmarshaller(JaxbOperation<Unmarshaller, R> operation) throws JAXBException {
+    Unmarshaller unmarshaller = idleUnmarshallers.poll();
+    if (unmarshaller == null) {
+      unmarshaller = createUnmarshaller();
+    } else {
+      idleUnmarshallerCount.decrementAndGet();
+    }
+    try {
+      return operation.apply(unmarshaller);
+    } finally {
+      release(unmarshaller, idleUnmarshallers, idleUnmarshallerCount);
+    }
+  }
+
+  public JAXBContext getJaxbContext() {
+    return jaxbContext;
+  }
+
+  int idleMarshallers() {
+    return idleMarshallerCount.get();
+  }
+
+  int idleUnmarshallers() {
+    return idleUnmarshallerCount.get();
+  }
+
+  private Marshaller createMarshaller() throws JAXBException {
+    Marshaller marshaller = jaxbContext.createMarshaller();
+    for (Map.Entry<String, Object> property : marshallerProperties.entrySet()) {
+      marshaller.setProperty(property.getKey(), property.getValue());
+    }
+    return marshaller;
+  }
+
+  private Unmarshaller createUnmarshaller() throws JAXBException {
+    Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+    unmarshaller.setSchema(unmarshallerSchema);
+    return unmarshaller;
+  }
+
+  // keeps at most maxIdle instances around; surplus instances created under a burst are dropped
+  private <T> void release(T instance, Queue<T> idleInstances, AtomicInteger idleCount) {
+    if (idleCount.incrementAndGet() > maxIdle) {
+      idleCount.decrementAndGet();
+      return;
+    }
+    idleInstances.offer(instance);
+  }
+
+  @FunctionalInterface
+  public interface JaxbOperation<T, R> {
+
+    R apply(T instance) throws JAXBException;
+  }
+}
@@ -1,12 +1,39 @@
 package com.sadramesbah.asynchronous_communicating_agents.handler;
 
 import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidJsonMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.exception.MessageValidationException;
 import com.sadramesbah.asynchronous_communicating_agents.message.JsonMessage;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.util.stream.Stream;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,64 +41,562 @@ import org.slf4j.LoggerFactory;
 public class JsonMessageHandler {
 
   private static final Logger logger = LoggerFactory.getLogger(JsonMessageHandler.class);
+  private static final String MESSAGE_ID = "MessageID";
+  private static final String MESSAGE_TITLE = "MessageTitle";
+  private static final String MESSAGE_BODY = "MessageBody";
+  private static final String CREATION_TIME = "CreationTime";
+  private static final String LAST_MODIFIED = "LastModified";
+  private static final String LAST_AGENT = "LastAgent";
+  private static final String STATUS = "Status";
+  private static final String PROCESSING_TRAIL = "ProcessingTrail";
+  private static final String ENTRY_AGENT = "Agent";
+  private static final String ENTRY_PROCESSED_AT = "ProcessedAt";
+  private static final String ENTRY_TEXT = "Text";
+  // the ISO-8601 forms the mapper's StdDateFormat reads: a date, optionally followed by a time
+  // with optional seconds and fraction and an optional offset, UTC when there is none
+  private static final Pattern ISO_8601 = Pattern.compile("(\\d{4})-(\\d\\d)-(\\d\\d)"
+      + "(?:T(\\d\\d):(\\d\\d)(?::(\\d\\d))?(?:\\.(\\d+))?(Z|[+-]\\d\\d(?::?\\d\\d)?)?)?");
+  private static final Pattern EPOCH_MILLIS = Pattern.compile("-?\\d+");
+
   private final ObjectMapper objectMapper;
+  private final JsonFactory jsonFactory;
+  private final OutputBufferPool outputBuffers = new OutputBufferPool();
+  private final MessageValidator validator;
+  // null unless messages are checked against the JSON schema while they are read
+  private final MessageSchemas.JsonSchema jsonSchema;
 
   public JsonMessageHandler() {
+    this(MessageValidator.defaults());
+  }
+
+  @Autowired
+  public JsonMessageHandler(MessageValidator validator) {
+    this.validator = validator;
+    this.jsonSchema = validator.jsonSchema();
     this.objectMapper = new ObjectMapper();
     // allows to ignore unknown properties in JSON message
     objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    if (jsonSchema != null) {
+      // the schema declares the timestamps as date-time strings rather than epoch milliseconds
+      objectMapper.registerModule(new SimpleModule()
+          .addSerializer(Timestamp.class, new DateTimeSerializer()));
+    }
+    this.jsonFactory = objectMapper.getFactory();
   }
 
   // parses JSON message in string format and converts it to JsonMessage object
   public JsonMessage parse(String jsonMessageInString)
       throws JsonProcessingException, InvalidJsonMessageException {
-    logger.info("Parsing JSON message from string.");
-    JsonMessage jsonMessageObject = objectMapper.readValue(jsonMessageInString, JsonMessage.class);
-    if (isInvalidJsonMessage(jsonMessageObject)) {
-      logger.warn("Invalid JSON message structure occurred while parsing. MessageID: {}, Agent: {}",
-          jsonMessageObject.getMessageId(), jsonMessageObject.getLastAgent());
+    if (jsonSchema == null) {
+      return validateParsed(objectMapper.readValue(jsonMessageInString, JsonMessage.class));
+    }
+    try {
+      return parseChecked(jsonFactory.createParser(jsonMessageInString));
+    } catch (JsonProcessingException jsonProcessingException) {
+      throw jsonProcessingException;
+    } catch (IOException ioException) {
+      throw JsonMappingException.fromUnexpectedIOE(ioException);
+    }
+  }
+
+  // parses a UTF-8 encoded JSON message and converts it to JsonMessage object
+  public JsonMessage parse(byte[] jsonMessageInBytes)
+      throws IOException, InvalidJsonMessageException {
+    if (jsonSchema == null) {
+      return validateParsed(objectMapper.readValue(jsonMessageInBytes, JsonMessage.class));
+    }
+    return parseChecked(jsonFactory.createParser(jsonMessageInBytes));
+  }
+
+  // parses a JSON message read from the stream and converts it to JsonMessage object
+  public JsonMessage parse(InputStream jsonMessageInputStream)
+      throws IOException, InvalidJsonMessageException {
+    if (jsonSchema == null) {
+      return validateParsed(objectMapper.readValue(jsonMessageInputStream, JsonMessage.class));
+    }
+    return parseChecked(jsonFactory.createParser(jsonMessageInputStream));
+  }
+
+  // binds the message while the parser checks each token against the JSON schema, so a message
+  // that does not match is rejected without reading the rest of it
+  private JsonMessage parseChecked(JsonParser parser)
+      throws IOException, InvalidJsonMessageException {
+    SchemaValidatingParser checkedParser = new SchemaValidatingParser(parser, jsonSchema);
+    try (checkedParser) {
+      return validateParsed(objectMapper.readValue(checkedParser, JsonMessage.class));
+    } catch (JsonProcessingException jsonProcessingException) {
+      if (checkedParser.getViolation() == null) {
+        throw jsonProcessingException;
+      }
+      throw schemaViolation(checkedParser.getViolation());
+    }
+  }
+
+  private JsonMessage validateParsed(JsonMessage jsonMessageObject)
+      throws InvalidJsonMessageException {
+    ValidationResult validationResult = validator.validate(jsonMessageObject);
+    if (!validationResult.isValid()) {
+      logger.warn("Invalid JSON message structure occurred while parsing. MessageID: {}, "
+              + "Agent: {}, Failure: {}", jsonMessageObject.getMessageId(),
+          jsonMessageObject.getLastAgent(), validationResult);
       throw new InvalidJsonMessageException(
-          "Invalid JSON message structure occurred while parsing.");
+          "Invalid JSON message structure occurred while parsing: " + validationResult,
+          new MessageValidationException(validationResult));
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Parsed JSON message successfully. MessageID: {}, Agent: {}",
+          jsonMessageObject.getMessageId(), jsonMessageObject.getLastAgent());
     }
-    logger.info("Parsed JSON message successfully. MessageID: {}, Agent: {}",
-        jsonMessageObject.getMessageId(), jsonMessageObject.getLastAgent());
     return jsonMessageObject;
   }
 
   // converts JsonMessage object to JSON message in string format
   public String toJsonString(JsonMessage jsonMessageObject)
       throws InvalidJsonMessageException, JsonProcessingException {
-    logger.info("Converting JsonMessage object to JSON string. MessageID: {}, Agent: {}",
-        jsonMessageObject.getMessageId(), jsonMessageObject.getLastAgent());
-    if (isInvalidJsonMessage(jsonMessageObject)) {
-      logger.warn(
-          "Invalid JSON message structure occurred while converting to string. MessageID: {}, Agent: {}",
+    if (logger.isDebugEnabled()) {
+      logger.debug("Converting JsonMessage object to JSON string. MessageID: {}, Agent: {}",
           jsonMessageObject.getMessageId(), jsonMessageObject.getLastAgent());
+    }
+    ValidationResult validationResult = validator.validate(jsonMessageObject);
+    if (!validationResult.isValid()) {
+      logger.warn("Invalid JSON message structure occurred while converting to string. "
+              + "MessageID: {}, Agent: {}, Failure: {}", jsonMessageObject.getMessageId(),
+          jsonMessageObject.getLastAgent(), validationResult);
       throw new InvalidJsonMessageException(
-          "Invalid JSON message structure occurred while converting to string.");
+          "Invalid JSON message structure occurred while converting to string: "
+              + validationResult,
+          new MessageValidationException(validationResult));
+    }
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    try {
+      writeToBuffer(jsonMessageObject, buffer);
+      return buffer.toString(StandardCharsets.UTF_8);
+    } finally {
+      outputBuffers.release(buffer);
     }
-    return objectMapper.writeValueAsString(jsonMessageObject);
   }
 
-  // checks if JsonMessage object has the expected structure
-  boolean isInvalidJsonMessage(JsonMessage jsonMessageObject) {
-    if (jsonMessageObject == null) {
-      logger.warn("JsonMessage object is null.");
-      return true;
+  // converts JsonMessage object to a UTF-8 encoded JSON message
+  public byte[] toJsonBytes(JsonMessage jsonMessageObject)
+      throws InvalidJsonMessageException, JsonProcessingException {
+    validateForWriting(jsonMessageObject);
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    try {
+      writeToBuffer(jsonMessageObject, buffer);
+      return buffer.toByteArray();
+    } finally {
+      outputBuffers.release(buffer);
+    }
+  }
+
+  // writes JsonMessage object UTF-8 encoded to the stream, which is left open
+  public void writeTo(JsonMessage jsonMessageObject, OutputStream outputStream)
+      throws InvalidJsonMessageException, IOException {
+    validateForWriting(jsonMessageObject);
+    write(jsonMessageObject, outputStream);
+  }
+
+  private void write(JsonMessage jsonMessageObject, OutputStream outputStream)
+      throws IOException {
+    try (JsonGenerator generator = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+      objectMapper.writeValue(generator, jsonMessageObject);
+    }
+  }
+
+  // pooled buffers never fail to write, so any other IOException is reported the way
+  // ObjectMapper.writeValueAsBytes reports it
+  private void writeToBuffer(JsonMessage jsonMessageObject, OutputBufferPool.Buffer buffer)
+      throws JsonProcessingException {
+    try {
+      write(jsonMessageObject, buffer);
+    } catch (JsonProcessingException jsonProcessingException) {
+      throw jsonProcessingException;
+    } catch (IOException ioException) {
+      throw JsonMappingException.fromUnexpectedIOE(ioException);
+    }
+  }
+
+  private void validateForWriting(JsonMessage jsonMessageObject)
+      throws InvalidJsonMessageException {
+    ValidationResult validationResult = validator.validate(jsonMessageObject);
+    if (!validationResult.isValid()) {
+      logger.warn("Invalid JSON message structure occurred while converting to bytes. "
+              + "MessageID: {}, Failure: {}",
+          jsonMessageObject == null ? null : jsonMessageObject.getMessageId(), validationResult);
+      throw new InvalidJsonMessageException(
+          "Invalid JSON message structure occurred while converting to bytes: "
+              + validationResult,
+          new MessageValidationException(validationResult));
     }
+  }
 
-    return Stream.of(
-        jsonMessageObject.getMessageId() <= 0,
-        isMissingNullOrEmpty(jsonMessageObject.getMessageTitle()),
-        isMissingNullOrEmpty(jsonMessageObject.getMessageBody()),
-        jsonMessageObject.getCreationTime() == null,
-        jsonMessageObject.getLastModified() == null,
-        isMissingNullOrEmpty(jsonMessageObject.getLastAgent()),
-        isMissingNullOrEmpty(jsonMessageObject.getStatus())
-    ).anyMatch(Boolean::booleanValue);
+  // applies the update to a JSON message in string format in a single streaming pass; a message
+  // with a ProcessingTrail field is bound instead unless the update keeps a separate trail
+  public String transform(String jsonMessageInString, MessageUpdate update)
+      throws IOException, InvalidJsonMessageException {
+    StringWriter stringWriter = new StringWriter(jsonMessageInString.length() + 128);
+    try (JsonParser parser = jsonFactory.createParser(jsonMessageInString);
+        JsonGenerator generator = jsonFactory.createGenerator(stringWriter)) {
+      if (transform(parser, generator, update)) {
+        generator.flush();
+        return stringWriter.toString();
+      }
+    }
+    return toJsonString(applyBound(parse(jsonMessageInString), update));
   }
 
-  private boolean isMissingNullOrEmpty(String value) {
-    return value == null || value.isEmpty() || "null".equals(value);
+  // applies the update to a UTF-8 encoded JSON message without decoding it to a string
+  public byte[] transform(byte[] jsonMessageInBytes, MessageUpdate update)
+      throws IOException, InvalidJsonMessageException {
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    try (JsonParser parser = jsonFactory.createParser(jsonMessageInBytes);
+        JsonGenerator generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+      if (transform(parser, generator, update)) {
+        generator.flush();
+        return buffer.toByteArray();
+      }
+    } finally {
+      outputBuffers.release(buffer);
+    }
+    return toJsonBytes(applyBound(parse(jsonMessageInBytes), update));
+  }
+
+  // applies the update to a UTF-8 encoded JSON message held in a buffer
+  public byte[] transform(ByteBuffer jsonMessageInBuffer, MessageUpdate update)
+      throws IOException, InvalidJsonMessageException {
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    try (JsonParser parser = createParser(jsonMessageInBuffer.slice());
+        JsonGenerator generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+      if (transform(parser, generator, update)) {
+        generator.flush();
+        return buffer.toByteArray();
+      }
+    } finally {
+      outputBuffers.release(buffer);
+    }
+    return toJsonBytes(applyBound(
+        parse(new ByteBufferBackedInputStream(jsonMessageInBuffer.slice())), update));
+  }
+
+  // applies the update to a UTF-8 encoded JSON message read from the input stream and writes the
+  // result to the output stream; the output is buffered until the message passed validation, so
+  // an invalid message writes nothing. the input is not held in memory when the update keeps a
+  // separate trail, and is read in full otherwise, as a ProcessingTrail field found on the way
+  // means binding it. both streams are left open
+  public void transform(InputStream inputStream, OutputStream outputStream, MessageUpdate update)
+      throws IOException, InvalidJsonMessageException {
+    if (!update.separateTrail()) {
+      outputStream.write(transform(inputStream.readAllBytes(), update));
+      return;
+    }
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    try (JsonParser parser = jsonFactory.createParser(inputStream)
+        .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        JsonGenerator generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+      transform(parser, generator, update);
+      generator.flush();
+      buffer.writeTo(outputStream);
+    } finally {
+      outputBuffers.release(buffer);
+    }
+  }
+
+  // the bound path for messages whose processing trail the rewrite cannot extend
+  private static JsonMessage applyBound(JsonMessage jsonMessageObject, MessageUpdate update) {
+    logger.debug("Binding JSON message because it has a ProcessingTrail field.");
+    update.applyTo(jsonMessageObject);
+    return jsonMessageObject;
+  }
+
+  private JsonParser createParser(ByteBuffer buffer) throws IOException {
+    if (buffer.hasArray()) {
+      return jsonFactory.createParser(buffer.array(), buffer.arrayOffset() + buffer.position(),
+          buffer.remaining());
+    }
+    return jsonFactory.createParser(new ByteBufferBackedInputStream(buffer));
+  }
+
+  // in strict mode the tokens are checked against the JSON schema as they are copied; returns
+  // false when the message has to be bound to apply the update
+  private boolean transform(JsonParser parser, JsonGenerator generator, MessageUpdate update)
+      throws IOException, InvalidJsonMessageException {
+    if (jsonSchema == null) {
+      return rewrite(parser, generator, update);
+    }
+    SchemaValidatingParser checkedParser = new SchemaValidatingParser(parser, jsonSchema);
+    try {
+      return rewrite(checkedParser, generator, update);
+    } catch (JsonProcessingException jsonProcessingException) {
+      if (checkedParser.getViolation() == null) {
+        throw jsonProcessingException;
+      }
+      throw schemaViolation(checkedParser.getViolation());
+    }
+  }
+
+  // copies the message token by token, rewriting MessageBody, LastAgent and LastModified and
+  // checking the required fields on the way; fields that are not rewritten are copied verbatim.
+  // for an update with a separate trail MessageBody is copied too and the update becomes an
+  // entry of the ProcessingTrail field, which is added at the end when there is none. returns
+  // false, leaving the rest unread, when the message has a ProcessingTrail field but the update
+  // does not keep a separate trail, because the body suffix belongs in that field
+  private boolean rewrite(JsonParser parser, JsonGenerator generator, MessageUpdate update)
+      throws IOException, InvalidJsonMessageException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      logger.warn("JSON message is not an object.");
+      throw new InvalidJsonMessageException(
+          "Invalid JSON message structure occurred while transforming.");
+    }
+    // one MessageValidator field bit per required field seen with a valid value, and the first
+    // field that was present but failed a check
+    int validFields = 0;
+    ValidationResult failure = ValidationResult.VALID;
+    int messageId = 0;
+    boolean processingTrailWritten = false;
+    generator.writeStartObject();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldName = parser.currentName();
+      JsonToken valueToken = parser.nextToken();
+      switch (fieldName) {
+        case MESSAGE_ID -> {
+          messageId = messageIdOf(parser, valueToken);
+          validFields |= messageId > 0 ? MessageValidator.MESSAGE_ID_FIELD : 0;
+          copyField(parser, generator, fieldName);
+        }
+        case MESSAGE_TITLE -> {
+          validFields |= hasText(parser, valueToken) ? MessageValidator.MESSAGE_TITLE_FIELD : 0;
+          copyField(parser, generator, fieldName);
+        }
+        case MESSAGE_BODY -> {
+          String messageBody = textOf(parser, valueToken);
+          ValidationResult bodyResult = validator.validateMessageBody(messageBody,
+              update.separateTrail() ? 0 : update.precedingSuffixLength());
+          if (bodyResult == ValidationResult.VALID && !update.separateTrail()) {
+            validFields |= MessageValidator.MESSAGE_BODY_FIELD;
+            generator.writeStringField(fieldName, messageBody + update.bodySuffix());
+          } else if (bodyResult == ValidationResult.VALID) {
+            validFields |= MessageValidator.MESSAGE_BODY_FIELD;
+            copyField(parser, generator, fieldName);
+          } else {
+            failure = firstFailure(failure, bodyResult);
+            copyField(parser, generator, fieldName);
+          }
+        }
+        case CREATION_TIME -> {
+          validFields |= timestampOf(parser, valueToken) != null
+              ? MessageValidator.CREATION_TIME_FIELD
+              : 0;
+          copyField(parser, generator, fieldName);
+        }
+        case LAST_MODIFIED -> {
+          validFields |= timestampOf(parser, valueToken) != null
+              ? MessageValidator.LAST_MODIFIED_FIELD
+              : 0;
+          parser.skipChildren();
+          generator.writeFieldName(fieldName);
+          writeTimestamp(generator, update.lastModified());
+        }
+        case LAST_AGENT -> {
+          validFields |= hasText(parser, valueToken) ? MessageValidator.LAST_AGENT_FIELD : 0;
+          parser.skipChildren();
+          generator.writeStringField(fieldName, update.agentId());
+        }
+        case STATUS -> {
+          ValidationResult statusResult = validator.validateStatus(textOf(parser, valueToken));
+          if (statusResult == ValidationResult.VALID) {
+            validFields |= MessageValidator.STATUS_FIELD;
+          } else {
+            failure = firstFailure(failure, statusResult);
+          }
+          copyField(parser, generator, fieldName);
+        }
+        case PROCESSING_TRAIL -> {
+          if (!update.separateTrail()) {
+            return false;
+          }
+          if (valueToken != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "ProcessingTrail is not an array");
+          }
+          generator.writeArrayFieldStart(fieldName);
+          while (parser.nextToken() != JsonToken.END_ARRAY) {
+            generator.copyCurrentStructure(parser);
+          }
+          writeEntries(generator, update);
+          generator.writeEndArray();
+          processingTrailWritten = true;
+        }
+        default -> copyField(parser, generator, fieldName);
+      }
+    }
+    ValidationResult validationResult = failure != ValidationResult.VALID
+        ? failure
+        : MessageValidator.missingField(validFields);
+    if (!validationResult.isValid()) {
+      logger.warn("Invalid JSON message structure occurred while transforming. MessageID: {}, "
+          + "Failure: {}", messageId, validationResult);
+      throw new InvalidJsonMessageException(
+          "Invalid JSON message structure occurred while transforming: " + validationResult,
+          new MessageValidationException(validationResult));
+    }
+    if (update.separateTrail() && !processingTrailWritten) {
+      generator.writeArrayFieldStart(PROCESSING_TRAIL);
+      writeEntries(generator, update);
+      generator.writeEndArray();
+    }
+    generator.writeEndObject();
+    if (logger.isDebugEnabled()) {
+      logger.debug("Transformed JSON message successfully. MessageID: {}, Agent: {}", messageId,
+          update.agentId());
+    }
+    return true;
+  }
+
+  // writes the entries the way JsonMessage binds ProcessingTrail.Entry
+  private void writeEntries(JsonGenerator generator, MessageUpdate update) throws IOException {
+    for (MessageUpdate trailUpdate : update.trailUpdates()) {
+      generator.writeStartObject();
+      generator.writeStringField(ENTRY_AGENT, trailUpdate.agentId());
+      generator.writeFieldName(ENTRY_PROCESSED_AT);
+      writeTimestamp(generator, trailUpdate.lastModified());
+      generator.writeStringField(ENTRY_TEXT, trailUpdate.bodySuffix());
+      generator.writeEndObject();
+    }
+  }
+
+  // writes a timestamp the way the object mapper does
+  private void writeTimestamp(JsonGenerator generator, Timestamp timestamp) throws IOException {
+    if (jsonSchema != null) {
+      generator.writeString(dateTime(timestamp));
+    } else {
+      generator.writeNumber(timestamp.getTime());
+    }
+  }
+
+  // written the way TimestampAdapter writes timestamps to XML, e.g. 2024-12-20T16:15:00Z
+  private static String dateTime(Timestamp timestamp) {
+    return timestamp.toInstant().toString();
+  }
+
+  private static InvalidJsonMessageException schemaViolation(String violation) {
+    logger.warn("JSON message does not match the schema: {}", violation);
+    return new InvalidJsonMessageException("JSON message does not match the schema: " + violation,
+        new MessageValidationException(violation, null));
+  }
+
+  private static void copyField(JsonParser parser, JsonGenerator generator, String fieldName)
+      throws IOException {
+    generator.writeFieldName(fieldName);
+    generator.copyCurrentStructure(parser);
+  }
+
+  // reads MessageID the way binding it to an int does, which also takes numeric strings and
+  // truncates decimals; a value binding would reject yields 0, which fails validation
+  private static int messageIdOf(JsonParser parser, JsonToken valueToken) throws IOException {
+    return switch (valueToken) {
+      case VALUE_NUMBER_INT -> parser.getIntValue();
+      case VALUE_NUMBER_FLOAT -> parser.getValueAsInt();
+      case VALUE_STRING -> {
+        try {
+          yield Integer.parseInt(parser.getText().trim());
+        } catch (NumberFormatException numberFormatException) {
+          yield 0;
+        }
+      }
+      default -> 0;
+    };
+  }
+
+  // reads the value the way binding it to a Timestamp does: epoch milliseconds, or a string the
+  // mapper's StdDateFormat parses, i.e. epoch milliseconds, ISO-8601 or RFC 1123, truncated to
+  // milliseconds. returns null where binding fails or yields null, as for "" and "null". parsed
+  // by hand with immutable patterns, as the mapper's date format would have to be cloned per use
+  private static Timestamp timestampOf(JsonParser parser, JsonToken valueToken)
+      throws IOException {
+    if (valueToken == JsonToken.VALUE_NUMBER_INT) {
+      return new Timestamp(parser.getLongValue());
+    }
+    if (valueToken != JsonToken.VALUE_STRING) {
+      return null;
+    }
+    String text = parser.getText().trim();
+    try {
+      Matcher iso = ISO_8601.matcher(text);
+      if (iso.matches()) {
+        return Timestamp.from(isoInstant(iso));
+      }
+      // like StdDateFormat, a string that starts like a date is ISO-8601 or invalid
+      if (text.length() >= 7 && text.charAt(4) == '-' && text.substring(0, 4).chars()
+          .allMatch(Character::isDigit)) {
+        return null;
+      }
+      if (EPOCH_MILLIS.matcher(text).matches()) {
+        return new Timestamp(Long.parseLong(text));
+      }
+      if (text.isEmpty() || "null".equals(text)) {
+        return null;
+      }
+      return Timestamp.from(Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(text)));
+    } catch (DateTimeException | NumberFormatException exception) {
+      return null;
+    }
+  }
+
+  // fields out of range roll over into the next ones, as with the lenient StdDateFormat
+  private static Instant isoInstant(Matcher iso) {
+    LocalDateTime dateTime = LocalDateTime.of(Integer.parseInt(iso.group(1)), 1, 1, 0, 0)
+        .plusMonths(Integer.parseInt(iso.group(2)) - 1L)
+        .plusDays(Integer.parseInt(iso.group(3)) - 1L);
+    if (iso.group(4) != null) {
+      dateTime = dateTime.plusHours(Integer.parseInt(iso.group(4)))
+          .plusMinutes(Integer.parseInt(iso.group(5)));
+    }
+    if (iso.group(6) != null) {
+      dateTime = dateTime.plusSeconds(Integer.parseInt(iso.group(6)));
+    }
+    if (iso.group(7) != null) {
+      String millis = (iso.group(7) + "00").substring(0, 3);
+      dateTime = dateTime.plusNanos(Integer.parseInt(millis) * 1_000_000L);
+    }
+    String offset = iso.group(8);
+    if (offset == null || "Z".equals(offset)) {
+      return dateTime.toInstant(ZoneOffset.UTC);
+    }
+    int sign = offset.charAt(0) == '-' ? -1 : 1;
+    String digits = offset.substring(1).replace(":", "");
+    int minutes = Integer.parseInt(digits.substring(0, 2)) * 60
+        + (digits.length() > 2 ? Integer.parseInt(digits.substring(2)) : 0);
+    return dateTime.toInstant(ZoneOffset.ofTotalSeconds(sign * minutes * 60));
+  }
+
+  private static boolean hasText(JsonParser parser, JsonToken valueToken) throws IOException {
+    return MessageValidator.hasText(textOf(parser, valueToken));
+  }
+
+  private static String textOf(JsonParser parser, JsonToken valueToken) throws IOException {
+    return valueToken == JsonToken.VALUE_STRING ? parser.getText() : null;
+  }
+
+  private static ValidationResult firstFailure(ValidationResult failure,
+      ValidationResult result) {
+    return failure == ValidationResult.VALID ? result : failure;
+  }
+
+  // checks if JsonMessage object has the expected structure
+  boolean isInvalidJsonMessage(JsonMessage jsonMessageObject) {
+    return !validator.validate(jsonMessageObject).isValid();
+  }
+
+  private static final class DateTimeSerializer extends StdSerializer<Timestamp> {
+
+    private DateTimeSerializer() {
+      super(Timestamp.class);
+    }
+
+    @Override
+    public void serialize(Timestamp timestamp, JsonGenerator generator,
+        SerializerProvider provider) throws IOException {
+      generator.writeString(dateTime(timestamp));
+    }
   }
-}
\ No newline at end of file
+}
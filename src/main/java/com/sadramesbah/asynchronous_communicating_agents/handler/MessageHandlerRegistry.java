@@ -0,0 +1,57 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.soap.SOAPException;
+import org.springframework.stereotype.Component;
+
+// holds the thread-safe message handlers that all messaging agents share
+@Component
+public class MessageHandlerRegistry {
+
+  private static volatile MessageHandlerRegistry defaultRegistry;
+
+  private final JsonMessageHandler jsonHandler;
+  private final XmlMessageHandler xmlHandler;
+  private final SoapMessageHandler soapHandler;
+  private final BinaryMessageHandler binaryHandler;
+
+  public MessageHandlerRegistry(JsonMessageHandler jsonHandler, XmlMessageHandler xmlHandler,
+      SoapMessageHandler soapHandler, BinaryMessageHandler binaryHandler) {
+    this.jsonHandler = jsonHandler;
+    this.xmlHandler = xmlHandler;
+    this.soapHandler = soapHandler;
+    this.binaryHandler = binaryHandler;
+  }
+
+  // returns the registry used by agents created outside the Spring context, built on first use
+  public static MessageHandlerRegistry defaultRegistry() throws JAXBException, SOAPException {
+    MessageHandlerRegistry registry = defaultRegistry;
+    if (registry == null) {
+      synchronized (MessageHandlerRegistry.class) {
+        registry = defaultRegistry;
+        if (registry == null) {
+          registry = new MessageHandlerRegistry(new JsonMessageHandler(), new XmlMessageHandler(),
+              new SoapMessageHandler(), new BinaryMessageHandler());
+          defaultRegistry = registry;
+        }
+      }
+    }
+    return registry;
+  }
+
+  public JsonMessageHandler getJsonHandler() {
+    return jsonHandler;
+  }
+
+  public XmlMessageHandler getXmlHandler() {
+    return xmlHandler;
+  }
+
+  public SoapMessageHandler getSoapHandler() {
+    return soapHandler;
+  }
+
+  public BinaryMessageHandler getBinaryHandler() {
+    return binaryHandler;
+  }
+}
@@ -0,0 +1,197 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import org.xml.sax.SAXException;
+
+// the bundled XmlMessageSchema.xsd and JsonMessageSchema.json, compiled once and shared by every
+// handler; both compiled forms are immutable and thread-safe
+final class MessageSchemas {
+
+  static final String XML_SCHEMA_RESOURCE = "/XmlMessageSchema.xsd";
+  static final String JSON_SCHEMA_RESOURCE = "/JsonMessageSchema.json";
+
+  private static volatile MessageSchemas bundled;
+
+  private final Schema xmlSchema;
+  private final JsonSchema jsonSchema;
+
+  private MessageSchemas(Schema xmlSchema, JsonSchema jsonSchema) {
+    this.xmlSchema = xmlSchema;
+    this.jsonSchema = jsonSchema;
+  }
+
+  // compiles the bundled schemas on first use; a missing or broken schema fails the startup
+  static MessageSchemas bundled() {
+    MessageSchemas schemas = bundled;
+    if (schemas == null) {
+      synchronized (MessageSchemas.class) {
+        schemas = bundled;
+        if (schemas == null) {
+          schemas = new MessageSchemas(compileXmlSchema(), compileJsonSchema());
+          bundled = schemas;
+        }
+      }
+    }
+    return schemas;
+  }
+
+  Schema getXmlSchema() {
+    return xmlSchema;
+  }
+
+  JsonSchema getJsonSchema() {
+    return jsonSchema;
+  }
+
+  private static Schema compileXmlSchema() {
+    URL resource = MessageSchemas.class.getResource(XML_SCHEMA_RESOURCE);
+    if (resource == null) {
+      throw new IllegalStateException("Missing XML schema " + XML_SCHEMA_RESOURCE);
+    }
+    try {
+      SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+      schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+      return schemaFactory.newSchema(resource);
+    } catch (SAXException saxException) {
+      throw new IllegalStateException("Invalid XML schema " + XML_SCHEMA_RESOURCE, saxException);
+    }
+  }
+
+  private static JsonSchema compileJsonSchema() {
+    try (InputStream inputStream = MessageSchemas.class.getResourceAsStream(
+        JSON_SCHEMA_RESOURCE)) {
+      if (inputStream == null) {
+        throw new IllegalStateException("Missing JSON schema " + JSON_SCHEMA_RESOURCE);
+      }
+      return JsonSchema.compile(new ObjectMapper().readTree(inputStream));
+    } catch (IOException ioException) {
+      throw new IllegalStateException("Invalid JSON schema " + JSON_SCHEMA_RESOURCE, ioException);
+    }
+  }
+
+  // the subset of draft-07 the bundled schema uses: an object whose properties have a type and
+  // optionally the date-time format, and a list of required properties. additional properties
+  // are allowed, as the bundled schema does not forbid them; any other validation keyword fails
+  // the compilation rather than being ignored. date-time properties also accept the epoch
+  // milliseconds that agents without schema validation write, so both kinds of agents can be
+  // mixed in one deployment
+  static final class JsonSchema {
+
+    private static final Set<String> ANNOTATIONS =
+        Set.of("$schema", "$id", "$comment", "title", "description");
+    private static final Set<String> SCHEMA_KEYWORDS = Set.of("type", "properties", "required");
+    private static final Set<String> PROPERTY_KEYWORDS = Set.of("type", "format");
+
+    private final Map<String, JsonProperty> properties;
+    private final long requiredProperties;
+
+    private JsonSchema(Map<String, JsonProperty> properties, long requiredProperties) {
+      this.properties = properties;
+      this.requiredProperties = requiredProperties;
+    }
+
+    static JsonSchema compile(JsonNode schemaNode) {
+      checkKeywords(schemaNode, SCHEMA_KEYWORDS, "");
+      if (!"object".equals(schemaNode.path("type").asText())) {
+        throw new IllegalStateException("JSON schema does not describe an object");
+      }
+      Map<String, Integer> requiredIndexes = new HashMap<>();
+      for (JsonNode requiredNode : schemaNode.path("required")) {
+        requiredIndexes.putIfAbsent(requiredNode.asText(), requiredIndexes.size());
+      }
+      if (requiredIndexes.size() > Long.SIZE) {
+        throw new IllegalStateException("JSON schema requires more than 64 properties");
+      }
+      Map<String, JsonProperty> properties = new HashMap<>();
+      schemaNode.path("properties").properties().forEach(property -> {
+        checkKeywords(property.getValue(), PROPERTY_KEYWORDS, " of " + property.getKey());
+        String type = property.getValue().path("type").asText();
+        String format = property.getValue().path("format").asText(null);
+        if (format != null && !"date-time".equals(format)) {
+          throw new IllegalStateException(
+              "Unsupported JSON schema format " + format + " of " + property.getKey());
+        }
+        Integer requiredIndex = requiredIndexes.get(property.getKey());
+        Set<JsonToken> tokens = tokensOf(type);
+        if (format != null) {
+          tokens.add(JsonToken.VALUE_NUMBER_INT);
+        }
+        properties.put(property.getKey(), new JsonProperty(property.getKey(), type,
+            tokens, format != null,
+            requiredIndex == null ? 0L : 1L << requiredIndex));
+      });
+      // required properties without a declared type accept any value
+      requiredIndexes.forEach((name, index) -> properties.putIfAbsent(name,
+          new JsonProperty(name, "any", EnumSet.allOf(JsonToken.class), false, 1L << index)));
+      long requiredProperties = requiredIndexes.size() == Long.SIZE
+          ? -1L
+          : (1L << requiredIndexes.size()) - 1;
+      return new JsonSchema(Map.copyOf(properties), requiredProperties);
+    }
+
+    // returns null for properties the schema does not describe
+    JsonProperty property(String name) {
+      return properties.get(name);
+    }
+
+    // returns the first required property whose bit is not set, or null when all are present
+    String missingProperty(long presentProperties) {
+      long missing = requiredProperties & ~presentProperties;
+      if (missing == 0L) {
+        return null;
+      }
+      long bit = Long.lowestOneBit(missing);
+      for (JsonProperty property : properties.values()) {
+        if (property.requiredBit() == bit) {
+          return property.name();
+        }
+      }
+      return null;
+    }
+
+    private static void checkKeywords(JsonNode schemaNode, Set<String> keywords, String owner) {
+      schemaNode.fieldNames().forEachRemaining(keyword -> {
+        if (!keywords.contains(keyword) && !ANNOTATIONS.contains(keyword)) {
+          throw new IllegalStateException(
+              "Unsupported JSON schema keyword " + keyword + owner);
+        }
+      });
+    }
+
+    private static Set<JsonToken> tokensOf(String type) {
+      return switch (type) {
+        case "integer" -> EnumSet.of(JsonToken.VALUE_NUMBER_INT);
+        case "number" -> EnumSet.of(JsonToken.VALUE_NUMBER_INT, JsonToken.VALUE_NUMBER_FLOAT);
+        case "string" -> EnumSet.of(JsonToken.VALUE_STRING);
+        case "boolean" -> EnumSet.of(JsonToken.VALUE_TRUE, JsonToken.VALUE_FALSE);
+        case "object" -> EnumSet.of(JsonToken.START_OBJECT);
+        case "array" -> EnumSet.of(JsonToken.START_ARRAY);
+        case "null" -> EnumSet.of(JsonToken.VALUE_NULL);
+        default -> throw new IllegalStateException("Unsupported JSON schema type " + type);
+      };
+    }
+  }
+
+  // compiled property of the JSON schema: the value tokens its type accepts, whether strings
+  // must be date-times and its bit among the required properties, if it is required
+  record JsonProperty(String name, String type, Set<JsonToken> tokens, boolean dateTime,
+                      long requiredBit) {
+
+    boolean accepts(JsonToken token) {
+      return tokens.contains(token);
+    }
+  }
+}
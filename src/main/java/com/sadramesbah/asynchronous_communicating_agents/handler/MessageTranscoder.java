@@ -0,0 +1,57 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidBinaryMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidJsonMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.message.JsonMessage;
+import com.sadramesbah.asynchronous_communicating_agents.message.Message;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import com.sadramesbah.asynchronous_communicating_agents.message.XmlMessage;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.soap.SOAPException;
+import java.io.IOException;
+
+// converts messages between formats through the shared Message representation: a message is
+// parsed once into the bound object of its format and serialized once from that object, copying
+// fields only when the output format binds a different class
+public class MessageTranscoder {
+
+  private final JsonMessageHandler jsonHandler;
+  private final XmlMessageHandler xmlHandler;
+  private final SoapMessageHandler soapHandler;
+  private final BinaryMessageHandler binaryHandler;
+
+  public MessageTranscoder(MessageHandlerRegistry handlerRegistry) {
+    this.jsonHandler = handlerRegistry.getJsonHandler();
+    this.xmlHandler = handlerRegistry.getXmlHandler();
+    this.soapHandler = handlerRegistry.getSoapHandler();
+    this.binaryHandler = handlerRegistry.getBinaryHandler();
+  }
+
+  // parses a message of the given format; SOAP messages yield their inner message
+  public Message parse(String inputMessage, MessageType inputMessageType)
+      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+      InvalidBinaryMessageException {
+    return switch (inputMessageType) {
+      case JSON -> jsonHandler.parse(inputMessage);
+      case XML -> xmlHandler.parse(inputMessage);
+      case SOAP -> soapHandler.parseInnerMessage(inputMessage);
+      case BINARY -> binaryHandler.parse(inputMessage);
+    };
+  }
+
+  // serializes a message of any format to the given format; SOAP messages get a new envelope
+  public String serialize(Message message, MessageType outputMessageType)
+      throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+      InvalidBinaryMessageException {
+    return switch (outputMessageType) {
+      case JSON -> jsonHandler.toJsonString(message instanceof JsonMessage jsonMessage
+          ? jsonMessage
+          : message.copyTo(new JsonMessage()));
+      case XML -> xmlHandler.toXmlString(message instanceof XmlMessage xmlMessage
+          ? xmlMessage
+          : message.copyTo(new XmlMessage()));
+      case SOAP -> soapHandler.toSoapEnvelope(message);
+      case BINARY -> binaryHandler.toBinaryString(message);
+    };
+  }
+}
@@ -0,0 +1,151 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import com.sadramesbah.asynchronous_communicating_agents.message.Message;
+import java.util.Collection;
+import java.util.Set;
+import javax.xml.validation.Schema;
+
+// checks a message of any format for the required fields and the configured rules; the checks
+// stop at the first failure, allocate nothing and return which field failed. instances are
+// immutable and shared by all handlers
+public final class MessageValidator {
+
+  // one bit per required field, for the streaming transforms that see the fields one at a time
+  static final int MESSAGE_ID_FIELD = 1;
+  static final int MESSAGE_TITLE_FIELD = 1 << 1;
+  static final int MESSAGE_BODY_FIELD = 1 << 2;
+  static final int CREATION_TIME_FIELD = 1 << 3;
+  static final int LAST_MODIFIED_FIELD = 1 << 4;
+  static final int LAST_AGENT_FIELD = 1 << 5;
+  static final int STATUS_FIELD = 1 << 6;
+  static final int REQUIRED_FIELDS = (1 << 7) - 1;
+
+  private static final MessageValidator DEFAULTS = new MessageValidator(0, Set.of(), null);
+
+  // zero means the body length is not limited
+  private final int maxBodyLength;
+  // empty means every status is allowed
+  private final Set<String> allowedStatuses;
+  // null unless messages are also checked against the bundled schemas while they are parsed
+  private final MessageSchemas schemas;
+
+  private MessageValidator(int maxBodyLength, Set<String> allowedStatuses,
+      MessageSchemas schemas) {
+    this.maxBodyLength = maxBodyLength;
+    this.allowedStatuses = allowedStatuses;
+    this.schemas = schemas;
+  }
+
+  // only checks that the required fields are present
+  public static MessageValidator defaults() {
+    return DEFAULTS;
+  }
+
+  public MessageValidator withMaxBodyLength(int maxBodyLength) {
+    return new MessageValidator(Math.max(maxBodyLength, 0), allowedStatuses, schemas);
+  }
+
+  public MessageValidator withAllowedStatuses(Collection<String> allowedStatuses) {
+    return new MessageValidator(maxBodyLength, Set.copyOf(allowedStatuses), schemas);
+  }
+
+  // strict mode checks JSON, XML and SOAP messages against JsonMessageSchema.json and
+  // XmlMessageSchema.xsd in the same pass that parses them; the schemas are compiled here, once
+  public MessageValidator withSchemaValidation(boolean strict) {
+    return new MessageValidator(maxBodyLength, allowedStatuses,
+        strict ? MessageSchemas.bundled() : null);
+  }
+
+  public ValidationResult validate(Message message) {
+    if (message == null) {
+      return ValidationResult.MISSING_MESSAGE;
+    }
+    if (message.getMessageId() <= 0) {
+      return ValidationResult.INVALID_MESSAGE_ID;
+    }
+    if (!hasText(message.getMessageTitle())) {
+      return ValidationResult.MISSING_MESSAGE_TITLE;
+    }
+    ValidationResult bodyResult = validateMessageBody(message.getMessageBody());
+    if (bodyResult != ValidationResult.VALID) {
+      return bodyResult;
+    }
+    if (message.getCreationTime() == null) {
+      return ValidationResult.MISSING_CREATION_TIME;
+    }
+    if (message.getLastModified() == null) {
+      return ValidationResult.MISSING_LAST_MODIFIED;
+    }
+    if (!hasText(message.getLastAgent())) {
+      return ValidationResult.MISSING_LAST_AGENT;
+    }
+    return validateStatus(message.getStatus());
+  }
+
+  ValidationResult validateMessageBody(String messageBody) {
+    return validateMessageBody(messageBody, 0);
+  }
+
+  // checks the body as it reads once appendedLength more characters were appended to it, which
+  // is what the last agent of a chain receives
+  ValidationResult validateMessageBody(String messageBody, int appendedLength) {
+    if (!hasText(messageBody)) {
+      return ValidationResult.MISSING_MESSAGE_BODY;
+    }
+    if (maxBodyLength > 0 && messageBody.length() + appendedLength > maxBodyLength) {
+      return ValidationResult.MESSAGE_BODY_TOO_LONG;
+    }
+    return ValidationResult.VALID;
+  }
+
+  ValidationResult validateStatus(String status) {
+    if (!hasText(status)) {
+      return ValidationResult.MISSING_STATUS;
+    }
+    if (!allowedStatuses.isEmpty() && !allowedStatuses.contains(status)) {
+      return ValidationResult.STATUS_NOT_ALLOWED;
+    }
+    return ValidationResult.VALID;
+  }
+
+  // the literal "null" counts as missing, since some producers write absent fields that way
+  static boolean hasText(String value) {
+    return value != null && !value.isEmpty() && !"null".equals(value);
+  }
+
+  // returns the result for the first required field whose bit is not set
+  static ValidationResult missingField(int validFields) {
+    return switch (Integer.numberOfTrailingZeros(~validFields & REQUIRED_FIELDS)) {
+      case 0 -> ValidationResult.INVALID_MESSAGE_ID;
+      case 1 -> ValidationResult.MISSING_MESSAGE_TITLE;
+      case 2 -> ValidationResult.MISSING_MESSAGE_BODY;
+      case 3 -> ValidationResult.MISSING_CREATION_TIME;
+      case 4 -> ValidationResult.MISSING_LAST_MODIFIED;
+      case 5 -> ValidationResult.MISSING_LAST_AGENT;
+      case 6 -> ValidationResult.MISSING_STATUS;
+      default -> ValidationResult.VALID;
+    };
+  }
+
+  public int getMaxBodyLength() {
+    return maxBodyLength;
+  }
+
+  public Set<String> getAllowedStatuses() {
+    return allowedStatuses;
+  }
+
+  public boolean isSchemaValidation() {
+    return schemas != null;
+  }
+
+  // the compiled XML schema in strict mode and null otherwise
+  Schema xmlSchema() {
+    return schemas == null ? null : schemas.getXmlSchema();
+  }
+
+  // the compiled JSON schema in strict mode and null otherwise
+  MessageSchemas.JsonSchema jsonSchema() {
+    return schemas == null ? null : schemas.getJsonSchema();
+  }
+}
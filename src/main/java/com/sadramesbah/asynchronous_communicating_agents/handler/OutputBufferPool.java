@@ -0,0 +1,131 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// bounded lock-free pool of growable byte buffers that serializers write into before copying out
+// the result; a returned buffer keeps the capacity it grew to, so steady-state serialization does
+// not resize, while buffers far larger than the recent messages are shrunk or dropped. pooling
+// rather than thread-local buffers keeps the reuse when every message runs on a new virtual thread
+final class OutputBufferPool {
+
+  static final int DEFAULT_INITIAL_CAPACITY = 8 * 1024;
+  static final int DEFAULT_MAX_RETAINED_CAPACITY = 4 * 1024 * 1024;
+
+  private final int initialCapacity;
+  private final int maxRetainedCapacity;
+  private final int maxIdle;
+  private final Queue<Buffer> idleBuffers = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+  // moving average of the written sizes; updates may race, which only makes it less exact
+  private volatile int averageSize;
+
+  OutputBufferPool(int initialCapacity, int maxRetainedCapacity, int maxIdle) {
+    this.initialCapacity = initialCapacity;
+    this.maxRetainedCapacity = maxRetainedCapacity;
+    this.maxIdle = maxIdle;
+    this.averageSize = initialCapacity;
+  }
+
+  OutputBufferPool() {
+    this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_RETAINED_CAPACITY,
+        Runtime.getRuntime().availableProcessors() * 2);
+  }
+
+  // borrows an empty buffer for the exclusive use of the caller until it is released
+  Buffer acquire() {
+    Buffer buffer = idleBuffers.poll();
+    if (buffer == null) {
+      return new Buffer(Math.max(initialCapacity, averageSize));
+    }
+    idleCount.decrementAndGet();
+    return buffer;
+  }
+
+  // returns the buffer to the pool, shrinking it when it grew far beyond the average size and
+  // dropping it when it is larger than the retained maximum or the pool is full
+  void release(Buffer buffer) {
+    int average = averageSize + ((buffer.size() - averageSize) >> 3);
+    averageSize = average;
+    if (buffer.capacity() > maxRetainedCapacity) {
+      return;
+    }
+    if (buffer.capacity() > Math.max(initialCapacity, average * 4)) {
+      buffer.shrink(Math.max(initialCapacity, average * 2));
+    }
+    buffer.reset();
+    if (idleCount.incrementAndGet() > maxIdle) {
+      idleCount.decrementAndGet();
+      return;
+    }
+    idleBuffers.offer(buffer);
+  }
+
+  int idleBuffers() {
+    return idleCount.get();
+  }
+
+  // unsynchronized counterpart of ByteArrayOutputStream, owned by one thread at a time
+  static final class Buffer extends OutputStream {
+
+    private byte[] bytes;
+    private int count;
+
+    private Buffer(int capacity) {
+      this.bytes = new byte[capacity];
+    }
+
+    @Override
+    public void write(int value) {
+      ensureCapacity(count + 1);
+      bytes[count++] = (byte) value;
+    }
+
+    @Override
+    public void write(byte[] source, int offset, int length) {
+      ensureCapacity(count + length);
+      System.arraycopy(source, offset, bytes, count, length);
+      count += length;
+    }
+
+    int size() {
+      return count;
+    }
+
+    int capacity() {
+      return bytes.length;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(bytes, count);
+    }
+
+    String toString(Charset charset) {
+      return new String(bytes, 0, count, charset);
+    }
+
+    void writeTo(OutputStream outputStream) throws IOException {
+      outputStream.write(bytes, 0, count);
+    }
+
+    private void reset() {
+      count = 0;
+    }
+
+    private void shrink(int capacity) {
+      bytes = new byte[capacity];
+      count = 0;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+      if (minCapacity - bytes.length > 0) {
+        bytes = Arrays.copyOf(bytes, Math.max(minCapacity, bytes.length << 1));
+      }
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import java.io.IOException;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// checks every token against the compiled JSON schema as its consumer reads it, so a message is
+// checked in the same pass that binds or transforms it and a mismatch stops the read right away
+final class SchemaValidatingParser extends JsonParserDelegate {
+
+  private final MessageSchemas.JsonSchema schema;
+  private int depth;
+  private boolean started;
+  private MessageSchemas.JsonProperty property;
+  private long presentProperties;
+  private String violation;
+
+  SchemaValidatingParser(JsonParser parser, MessageSchemas.JsonSchema schema) {
+    super(parser);
+    this.schema = schema;
+  }
+
+  @Override
+  public JsonToken nextToken() throws IOException {
+    JsonToken token = delegate.nextToken();
+    if (token != null) {
+      check(token);
+    }
+    return token;
+  }
+
+  // the delegate would read past this parser, so the value is read through nextToken
+  @Override
+  public JsonToken nextValue() throws IOException {
+    JsonToken token = nextToken();
+    return token == JsonToken.FIELD_NAME ? nextToken() : token;
+  }
+
+  // skipped structures are below the top-level properties and are not checked
+  @Override
+  public JsonParser skipChildren() throws IOException {
+    JsonToken token = delegate.currentToken();
+    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+      delegate.skipChildren();
+      depth--;
+    }
+    return this;
+  }
+
+  // returns the reason the message was rejected, or null while it matches the schema
+  String getViolation() {
+    return violation;
+  }
+
+  private void check(JsonToken token) throws IOException {
+    if (!started) {
+      started = true;
+      if (token != JsonToken.START_OBJECT) {
+        fail("message is not an object");
+      }
+    } else if (depth == 1) {
+      if (token == JsonToken.FIELD_NAME) {
+        property = schema.property(delegate.currentName());
+      } else if (token != JsonToken.END_OBJECT && property != null) {
+        checkValue(token);
+      }
+    }
+    switch (token) {
+      case START_OBJECT, START_ARRAY -> depth++;
+      case END_OBJECT, END_ARRAY -> {
+        if (--depth == 0) {
+          String missingProperty = schema.missingProperty(presentProperties);
+          if (missingProperty != null) {
+            fail(missingProperty + " is required");
+          }
+        }
+      }
+      default -> {
+        // scalar values do not change the depth
+      }
+    }
+  }
+
+  private void checkValue(JsonToken token) throws IOException {
+    if (!property.accepts(token)) {
+      fail(property.name() + " is not of type " + property.type());
+    }
+    if (property.dateTime() && token == JsonToken.VALUE_STRING
+        && !isDateTime(delegate.getText())) {
+      fail(property.name() + " is not a date-time");
+    }
+    presentProperties |= property.requiredBit();
+  }
+
+  // RFC 3339 date-time as required by the date-time format, which always carries an offset
+  private static boolean isDateTime(String text) {
+    try {
+      DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(text);
+      return true;
+    } catch (DateTimeParseException dateTimeParseException) {
+      return false;
+    }
+  }
+
+  private void fail(String reason) throws JsonParseException {
+    violation = reason;
+    throw new JsonParseException(delegate, "JSON message does not match the schema: " + reason);
+  }
+}
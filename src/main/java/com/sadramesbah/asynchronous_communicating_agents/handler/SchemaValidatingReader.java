@@ -0,0 +1,140 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import com.sadramesbah.asynchronous_communicating_agents.exception.MessageValidationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+// feeds the element the reader is positioned on to a validator of the XML schema while its
+// consumer reads it, so the element is checked in the same pass that rewrites it; reading stops
+// with an XMLStreamException at the first event that does not match the schema
+final class SchemaValidatingReader extends StreamReaderDelegate {
+
+  private final ValidatorHandler validatorHandler;
+  private int depth;
+  private boolean finished;
+
+  SchemaValidatingReader(XMLStreamReader reader, Schema schema) throws XMLStreamException {
+    super(reader);
+    // without an error handler the validator throws on the first error
+    this.validatorHandler = schema.newValidatorHandler();
+    try {
+      validatorHandler.startDocument();
+    } catch (SAXException saxException) {
+      throw schemaViolation(saxException);
+    }
+    forward(reader.getEventType());
+  }
+
+  @Override
+  public int next() throws XMLStreamException {
+    int event = super.next();
+    forward(event);
+    return event;
+  }
+
+  // the delegate would read past this reader, so the tag is found through next
+  @Override
+  public int nextTag() throws XMLStreamException {
+    int event = next();
+    while (event == XMLStreamConstants.SPACE || event == XMLStreamConstants.COMMENT
+        || event == XMLStreamConstants.PROCESSING_INSTRUCTION
+        || (event == XMLStreamConstants.CHARACTERS && isWhiteSpace())
+        || (event == XMLStreamConstants.CDATA && isWhiteSpace())) {
+      event = next();
+    }
+    if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+      throw new XMLStreamException("Expected a start or end tag", getLocation());
+    }
+    return event;
+  }
+
+  // the delegate would read past this reader, so the text is collected through next
+  @Override
+  public String getElementText() throws XMLStreamException {
+    StringBuilder text = new StringBuilder();
+    int event = next();
+    while (event != XMLStreamConstants.END_ELEMENT) {
+      switch (event) {
+        case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE,
+             XMLStreamConstants.ENTITY_REFERENCE -> text.append(getText());
+        case XMLStreamConstants.COMMENT, XMLStreamConstants.PROCESSING_INSTRUCTION -> {
+          // not part of the text
+        }
+        default -> throw new XMLStreamException("Element text expected but got event " + event,
+            getLocation());
+      }
+      event = next();
+    }
+    return text.toString();
+  }
+
+  private void forward(int event) throws XMLStreamException {
+    // the events after the end tag of the element belong to its parent
+    if (finished) {
+      return;
+    }
+    try {
+      switch (event) {
+        case XMLStreamConstants.START_ELEMENT -> {
+          depth++;
+          for (int index = 0; index < getNamespaceCount(); index++) {
+            validatorHandler.startPrefixMapping(nullToEmpty(getNamespacePrefix(index)),
+                nullToEmpty(getNamespaceURI(index)));
+          }
+          validatorHandler.startElement(nullToEmpty(getNamespaceURI()), getLocalName(),
+              qualifiedName(getPrefix(), getLocalName()), attributes());
+        }
+        case XMLStreamConstants.END_ELEMENT -> {
+          validatorHandler.endElement(nullToEmpty(getNamespaceURI()), getLocalName(),
+              qualifiedName(getPrefix(), getLocalName()));
+          for (int index = 0; index < getNamespaceCount(); index++) {
+            validatorHandler.endPrefixMapping(nullToEmpty(getNamespacePrefix(index)));
+          }
+          if (--depth == 0) {
+            finished = true;
+            validatorHandler.endDocument();
+          }
+        }
+        case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA,
+             XMLStreamConstants.SPACE -> validatorHandler.characters(getTextCharacters(),
+            getTextStart(), getTextLength());
+        default -> {
+          // comments and processing instructions are not validated
+        }
+      }
+    } catch (SAXException saxException) {
+      throw schemaViolation(saxException);
+    }
+  }
+
+  private AttributesImpl attributes() {
+    AttributesImpl attributes = new AttributesImpl();
+    for (int index = 0; index < getAttributeCount(); index++) {
+      attributes.addAttribute(nullToEmpty(getAttributeNamespace(index)),
+          getAttributeLocalName(index),
+          qualifiedName(getAttributePrefix(index), getAttributeLocalName(index)),
+          nullToEmpty(getAttributeType(index)), getAttributeValue(index));
+    }
+    return attributes;
+  }
+
+  private XMLStreamException schemaViolation(SAXException saxException) {
+    return new XMLStreamException("XML message does not match the schema: "
+        + saxException.getMessage(), getLocation(),
+        new MessageValidationException(saxException.getMessage(), saxException));
+  }
+
+  private static String qualifiedName(String prefix, String localName) {
+    return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+  }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+}
@@ -0,0 +1,88 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import com.sadramesbah.asynchronous_communicating_agents.message.XmlMessage;
+import jakarta.xml.soap.SOAPElement;
+import jakarta.xml.soap.SOAPMessage;
+import org.w3c.dom.Node;
+
+// carries a SOAP message through parse, update and serialize together with its inner message,
+// which is unmarshalled once, and the elements that agents rewrite, which are resolved once
+public class SoapMessageContext {
+
+  private final SOAPMessage soapMessage;
+  private final SOAPElement messageElement;
+  private final XmlMessage innerMessage;
+  private SOAPElement messageBodyElement;
+  private SOAPElement lastAgentElement;
+  private SOAPElement lastModifiedElement;
+  private SOAPElement processingTrailElement;
+
+  SoapMessageContext(SOAPMessage soapMessage, SOAPElement messageElement,
+      XmlMessage innerMessage) {
+    this.soapMessage = soapMessage;
+    this.messageElement = messageElement;
+    this.innerMessage = innerMessage;
+    resolveFieldElements();
+  }
+
+  // finds the rewritten fields in a single walk over the descendants of the message element in
+  // document order; the first element of each name wins, as with getElementsByTagNameNS
+  private void resolveFieldElements() {
+    resolveFieldElements(messageElement);
+  }
+
+  private void resolveFieldElements(Node parent) {
+    for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child instanceof SOAPElement fieldElement) {
+        if (fieldElement.getLocalName() != null) {
+          switch (fieldElement.getLocalName()) {
+            case "MessageBody" -> messageBodyElement = firstOf(messageBodyElement, fieldElement);
+            case "LastAgent" -> lastAgentElement = firstOf(lastAgentElement, fieldElement);
+            case "LastModified" ->
+                lastModifiedElement = firstOf(lastModifiedElement, fieldElement);
+            case "ProcessingTrail" ->
+                processingTrailElement = firstOf(processingTrailElement, fieldElement);
+            default -> {
+              // other fields are not rewritten by agents
+            }
+          }
+        }
+        resolveFieldElements(fieldElement);
+      }
+    }
+  }
+
+  private static SOAPElement firstOf(SOAPElement found, SOAPElement candidate) {
+    return found != null ? found : candidate;
+  }
+
+  public SOAPMessage getSoapMessage() {
+    return soapMessage;
+  }
+
+  public SOAPElement getMessageElement() {
+    return messageElement;
+  }
+
+  // the inner message as unmarshalled at parse time and kept in sync with every update since
+  public XmlMessage getInnerMessage() {
+    return innerMessage;
+  }
+
+  public SOAPElement getMessageBodyElement() {
+    return messageBodyElement;
+  }
+
+  public SOAPElement getLastAgentElement() {
+    return lastAgentElement;
+  }
+
+  public SOAPElement getLastModifiedElement() {
+    return lastModifiedElement;
+  }
+
+  // null unless the inner message carries its processing trail in an element of its own
+  public SOAPElement getProcessingTrailElement() {
+    return processingTrailElement;
+  }
+}
@@ -1,16 +1,28 @@
 package com.sadramesbah.asynchronous_communicating_agents.handler;
 
+import com.sadramesbah.asynchronous_communicating_agents.exception.MessageValidationException;
+import com.sadramesbah.asynchronous_communicating_agents.message.Message;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageUpdate;
 import com.sadramesbah.asynchronous_communicating_agents.message.XmlMessage;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import java.util.stream.Stream;
 import jakarta.xml.soap.*;
-import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
-import jakarta.xml.bind.Unmarshaller;
+import jakarta.xml.bind.Marshaller;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,28 +33,71 @@ public class SoapMessageHandler {
   private static final String NAMESPACE_URI = "https://realuri.example.com/security";
   private static final String SECURITY_TOKEN_HEADER = "SecurityToken";
   private static final String DEFAULT_SECURITY_TOKEN = "123456789";
+  private static final String ENVELOPE = "Envelope";
+  private static final String HEADER = "Header";
+  private static final String BODY = "Body";
+  private static final String ENVELOPE_PREFIX = "soapenv";
+  private static final String TRAIL_ENTRY = "Entry";
+  private static final String TRAIL_ENTRY_AGENT = "Agent";
+  private static final String TRAIL_ENTRY_PROCESSED_AT = "ProcessedAt";
 
-  private final Unmarshaller unmarshaller;
+  private final JaxbMarshallerPool jaxbPool;
   private final MessageFactory messageFactory;
+  private final OutputBufferPool outputBuffers = new OutputBufferPool();
+  private final MessageValidator validator;
 
   public SoapMessageHandler() throws JAXBException, SOAPException {
-    JAXBContext jaxbContext = JAXBContext.newInstance(XmlMessage.class);
-    this.unmarshaller = jaxbContext.createUnmarshaller();
+    this(MessageValidator.defaults());
+  }
+
+  @Autowired
+  public SoapMessageHandler(MessageValidator validator) throws JAXBException, SOAPException {
+    // messages are marshalled into the body of an envelope that is already being written, and
+    // in strict mode the inner message is checked against the XML schema while it is unmarshalled
+    this.jaxbPool = new JaxbMarshallerPool(JaxbMarshallerPool.xmlMessageContext(),
+        Map.of(Marshaller.JAXB_FRAGMENT, Boolean.TRUE), validator.xmlSchema());
     this.messageFactory = MessageFactory.newInstance();
+    this.validator = validator;
   }
 
   // parses SOAP message in string format and converts it to SOAPMessage object
   public SOAPMessage parse(String soapMessageInString) throws IOException, SOAPException {
-    logger.info("Parsing SOAP message from string.");
-    try (ByteArrayInputStream inputStream = new ByteArrayInputStream(
-        soapMessageInString.getBytes(StandardCharsets.UTF_8))) {
-      SOAPMessage soapMessageObject = messageFactory.createMessage(null, inputStream);
-      validateSoapMessage(soapMessageObject);
-      addSecurityToken(soapMessageObject.getSOAPHeader());
-      XmlMessage innerXmlMessage = extractInnerXmlMessage(soapMessageObject);
-      logger.info("Parsed SOAP message successfully. MessageID: {}, Agent: {}",
-          innerXmlMessage.getMessageId(), innerXmlMessage.getLastAgent());
-      return soapMessageObject;
+    return parseContext(soapMessageInString).getSoapMessage();
+  }
+
+  // parses an encoded SOAP message and converts it to SOAPMessage object
+  public SOAPMessage parse(byte[] soapMessageInBytes) throws IOException, SOAPException {
+    return parseContext(soapMessageInBytes).getSoapMessage();
+  }
+
+  // parses SOAP message in string format into a context that keeps the unmarshalled inner
+  // message and the resolved message elements for the following update and serialize steps
+  public SoapMessageContext parseContext(String soapMessageInString)
+      throws IOException, SOAPException {
+    return parseContext(soapMessageInString.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // parses an encoded SOAP message into a context
+  public SoapMessageContext parseContext(byte[] soapMessageInBytes)
+      throws IOException, SOAPException {
+    try (ByteArrayInputStream inputStream = new ByteArrayInputStream(soapMessageInBytes)) {
+      return parseContext(inputStream);
+    }
+  }
+
+  // parses a SOAP message read from the stream into a context
+  public SoapMessageContext parseContext(InputStream soapMessageInputStream)
+      throws IOException, SOAPException {
+    try {
+      SOAPMessage soapMessageObject = messageFactory.createMessage(null, soapMessageInputStream);
+      SoapMessageContext soapMessageContext = createValidatedContext(soapMessageObject);
+      addSecurityToken(soapMessageObject);
+      XmlMessage innerXmlMessage = soapMessageContext.getInnerMessage();
+      if (logger.isDebugEnabled()) {
+        logger.debug("Parsed SOAP message successfully. MessageID: {}, Agent: {}",
+            innerXmlMessage.getMessageId(), innerXmlMessage.getLastAgent());
+      }
+      return soapMessageContext;
     } catch (SOAPException soapException) {
       throw new SOAPException("Error parsing SOAP message due to SOAPException.", soapException);
     } catch (IOException ioException) {
@@ -52,14 +107,50 @@ public class SoapMessageHandler {
 
   // converts SOAPMessage object to SOAP message in string format
   public String toSoapString(SOAPMessage soapMessageObject) throws SOAPException, IOException {
-    logger.info("Converting SOAPMessage to string format.");
-    validateSoapMessage(soapMessageObject);
-    XmlMessage innerXmlMessage = extractInnerXmlMessage(soapMessageObject);
-    logger.info("Converting SOAPMessage to string format. MessageID: {}, Agent: {}",
-        innerXmlMessage.getMessageId(), innerXmlMessage.getLastAgent());
-    try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+    return toSoapString(createValidatedContext(soapMessageObject));
+  }
+
+  // converts the SOAP message of a context to string format, validating the memoized inner
+  // message instead of unmarshalling it again
+  public String toSoapString(SoapMessageContext soapMessageContext)
+      throws SOAPException, IOException {
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    try {
+      writeTo(soapMessageContext, buffer);
+      return buffer.toString(StandardCharsets.UTF_8);
+    } finally {
+      outputBuffers.release(buffer);
+    }
+  }
+
+  // converts the SOAP message of a context to its encoded form
+  public byte[] toSoapBytes(SoapMessageContext soapMessageContext)
+      throws SOAPException, IOException {
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    try {
+      writeTo(soapMessageContext, buffer);
+      return buffer.toByteArray();
+    } finally {
+      outputBuffers.release(buffer);
+    }
+  }
+
+  // writes the SOAP message of a context to the stream, which is left open
+  public void writeTo(SoapMessageContext soapMessageContext, OutputStream outputStream)
+      throws SOAPException, IOException {
+    SOAPMessage soapMessageObject = soapMessageContext.getSoapMessage();
+    XmlMessage innerXmlMessage = soapMessageContext.getInnerMessage();
+    if (logger.isDebugEnabled()) {
+      logger.debug("Converting SOAPMessage to string format. MessageID: {}, Agent: {}",
+          innerXmlMessage.getMessageId(), innerXmlMessage.getLastAgent());
+    }
+    if (soapMessageObject.getSOAPBody().getFault() != null) {
+      logger.warn("SOAP body contains a fault.");
+      throw new SOAPException("Invalid SOAP message structure because of SOAP body fault.");
+    }
+    validateInnerMessage(innerXmlMessage);
+    try {
       soapMessageObject.writeTo(outputStream);
-      return outputStream.toString(StandardCharsets.UTF_8);
     } catch (SOAPException soapException) {
       throw new SOAPException("Error converting SOAPMessage to string due to SOAPException.",
           soapException);
@@ -69,8 +160,340 @@ public class SoapMessageHandler {
     }
   }
 
-  // extracts the inner XML message from the SOAP message and validates its structure
-  private void validateSoapMessage(SOAPMessage soapMessageObject) throws SOAPException {
+  // applies the update to the inner message of a SOAP message object
+  public void applyUpdate(SOAPMessage soapMessageObject, MessageUpdate update)
+      throws SOAPException {
+    applyUpdate(createValidatedContext(soapMessageObject), update);
+  }
+
+  // applies the update to the resolved elements of a context and to its memoized inner message;
+  // the body suffix goes to MessageBody, or becomes an Entry of the ProcessingTrail element when
+  // the inner message has one, as envelopes are never given a separate trail. parsing added one
+  // SecurityToken header, and a combined update adds one for every further agent
+  public void applyUpdate(SoapMessageContext soapMessageContext, MessageUpdate update)
+      throws SOAPException {
+    SOAPElement processingTrailElement = soapMessageContext.getProcessingTrailElement();
+    SOAPElement messageBodyElement = soapMessageContext.getMessageBodyElement();
+    if (processingTrailElement != null) {
+      addTrailEntries(processingTrailElement, update);
+    } else if (messageBodyElement != null) {
+      String messageBody = messageBodyElement.getTextContent();
+      if (update.precedingSuffixLength() > 0) {
+        ValidationResult bodyResult = validator.validateMessageBody(messageBody,
+            update.precedingSuffixLength());
+        if (!bodyResult.isValid()) {
+          throw invalidInnerMessage(soapMessageContext.getInnerMessage().getMessageId(),
+              bodyResult);
+        }
+      }
+      messageBodyElement.setTextContent(messageBody + update.bodySuffix());
+    }
+    for (int token = 1; token < update.trailUpdates().size(); token++) {
+      addSecurityToken(soapMessageContext.getSoapMessage());
+    }
+
+    Optional.ofNullable(soapMessageContext.getLastAgentElement())
+        .ifPresent(lastAgentElement -> lastAgentElement.setTextContent(update.agentId()));
+
+    Optional.ofNullable(soapMessageContext.getLastModifiedElement())
+        .ifPresent(lastModifiedElement -> lastModifiedElement.setTextContent(
+            update.lastModified().toInstant().toString()));
+
+    update.withSeparateTrail(false).applyTo(soapMessageContext.getInnerMessage());
+    soapMessageContext.getSoapMessage().saveChanges();
+  }
+
+  // adds an Entry per update the way XmlMessage binds ProcessingTrail.Entry
+  private static void addTrailEntries(SOAPElement processingTrailElement, MessageUpdate update)
+      throws SOAPException {
+    for (MessageUpdate trailUpdate : update.trailUpdates()) {
+      String prefix = processingTrailElement.getPrefix();
+      SOAPElement entryElement = prefix == null || prefix.isEmpty()
+          ? processingTrailElement.addChildElement(TRAIL_ENTRY)
+          : processingTrailElement.addChildElement(TRAIL_ENTRY, prefix);
+      entryElement.setAttribute(TRAIL_ENTRY_AGENT, trailUpdate.agentId());
+      entryElement.setAttribute(TRAIL_ENTRY_PROCESSED_AT,
+          trailUpdate.lastModified().toInstant().toString());
+      entryElement.setTextContent(trailUpdate.bodySuffix());
+    }
+  }
+
+  // applies the update to a SOAP message in string format; plain envelopes are validated, given
+  // the SecurityToken header and rewritten in one StAX pass, while faults, unusual envelopes and
+  // inner messages with a ProcessingTrail element fall back to the SAAJ parse, update and
+  // serialize steps
+  public String transform(String soapMessageInString, MessageUpdate update)
+      throws SOAPException, IOException {
+    StringWriter stringWriter = new StringWriter(soapMessageInString.length() + 256);
+    try {
+      if (streamTransform(StaxMessageRewriter.INPUT_FACTORY.createXMLStreamReader(
+              new StringReader(soapMessageInString)),
+          StaxMessageRewriter.OUTPUT_FACTORY.createXMLStreamWriter(stringWriter), update)) {
+        return stringWriter.toString();
+      }
+    } catch (XMLStreamException xmlStreamException) {
+      throw new SOAPException("Error parsing SOAP message due to XMLStreamException.",
+          xmlStreamException);
+    }
+    logger.debug("Processing SOAP message with SAAJ because it is not a plain envelope.");
+    SoapMessageContext soapMessageContext = parseContext(soapMessageInString);
+    applyUpdate(soapMessageContext, update);
+    return toSoapString(soapMessageContext);
+  }
+
+  // applies the update to an encoded SOAP message and returns it UTF-8 encoded, falling back to
+  // SAAJ in the same way as the string variant
+  public byte[] transform(byte[] soapMessageInBytes, MessageUpdate update)
+      throws SOAPException, IOException {
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    try {
+      if (streamTransform(StaxMessageRewriter.INPUT_FACTORY.createXMLStreamReader(
+              new ByteArrayInputStream(soapMessageInBytes)),
+          StaxMessageRewriter.OUTPUT_FACTORY.createXMLStreamWriter(buffer, "UTF-8"),
+          update)) {
+        return buffer.toByteArray();
+      }
+    } catch (XMLStreamException xmlStreamException) {
+      throw new SOAPException("Error parsing SOAP message due to XMLStreamException.",
+          xmlStreamException);
+    } finally {
+      outputBuffers.release(buffer);
+    }
+    logger.debug("Processing SOAP message with SAAJ because it is not a plain envelope.");
+    SoapMessageContext soapMessageContext = parseContext(soapMessageInBytes);
+    applyUpdate(soapMessageContext, update);
+    return toSoapBytes(soapMessageContext);
+  }
+
+  // applies the update to a SOAP message read from the input stream and writes it to the output
+  // stream; the message is buffered because the SAAJ fallback has to read it again, and both
+  // streams are left open
+  public void transform(InputStream inputStream, OutputStream outputStream, MessageUpdate update)
+      throws SOAPException, IOException {
+    outputStream.write(transform(inputStream.readAllBytes(), update));
+  }
+
+  // returns false when the envelope has to be processed with SAAJ
+  private boolean streamTransform(XMLStreamReader reader, XMLStreamWriter writer,
+      MessageUpdate update) throws XMLStreamException, SOAPException {
+    StaxMessageRewriter rewriter = new StaxMessageRewriter(update.withSeparateTrail(false),
+        validator);
+    try {
+      if (!rewriteEnvelope(reader, writer, rewriter, update.trailUpdates().size())) {
+        return false;
+      }
+      writer.flush();
+    } finally {
+      reader.close();
+      writer.close();
+    }
+    ValidationResult validationResult = rewriter.getValidationResult();
+    if (!validationResult.isValid()) {
+      throw invalidInnerMessage(rewriter.getMessageId(), validationResult);
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Transformed SOAP message successfully. MessageID: {}, Agent: {}",
+          rewriter.getMessageId(), update.agentId());
+    }
+    return true;
+  }
+
+  // reads only the inner message of a SOAP message in string format, unmarshalling it straight
+  // from the stream; envelopes whose body does not start with the message are parsed with SAAJ
+  public XmlMessage parseInnerMessage(String soapMessageInString)
+      throws SOAPException, IOException {
+    XmlMessage innerXmlMessage;
+    try {
+      XMLStreamReader reader = StaxMessageRewriter.INPUT_FACTORY.createXMLStreamReader(
+          new StringReader(soapMessageInString));
+      try {
+        innerXmlMessage = unmarshalFirstBodyElement(reader);
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException xmlStreamException) {
+      throw new SOAPException("Error parsing SOAP message due to XMLStreamException.",
+          xmlStreamException);
+    }
+    if (innerXmlMessage == null) {
+      return parseContext(soapMessageInString).getInnerMessage();
+    }
+    validateInnerMessage(innerXmlMessage);
+    return innerXmlMessage;
+  }
+
+  // wraps a message of any format in a new SOAP envelope carrying the SecurityToken header; the
+  // envelope always carries the processing trail in MessageBody, even a separate one
+  public String toSoapEnvelope(Message messageObject) throws SOAPException {
+    XmlMessage xmlMessageObject = messageObject instanceof XmlMessage xmlMessage
+        && !xmlMessage.getProcessingTrail().isSeparate()
+        ? xmlMessage
+        : messageObject.copyTo(new XmlMessage(), false);
+    validateInnerMessage(xmlMessageObject);
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    try {
+      XMLStreamWriter writer = StaxMessageRewriter.OUTPUT_FACTORY.createXMLStreamWriter(
+          buffer, "UTF-8");
+      try {
+        writer.writeStartElement(ENVELOPE_PREFIX, ENVELOPE, SOAPConstants.URI_NS_SOAP_ENVELOPE);
+        writer.writeNamespace(ENVELOPE_PREFIX, SOAPConstants.URI_NS_SOAP_ENVELOPE);
+        writer.writeStartElement(ENVELOPE_PREFIX, HEADER, SOAPConstants.URI_NS_SOAP_ENVELOPE);
+        writeSecurityToken(writer);
+        writer.writeEndElement();
+        writer.writeStartElement(ENVELOPE_PREFIX, BODY, SOAPConstants.URI_NS_SOAP_ENVELOPE);
+        jaxbPool.withMarshaller(marshaller -> {
+          marshaller.marshal(xmlMessageObject, writer);
+          return writer;
+        });
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.flush();
+      } finally {
+        writer.close();
+      }
+      return buffer.toString(StandardCharsets.UTF_8);
+    } catch (XMLStreamException | JAXBException exception) {
+      throw new SOAPException("Error wrapping message in SOAP envelope.", exception);
+    } finally {
+      outputBuffers.release(buffer);
+    }
+  }
+
+  // unmarshals the message when it is the first element of the body; returns null for faults,
+  // other first elements and envelopes that are not SOAP 1.1
+  private XmlMessage unmarshalFirstBodyElement(XMLStreamReader reader)
+      throws XMLStreamException, SOAPException {
+    reader.nextTag();
+    if (!isSoapElement(reader, ENVELOPE)) {
+      return null;
+    }
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (isSoapElement(reader, BODY)) {
+        if (reader.nextTag() != XMLStreamConstants.START_ELEMENT
+            || !StaxMessageRewriter.MESSAGE.equals(reader.getLocalName())) {
+          return null;
+        }
+        try {
+          return jaxbPool.withUnmarshaller(
+              unmarshaller -> unmarshaller.unmarshal(reader, XmlMessage.class).getValue());
+        } catch (JAXBException jaxbException) {
+          throw new SOAPException("Error extracting inner XML message.", jaxbException);
+        }
+      }
+      if (!isSoapElement(reader, HEADER)) {
+        return null;
+      }
+      skipElement(reader);
+    }
+    return null;
+  }
+
+  // moves the reader to the end tag of the current element
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  // copies the envelope, appending a SecurityToken per agent to the header and rewriting the
+  // message that must be the first element of the body; returns false for anything else and for
+  // a message with a ProcessingTrail element
+  private boolean rewriteEnvelope(XMLStreamReader reader, XMLStreamWriter writer,
+      StaxMessageRewriter rewriter, int securityTokens) throws XMLStreamException {
+    reader.nextTag();
+    if (!isSoapElement(reader, ENVELOPE)) {
+      return false;
+    }
+    // an envelope in the default namespace has no prefix, which readers report as null or ""
+    String envelopePrefix = Optional.ofNullable(reader.getPrefix())
+        .orElse(XMLConstants.DEFAULT_NS_PREFIX);
+    StaxMessageRewriter.copyStartElement(reader, writer);
+    boolean headerWritten = false;
+    boolean messageRewritten = false;
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        writer.writeEndElement();
+        return messageRewritten;
+      }
+      if (event != XMLStreamConstants.START_ELEMENT) {
+        StaxMessageRewriter.copyEvent(reader, writer);
+      } else if (!headerWritten && isSoapElement(reader, HEADER)) {
+        StaxMessageRewriter.copyStartElement(reader, writer);
+        copyChildren(reader, writer);
+        writeSecurityTokens(writer, securityTokens);
+        writer.writeEndElement();
+        headerWritten = true;
+      } else if (!messageRewritten && isSoapElement(reader, BODY)) {
+        if (!headerWritten) {
+          writer.writeStartElement(envelopePrefix, HEADER, SOAPConstants.URI_NS_SOAP_ENVELOPE);
+          writeSecurityTokens(writer, securityTokens);
+          writer.writeEndElement();
+          headerWritten = true;
+        }
+        StaxMessageRewriter.copyStartElement(reader, writer);
+        if (reader.nextTag() != XMLStreamConstants.START_ELEMENT
+            || !StaxMessageRewriter.MESSAGE.equals(reader.getLocalName())) {
+          return false;
+        }
+        if (!rewriter.rewrite(reader, writer)) {
+          return false;
+        }
+        messageRewritten = true;
+        copyChildren(reader, writer);
+        writer.writeEndElement();
+      } else {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  // copies the remaining children of the current element, stopping at its end tag
+  private static void copyChildren(XMLStreamReader reader, XMLStreamWriter writer)
+      throws XMLStreamException {
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        return;
+      }
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        StaxMessageRewriter.copySubtree(reader, writer);
+      } else {
+        StaxMessageRewriter.copyEvent(reader, writer);
+      }
+    }
+  }
+
+  private static boolean isSoapElement(XMLStreamReader reader, String localName) {
+    return localName.equals(reader.getLocalName())
+        && SOAPConstants.URI_NS_SOAP_ENVELOPE.equals(reader.getNamespaceURI());
+  }
+
+  private static void writeSecurityTokens(XMLStreamWriter writer, int count)
+      throws XMLStreamException {
+    for (int token = 0; token < count; token++) {
+      writeSecurityToken(writer);
+    }
+  }
+
+  private static void writeSecurityToken(XMLStreamWriter writer) throws XMLStreamException {
+    writer.writeStartElement("", SECURITY_TOKEN_HEADER, NAMESPACE_URI);
+    writer.writeDefaultNamespace(NAMESPACE_URI);
+    writer.writeCharacters(DEFAULT_SECURITY_TOKEN);
+    writer.writeEndElement();
+  }
+
+  // extracts the inner XML message from the SOAP message once, validates its structure and
+  // returns it together with the message element in a new context
+  private SoapMessageContext createValidatedContext(SOAPMessage soapMessageObject)
+      throws SOAPException {
     SOAPBody body = soapMessageObject.getSOAPBody();
     if (body == null || body.getFault() != null) {
       logger.warn("SOAP body is invalid or contains a fault.");
@@ -83,49 +506,49 @@ public class SoapMessageHandler {
       throw new SOAPException("Invalid SOAP message structure because of missing message element.");
     }
 
-    XmlMessage innerXmlMessage = extractInnerXmlMessage(soapMessageObject);
-    if (innerXmlMessage == null || isInvalidXmlMessage(innerXmlMessage)) {
-      logger.warn("Invalid inner XML structure in SOAP message.");
-      throw new SOAPException(
-          "Invalid SOAP message structure because of invalid inner XML message.");
-    }
+    XmlMessage innerXmlMessage = unmarshalInnerXmlMessage(messageNode);
+    validateInnerMessage(innerXmlMessage);
+    return new SoapMessageContext(soapMessageObject, (SOAPElement) messageNode, innerXmlMessage);
   }
 
   // extracts the inner XML message from the SOAP message
   public XmlMessage extractInnerXmlMessage(SOAPMessage soapMessage) throws SOAPException {
+    SOAPBody body = soapMessage.getSOAPBody();
+    return unmarshalInnerXmlMessage((Node) body.getElementsByTagNameNS("*", "Message").item(0));
+  }
+
+  private XmlMessage unmarshalInnerXmlMessage(Node messageNode) throws SOAPException {
     try {
-      SOAPBody body = soapMessage.getSOAPBody();
-      Node messageNode = (Node) body.getElementsByTagNameNS("*", "Message").item(0);
-      return (XmlMessage) unmarshaller.unmarshal(messageNode);
+      return jaxbPool.withUnmarshaller(
+          unmarshaller -> (XmlMessage) unmarshaller.unmarshal(messageNode));
     } catch (JAXBException jaxbException) {
       throw new SOAPException("Error extracting inner XML message.", jaxbException);
     }
   }
 
-  // checks if XmlMessage object has the expected structure
-  boolean isInvalidXmlMessage(XmlMessage xmlMessageObject) {
-    if (xmlMessageObject == null) {
-      logger.warn("XmlMessage object is null.");
-      return true;
+  private void validateInnerMessage(XmlMessage innerXmlMessage) throws SOAPException {
+    ValidationResult validationResult = validator.validate(innerXmlMessage);
+    if (!validationResult.isValid()) {
+      throw invalidInnerMessage(innerXmlMessage == null ? 0 : innerXmlMessage.getMessageId(),
+          validationResult);
     }
-
-    return Stream.of(
-        xmlMessageObject.getMessageId() <= 0,
-        isMissingNullOrEmpty(xmlMessageObject.getMessageTitle()),
-        isMissingNullOrEmpty(xmlMessageObject.getMessageBody()),
-        xmlMessageObject.getCreationTime() == null,
-        xmlMessageObject.getLastModified() == null,
-        isMissingNullOrEmpty(xmlMessageObject.getLastAgent()),
-        isMissingNullOrEmpty(xmlMessageObject.getStatus())
-    ).anyMatch(Boolean::booleanValue);
   }
 
-  private boolean isMissingNullOrEmpty(String value) {
-    return value == null || value.isEmpty() || "null".equals(value);
+  private static SOAPException invalidInnerMessage(int messageId,
+      ValidationResult validationResult) {
+    logger.warn("Invalid inner XML structure in SOAP message. MessageID: {}, Failure: {}",
+        messageId, validationResult);
+    return new SOAPException(
+        "Invalid SOAP message structure because of invalid inner XML message: "
+            + validationResult, new MessageValidationException(validationResult));
   }
 
-  private void addSecurityToken(SOAPHeader header) throws SOAPException {
-    logger.info("Adding SecurityToken to the SOAP header.");
+  // an envelope without a header is given one, as on the streaming path
+  private void addSecurityToken(SOAPMessage soapMessageObject) throws SOAPException {
+    SOAPHeader header = soapMessageObject.getSOAPHeader();
+    if (header == null) {
+      header = soapMessageObject.getSOAPPart().getEnvelope().addHeader();
+    }
     SOAPFactory soapFactory = SOAPFactory.newInstance();
     Name securityTokenName = soapFactory.createName(SECURITY_TOKEN_HEADER, "", NAMESPACE_URI);
     SOAPHeaderElement securityTokenElement = header.addHeaderElement(securityTokenName);
@@ -0,0 +1,291 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import com.sadramesbah.asynchronous_communicating_agents.adapter.TimestampAdapter;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageUpdate;
+import java.time.format.DateTimeParseException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.validation.Schema;
+
+// streams a Message element from a reader to a writer, rewriting MessageBody, LastAgent and
+// LastModified and checking the required fields on the way; everything else is copied as is.
+// for an update with a separate trail MessageBody is copied too and the update becomes an Entry
+// of the ProcessingTrail element, which is added after the other fields when there is none
+final class StaxMessageRewriter {
+
+  static final String MESSAGE = "Message";
+
+  private static final String MESSAGE_ID = "MessageID";
+  private static final String MESSAGE_TITLE = "MessageTitle";
+  private static final String MESSAGE_BODY = "MessageBody";
+  private static final String CREATION_TIME = "CreationTime";
+  private static final String LAST_MODIFIED = "LastModified";
+  private static final String LAST_AGENT = "LastAgent";
+  private static final String STATUS = "Status";
+  private static final String PROCESSING_TRAIL = "ProcessingTrail";
+  private static final String ENTRY = "Entry";
+  private static final String ENTRY_AGENT = "Agent";
+  private static final String ENTRY_PROCESSED_AT = "ProcessedAt";
+
+  // factories are thread-safe once configured; DTDs and external entities are never resolved
+  static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+  static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+  private static final TimestampAdapter TIMESTAMP_ADAPTER = new TimestampAdapter();
+
+  private final MessageUpdate update;
+  private final MessageValidator validator;
+  // one MessageValidator field bit per required field seen with a valid value
+  private int validFields;
+  // first field that was present but failed a check
+  private ValidationResult failure = ValidationResult.VALID;
+  private int messageId;
+  private boolean processingTrailWritten;
+
+  StaxMessageRewriter(MessageUpdate update, MessageValidator validator) {
+    this.update = update;
+    this.validator = validator;
+  }
+
+  // rewrites the Message element the reader is positioned on, up to and including its end tag;
+  // in strict mode the element is checked against the XML schema as it is read. returns false,
+  // leaving the rest unread, when the message has a ProcessingTrail element but the update does
+  // not keep a separate trail, because the body suffix belongs in that element and the caller
+  // has to bind the message instead
+  boolean rewrite(XMLStreamReader messageReader, XMLStreamWriter writer)
+      throws XMLStreamException {
+    Schema xmlSchema = validator.xmlSchema();
+    XMLStreamReader reader = xmlSchema == null
+        ? messageReader
+        : new SchemaValidatingReader(messageReader, xmlSchema);
+    String messagePrefix = nullToEmpty(reader.getPrefix());
+    String messageNamespace = nullToEmpty(reader.getNamespaceURI());
+    copyStartElement(reader, writer);
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        if (update.separateTrail() && !processingTrailWritten) {
+          writer.writeStartElement(messagePrefix, PROCESSING_TRAIL, messageNamespace);
+          writeEntries(writer, messagePrefix, messageNamespace);
+          writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        return true;
+      }
+      if (event != XMLStreamConstants.START_ELEMENT) {
+        copyEvent(reader, writer);
+      } else if (!PROCESSING_TRAIL.equals(reader.getLocalName())) {
+        rewriteField(reader, writer);
+      } else if (update.separateTrail()) {
+        rewriteProcessingTrail(reader, writer);
+      } else {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  ValidationResult getValidationResult() {
+    return failure != ValidationResult.VALID ? failure : MessageValidator.missingField(validFields);
+  }
+
+  int getMessageId() {
+    return messageId;
+  }
+
+  private void rewriteField(XMLStreamReader reader, XMLStreamWriter writer)
+      throws XMLStreamException {
+    String fieldName = reader.getLocalName();
+    switch (fieldName) {
+      case MESSAGE_ID -> {
+        String text = readField(reader, writer);
+        messageId = parseMessageId(text);
+        validFields |= messageId > 0 ? MessageValidator.MESSAGE_ID_FIELD : 0;
+        writer.writeCharacters(text);
+      }
+      case MESSAGE_TITLE -> {
+        String text = readField(reader, writer);
+        validFields |= MessageValidator.hasText(text) ? MessageValidator.MESSAGE_TITLE_FIELD : 0;
+        writer.writeCharacters(text);
+      }
+      case MESSAGE_BODY -> {
+        String text = readField(reader, writer);
+        int appendedLength = update.separateTrail() ? 0 : update.precedingSuffixLength();
+        validFields |= check(validator.validateMessageBody(text, appendedLength),
+            MessageValidator.MESSAGE_BODY_FIELD);
+        writer.writeCharacters(text);
+        if (!update.separateTrail()) {
+          writer.writeCharacters(update.bodySuffix());
+        }
+      }
+      case CREATION_TIME -> {
+        String text = readField(reader, writer);
+        validFields |= isTimestamp(text) ? MessageValidator.CREATION_TIME_FIELD : 0;
+        writer.writeCharacters(text);
+      }
+      case LAST_MODIFIED -> {
+        validFields |= isTimestamp(readField(reader, writer))
+            ? MessageValidator.LAST_MODIFIED_FIELD
+            : 0;
+        writer.writeCharacters(update.lastModified().toInstant().toString());
+      }
+      case LAST_AGENT -> {
+        validFields |= MessageValidator.hasText(readField(reader, writer))
+            ? MessageValidator.LAST_AGENT_FIELD
+            : 0;
+        writer.writeCharacters(update.agentId());
+      }
+      case STATUS -> {
+        String text = readField(reader, writer);
+        validFields |= check(validator.validateStatus(text), MessageValidator.STATUS_FIELD);
+        writer.writeCharacters(text);
+      }
+      default -> {
+        copySubtree(reader, writer);
+        return;
+      }
+    }
+    writer.writeEndElement();
+  }
+
+  // copies the entries of the ProcessingTrail element and adds one per update after them
+  private void rewriteProcessingTrail(XMLStreamReader reader, XMLStreamWriter writer)
+      throws XMLStreamException {
+    String prefix = nullToEmpty(reader.getPrefix());
+    String namespace = nullToEmpty(reader.getNamespaceURI());
+    copyStartElement(reader, writer);
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        break;
+      }
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        copySubtree(reader, writer);
+      } else {
+        copyEvent(reader, writer);
+      }
+    }
+    writeEntries(writer, prefix, namespace);
+    writer.writeEndElement();
+    processingTrailWritten = true;
+  }
+
+  // writes the entries the way XmlMessage binds ProcessingTrail.Entry
+  private void writeEntries(XMLStreamWriter writer, String prefix, String namespace)
+      throws XMLStreamException {
+    for (MessageUpdate trailUpdate : update.trailUpdates()) {
+      writer.writeStartElement(prefix, ENTRY, namespace);
+      writer.writeAttribute(ENTRY_AGENT, trailUpdate.agentId());
+      writer.writeAttribute(ENTRY_PROCESSED_AT,
+          TIMESTAMP_ADAPTER.marshal(trailUpdate.lastModified()));
+      writer.writeCharacters(trailUpdate.bodySuffix());
+      writer.writeEndElement();
+    }
+  }
+
+  // accepts what TimestampAdapter binds, so the streaming path rejects the instants JAXB does
+  private static boolean isTimestamp(String text) {
+    try {
+      return TIMESTAMP_ADAPTER.unmarshal(text) != null;
+    } catch (DateTimeParseException dateTimeParseException) {
+      return false;
+    }
+  }
+
+  // writes the start tag of a leaf field and returns its text, leaving the end tag to the caller
+  private static String readField(XMLStreamReader reader, XMLStreamWriter writer)
+      throws XMLStreamException {
+    copyStartElement(reader, writer);
+    return reader.getElementText();
+  }
+
+  // returns the field bit when the field is valid and remembers the first failure otherwise
+  private int check(ValidationResult result, int field) {
+    if (result == ValidationResult.VALID) {
+      return field;
+    }
+    if (failure == ValidationResult.VALID) {
+      failure = result;
+    }
+    return 0;
+  }
+
+  private static int parseMessageId(String text) {
+    try {
+      return Integer.parseInt(text.trim());
+    } catch (NumberFormatException numberFormatException) {
+      return 0;
+    }
+  }
+
+  // copies the element the reader is positioned on together with all of its descendants
+  static void copySubtree(XMLStreamReader reader, XMLStreamWriter writer)
+      throws XMLStreamException {
+    int depth = 0;
+    while (true) {
+      int event = reader.getEventType();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+      copyEvent(reader, writer);
+      if (depth == 0) {
+        return;
+      }
+      reader.next();
+    }
+  }
+
+  static void copyEvent(XMLStreamReader reader, XMLStreamWriter writer)
+      throws XMLStreamException {
+    switch (reader.getEventType()) {
+      case XMLStreamConstants.START_ELEMENT -> copyStartElement(reader, writer);
+      case XMLStreamConstants.END_ELEMENT -> writer.writeEndElement();
+      case XMLStreamConstants.CHARACTERS, XMLStreamConstants.SPACE ->
+          writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(),
+              reader.getTextLength());
+      case XMLStreamConstants.CDATA -> writer.writeCData(reader.getText());
+      case XMLStreamConstants.COMMENT -> writer.writeComment(reader.getText());
+      case XMLStreamConstants.PROCESSING_INSTRUCTION ->
+          writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+      default -> {
+        // document boundaries and DTD events are written by the callers
+      }
+    }
+  }
+
+  static void copyStartElement(XMLStreamReader reader, XMLStreamWriter writer)
+      throws XMLStreamException {
+    writer.writeStartElement(nullToEmpty(reader.getPrefix()), reader.getLocalName(),
+        nullToEmpty(reader.getNamespaceURI()));
+    for (int index = 0; index < reader.getNamespaceCount(); index++) {
+      String prefix = reader.getNamespacePrefix(index);
+      if (prefix == null || prefix.isEmpty()) {
+        writer.writeDefaultNamespace(reader.getNamespaceURI(index));
+      } else {
+        writer.writeNamespace(prefix, reader.getNamespaceURI(index));
+      }
+    }
+    for (int index = 0; index < reader.getAttributeCount(); index++) {
+      writer.writeAttribute(nullToEmpty(reader.getAttributePrefix(index)),
+          nullToEmpty(reader.getAttributeNamespace(index)), reader.getAttributeLocalName(index),
+          reader.getAttributeValue(index));
+    }
+  }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+    inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    return inputFactory;
+  }
+}
@@ -0,0 +1,32 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+// outcome of validating a message; every failure names the message field it was found in
+public enum ValidationResult {
+
+  VALID(null),
+  MISSING_MESSAGE(null),
+  INVALID_MESSAGE_ID("MessageID"),
+  MISSING_MESSAGE_TITLE("MessageTitle"),
+  MISSING_MESSAGE_BODY("MessageBody"),
+  MESSAGE_BODY_TOO_LONG("MessageBody"),
+  MISSING_CREATION_TIME("CreationTime"),
+  MISSING_LAST_MODIFIED("LastModified"),
+  MISSING_LAST_AGENT("LastAgent"),
+  MISSING_STATUS("Status"),
+  STATUS_NOT_ALLOWED("Status");
+
+  private final String field;
+
+  ValidationResult(String field) {
+    this.field = field;
+  }
+
+  public boolean isValid() {
+    return this == VALID;
+  }
+
+  // returns the name of the field that failed, or null when the message is valid or missing
+  public String getField() {
+    return field;
+  }
+}
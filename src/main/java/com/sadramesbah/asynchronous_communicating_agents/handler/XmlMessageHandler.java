@@ -1,14 +1,23 @@
 package com.sadramesbah.asynchronous_communicating_agents.handler;
 
+import com.sadramesbah.asynchronous_communicating_agents.exception.MessageValidationException;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageUpdate;
 import com.sadramesbah.asynchronous_communicating_agents.message.XmlMessage;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import java.util.stream.Stream;
-import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Marshaller;
-import jakarta.xml.bind.Unmarshaller;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,65 +25,231 @@ import org.slf4j.LoggerFactory;
 public class XmlMessageHandler {
 
   private static final Logger logger = LoggerFactory.getLogger(XmlMessageHandler.class);
-  private final Marshaller marshaller;
-  private final Unmarshaller unmarshaller;
+  private final JaxbMarshallerPool jaxbPool;
+  private final OutputBufferPool outputBuffers = new OutputBufferPool();
+  private final MessageValidator validator;
 
   public XmlMessageHandler() throws JAXBException {
-    JAXBContext jaxbContext = JAXBContext.newInstance(XmlMessage.class);
-    this.marshaller = jaxbContext.createMarshaller();
-    this.marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-    this.unmarshaller = jaxbContext.createUnmarshaller();
+    this(MessageValidator.defaults());
+  }
+
+  @Autowired
+  public XmlMessageHandler(MessageValidator validator) throws JAXBException {
+    // in strict mode the unmarshallers check the schema while they bind the message
+    this.jaxbPool = new JaxbMarshallerPool(JaxbMarshallerPool.xmlMessageContext(),
+        Map.of(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE), validator.xmlSchema());
+    this.validator = validator;
   }
 
   // parses XML message in string format and converts it to XmlMessage object
   public XmlMessage parse(String xmlMessageInString) throws JAXBException {
-    logger.info("Parsing XML message from string.");
-    XmlMessage xmlMessageObject = (XmlMessage) unmarshaller.unmarshal(
-        new StringReader(xmlMessageInString));
-    if (isInvalidXmlMessage(xmlMessageObject)) {
-      logger.warn("Invalid XML message structure occurred while parsing. MessageID: {}, Agent: {}",
+    return validateParsed(jaxbPool.withUnmarshaller(
+        unmarshaller -> (XmlMessage) unmarshaller.unmarshal(new StringReader(xmlMessageInString))));
+  }
+
+  // parses an encoded XML message and converts it to XmlMessage object
+  public XmlMessage parse(byte[] xmlMessageInBytes) throws JAXBException {
+    return parse(new ByteArrayInputStream(xmlMessageInBytes));
+  }
+
+  // parses an XML message read from the stream and converts it to XmlMessage object
+  public XmlMessage parse(InputStream xmlMessageInputStream) throws JAXBException {
+    return validateParsed(jaxbPool.withUnmarshaller(
+        unmarshaller -> (XmlMessage) unmarshaller.unmarshal(xmlMessageInputStream)));
+  }
+
+  private XmlMessage validateParsed(XmlMessage xmlMessageObject) throws JAXBException {
+    ValidationResult validationResult = validator.validate(xmlMessageObject);
+    if (!validationResult.isValid()) {
+      logger.warn("Invalid XML message structure occurred while parsing. MessageID: {}, "
+              + "Agent: {}, Failure: {}", xmlMessageObject.getMessageId(),
+          xmlMessageObject.getLastAgent(), validationResult);
+      throw invalidMessage(validationResult);
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Parsed XML message successfully. MessageID: {}, Agent: {}",
           xmlMessageObject.getMessageId(), xmlMessageObject.getLastAgent());
-      throw new JAXBException("Invalid XML message");
     }
-    logger.info("Parsed XML message successfully. MessageID: {}, Agent: {}",
-        xmlMessageObject.getMessageId(), xmlMessageObject.getLastAgent());
     return xmlMessageObject;
   }
 
   // converts XmlMessage object to XML message in string format
   public String toXmlString(XmlMessage xmlMessageObject) throws JAXBException {
-    logger.info("Converting XmlMessage object to XML string. MessageID: {}, Agent: {}",
-        xmlMessageObject.getMessageId(), xmlMessageObject.getLastAgent());
-    if (isInvalidXmlMessage(xmlMessageObject)) {
-      logger.warn(
-          "Invalid XML message structure occurred while converting to string. MessageID: {}, Agent: {}",
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    try {
+      writeTo(xmlMessageObject, buffer);
+      return buffer.toString(StandardCharsets.UTF_8);
+    } finally {
+      outputBuffers.release(buffer);
+    }
+  }
+
+  // converts XmlMessage object to a UTF-8 encoded XML message
+  public byte[] toXmlBytes(XmlMessage xmlMessageObject) throws JAXBException {
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    try {
+      writeTo(xmlMessageObject, buffer);
+      return buffer.toByteArray();
+    } finally {
+      outputBuffers.release(buffer);
+    }
+  }
+
+  // writes XmlMessage object UTF-8 encoded to the stream, which is left open
+  public void writeTo(XmlMessage xmlMessageObject, OutputStream outputStream)
+      throws JAXBException {
+    validateForWriting(xmlMessageObject);
+    jaxbPool.withMarshaller(marshaller -> {
+      marshaller.marshal(xmlMessageObject, outputStream);
+      return outputStream;
+    });
+  }
+
+  private void validateForWriting(XmlMessage xmlMessageObject) throws JAXBException {
+    if (logger.isDebugEnabled()) {
+      logger.debug("Converting XmlMessage object to XML string. MessageID: {}, Agent: {}",
           xmlMessageObject.getMessageId(), xmlMessageObject.getLastAgent());
-      throw new JAXBException("Invalid XML message");
     }
-    StringWriter stringWriter = new StringWriter();
-    marshaller.marshal(xmlMessageObject, stringWriter);
-    return stringWriter.toString();
+    ValidationResult validationResult = validator.validate(xmlMessageObject);
+    if (!validationResult.isValid()) {
+      logger.warn("Invalid XML message structure occurred while converting to string. "
+              + "MessageID: {}, Agent: {}, Failure: {}", xmlMessageObject.getMessageId(),
+          xmlMessageObject.getLastAgent(), validationResult);
+      throw invalidMessage(validationResult);
+    }
   }
 
-  // checks if XmlMessage object has the expected structure
-  boolean isInvalidXmlMessage(XmlMessage xmlMessageObject) {
-    if (xmlMessageObject == null) {
-      logger.warn("XmlMessage object is null.");
-      return true;
+  // applies the update to an XML message in string format in a single StAX pass without binding
+  // it to XmlMessage; the output is compact rather than formatted. a message with a
+  // ProcessingTrail element is bound instead unless the update keeps a separate trail
+  public String transform(String xmlMessageInString, MessageUpdate update) throws JAXBException {
+    StringWriter stringWriter = new StringWriter(xmlMessageInString.length() + 128);
+    try {
+      if (transform(StaxMessageRewriter.INPUT_FACTORY.createXMLStreamReader(
+              new StringReader(xmlMessageInString)),
+          StaxMessageRewriter.OUTPUT_FACTORY.createXMLStreamWriter(stringWriter), update)) {
+        return stringWriter.toString();
+      }
+    } catch (XMLStreamException xmlStreamException) {
+      throw new JAXBException("Error transforming XML message.", xmlStreamException);
+    }
+    return toXmlString(applyBound(parse(xmlMessageInString), update));
+  }
+
+  // applies the update to an encoded XML message and returns it UTF-8 encoded
+  public byte[] transform(byte[] xmlMessageInBytes, MessageUpdate update) throws JAXBException {
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    try {
+      if (transformInto(new ByteArrayInputStream(xmlMessageInBytes), buffer, update)) {
+        return buffer.toByteArray();
+      }
+    } finally {
+      outputBuffers.release(buffer);
+    }
+    return toXmlBytes(applyBound(parse(xmlMessageInBytes), update));
+  }
+
+  // applies the update to an XML message read from the input stream and writes it UTF-8 encoded
+  // to the output stream; the output is buffered until the message passed validation, so an
+  // invalid message writes nothing. the input is not held in memory when the update keeps a
+  // separate trail, and is read in full otherwise, as a ProcessingTrail element found on the way
+  // means binding it. both streams are left open
+  public void transform(InputStream inputStream, OutputStream outputStream, MessageUpdate update)
+      throws JAXBException {
+    try {
+      if (!update.separateTrail()) {
+        outputStream.write(transform(inputStream.readAllBytes(), update));
+        return;
+      }
+      OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+      try {
+        transformInto(inputStream, buffer, update);
+        buffer.writeTo(outputStream);
+      } finally {
+        outputBuffers.release(buffer);
+      }
+    } catch (IOException ioException) {
+      throw new JAXBException("Error writing XML message.", ioException);
+    }
+  }
+
+  private boolean transformInto(InputStream inputStream, OutputStream outputStream,
+      MessageUpdate update) throws JAXBException {
+    try {
+      return transform(StaxMessageRewriter.INPUT_FACTORY.createXMLStreamReader(inputStream),
+          StaxMessageRewriter.OUTPUT_FACTORY.createXMLStreamWriter(outputStream, "UTF-8"),
+          update);
+    } catch (XMLStreamException xmlStreamException) {
+      throw new JAXBException("Error transforming XML message.", xmlStreamException);
+    }
+  }
+
+  // applies the update to a parsed message; for a combined update the body is checked the way
+  // the last of its agents would receive it, unless the trail is kept apart from the body
+  public XmlMessage applyUpdate(XmlMessage xmlMessageObject, MessageUpdate update)
+      throws JAXBException {
+    if (update.precedingSuffixLength() > 0 && !update.separateTrail()
+        && !xmlMessageObject.getProcessingTrail().isSeparate()) {
+      ValidationResult bodyResult = validator.validateMessageBody(
+          xmlMessageObject.getMessageBody(), update.precedingSuffixLength());
+      if (!bodyResult.isValid()) {
+        logger.warn("Invalid XML message structure occurred while updating. MessageID: {}, "
+            + "Failure: {}", xmlMessageObject.getMessageId(), bodyResult);
+        throw invalidMessage(bodyResult);
+      }
+    }
+    update.applyTo(xmlMessageObject);
+    return xmlMessageObject;
+  }
+
+  // the bound path for messages whose processing trail the rewriter cannot extend
+  private XmlMessage applyBound(XmlMessage xmlMessageObject, MessageUpdate update) {
+    logger.debug("Binding XML message because it has a ProcessingTrail element.");
+    update.applyTo(xmlMessageObject);
+    return xmlMessageObject;
+  }
+
+  // returns false when the message has to be bound to apply the update
+  private boolean transform(XMLStreamReader reader, XMLStreamWriter writer, MessageUpdate update)
+      throws JAXBException, XMLStreamException {
+    StaxMessageRewriter rewriter = new StaxMessageRewriter(update, validator);
+    try {
+      reader.nextTag();
+      if (!StaxMessageRewriter.MESSAGE.equals(reader.getLocalName())) {
+        logger.warn("Root element of XML message is {} instead of Message.",
+            reader.getLocalName());
+        throw new JAXBException("Invalid XML message");
+      }
+      writer.writeStartDocument("UTF-8", "1.0");
+      if (!rewriter.rewrite(reader, writer)) {
+        return false;
+      }
+      writer.writeEndDocument();
+      writer.flush();
+    } finally {
+      reader.close();
+      writer.close();
     }
+    ValidationResult validationResult = rewriter.getValidationResult();
+    if (!validationResult.isValid()) {
+      logger.warn("Invalid XML message structure occurred while transforming. MessageID: {}, "
+          + "Failure: {}", rewriter.getMessageId(), validationResult);
+      throw invalidMessage(validationResult);
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Transformed XML message successfully. MessageID: {}, Agent: {}",
+          rewriter.getMessageId(), update.agentId());
+    }
+    return true;
+  }
 
-    return Stream.of(
-        xmlMessageObject.getMessageId() <= 0,
-        isMissingNullOrEmpty(xmlMessageObject.getMessageTitle()),
-        isMissingNullOrEmpty(xmlMessageObject.getMessageBody()),
-        xmlMessageObject.getCreationTime() == null,
-        xmlMessageObject.getLastModified() == null,
-        isMissingNullOrEmpty(xmlMessageObject.getLastAgent()),
-        isMissingNullOrEmpty(xmlMessageObject.getStatus())
-    ).anyMatch(Boolean::booleanValue);
+  private static JAXBException invalidMessage(ValidationResult validationResult) {
+    return new JAXBException("Invalid XML message: " + validationResult,
+        new MessageValidationException(validationResult));
   }
 
-  private boolean isMissingNullOrEmpty(String value) {
-    return value == null || value.isEmpty() || "null".equals(value);
+  // checks if XmlMessage object has the expected structure
+  boolean isInvalidXmlMessage(XmlMessage xmlMessageObject) {
+    return !validator.validate(xmlMessageObject).isValid();
   }
-}
\ No newline at end of file
+}
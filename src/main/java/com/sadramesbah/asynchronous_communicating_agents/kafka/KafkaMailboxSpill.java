@@ -0,0 +1,39 @@
+package com.sadramesbah.asynchronous_communicating_agents.kafka;
+
+import com.sadramesbah.asynchronous_communicating_agents.agent.AgentMailbox;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.kafka.core.KafkaTemplate;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+
+// spills the messages of a full agent mailbox to a Kafka topic in the format the messaging agent
+// pipeline consumes: the encoded message with its type in the message-type header, and binary
+// messages as raw bytes rather than Base64, so a pipeline on that topic processes them later
+public class KafkaMailboxSpill implements AgentMailbox.Spill {
+
+  private final KafkaTemplate<String, byte[]> kafkaTemplate;
+  private final String spillTopic;
+
+  public KafkaMailboxSpill(KafkaTemplate<String, byte[]> kafkaTemplate, String spillTopic) {
+    this.kafkaTemplate = kafkaTemplate;
+    this.spillTopic = spillTopic;
+  }
+
+  // completes once the broker acknowledged the record
+  @Override
+  public CompletableFuture<?> spill(String inputMessage, MessageType inputMessageType) {
+    byte[] value = inputMessageType == MessageType.BINARY
+        ? Base64.getDecoder().decode(inputMessage)
+        : inputMessage.getBytes(StandardCharsets.UTF_8);
+    ProducerRecord<String, byte[]> spilledRecord = new ProducerRecord<>(spillTopic, value);
+    spilledRecord.headers().add(MessagingAgentPipeline.MESSAGE_TYPE_HEADER,
+        inputMessageType.name().getBytes(StandardCharsets.UTF_8));
+    return kafkaTemplate.send(spilledRecord);
+  }
+
+  public String getSpillTopic() {
+    return spillTopic;
+  }
+}
@@ -1,18 +1,30 @@
 package com.sadramesbah.asynchronous_communicating_agents.kafka;
 
 import org.apache.kafka.clients.admin.*;
+import org.apache.kafka.common.KafkaFuture;
 import org.apache.kafka.common.config.ConfigResource;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
 import org.springframework.beans.factory.annotation.Value;
 import javax.annotation.PostConstruct;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.Socket;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Map;
+import java.util.OptionalInt;
 import java.util.stream.Collectors;
 import java.util.Collection;
 
@@ -20,6 +32,12 @@ public class KafkaManager {
 
   private static final Logger logger = LoggerFactory.getLogger(KafkaManager.class);
   private final AdminClient adminClient;
+  private final TopicMetadataCache topicCache;
+  // completes the futures of the non-blocking variants, so that the stages callers attach never
+  // run on the AdminClient network thread
+  private final ExecutorService callbackExecutor = Executors.newThreadPerTaskExecutor(
+      Thread.ofVirtual().name("kafka-admin-callback-", 0).factory());
+  private volatile Duration adminTimeout = Duration.ofSeconds(30);
 
   @Value("${default.kafka.port}")
   private int defaultKafkaPort;
@@ -32,6 +50,7 @@ public class KafkaManager {
     Properties config = new Properties();
     config.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer);
     this.adminClient = AdminClient.create(config);
+    this.topicCache = new TopicMetadataCache(this::loadTopicMetadata, Duration.ofSeconds(30));
   }
 
   // checks if Zookeeper and Kafka servers are active
@@ -60,24 +79,27 @@ public class KafkaManager {
     }
   }
 
-  // creates a new topic
+  // creates a new topic; an existing topic is reported by the broker rather than by listing
+  // every topic beforehand
   public boolean createTopic(String topicName, int numPartitions, short replicationFactor) {
-    if (!topicExists(topicName)) {
-      NewTopic newTopic = new NewTopic(topicName, numPartitions, replicationFactor);
-      try {
-        adminClient.createTopics(Collections.singleton(newTopic)).all().get();
-        logger.info("Topic created: {}", topicName);
-        return true;
-      } catch (InterruptedException intException) {
-        Thread.currentThread().interrupt();
-        logger.error("Failed to create topic {} with InterruptedException: ", topicName,
-            intException);
-      } catch (ExecutionException exeException) {
+    NewTopic newTopic = new NewTopic(topicName, numPartitions, replicationFactor);
+    try {
+      adminClient.createTopics(Collections.singleton(newTopic)).all().get();
+      topicCache.recordPartitions(Map.of(topicName, numPartitions));
+      logger.info("Topic created: {}", topicName);
+      return true;
+    } catch (InterruptedException intException) {
+      Thread.currentThread().interrupt();
+      logger.error("Failed to create topic {} with InterruptedException: ", topicName,
+          intException);
+    } catch (ExecutionException exeException) {
+      if (exeException.getCause() instanceof TopicExistsException) {
+        topicCache.invalidate();
+        logger.info("Topic {} already exists.", topicName);
+      } else {
         logger.error("Failed to create topic {} with ExecutionException: ", topicName,
             exeException);
       }
-    } else {
-      logger.info("Topic {} already exists.", topicName);
     }
     return false;
   }
@@ -86,6 +108,7 @@ public class KafkaManager {
   public boolean deleteTopic(String topicName) {
     try {
       adminClient.deleteTopics(Collections.singleton(topicName)).all().get();
+      topicCache.recordDeleted(Collections.singleton(topicName));
       logger.info("Topic deleted: {}", topicName);
       return true;
     } catch (InterruptedException intException) {
@@ -104,6 +127,7 @@ public class KafkaManager {
       Set<String> topics = adminClient.listTopics(new ListTopicsOptions().listInternal(false))
           .names().get();
       adminClient.deleteTopics(topics).all().get();
+      topicCache.recordDeleted(topics);
       logger.info("All topics deleted: {}", topics);
     } catch (InterruptedException intException) {
       Thread.currentThread().interrupt();
@@ -113,25 +137,43 @@ public class KafkaManager {
     }
   }
 
-  // checks if a topic exists
+  // checks if a topic exists using the cached topic metadata, which is loaded on first use and
+  // refreshed in the background once older than the cache TTL
   public boolean topicExists(String topicName) {
     try {
-      Set<String> topics = adminClient.listTopics(new ListTopicsOptions().listInternal(false))
-          .names().get();
-      boolean exists = topics.contains(topicName);
-      logger.info("Topic {} exists: {}", topicName, exists);
+      boolean exists = topicCache.contains(topicName);
+      logger.debug("Topic {} exists: {}", topicName, exists);
       return exists;
-    } catch (InterruptedException intException) {
-      Thread.currentThread().interrupt();
-      logger.error("Failed to check if topic {} exists with InterruptedException: ", topicName,
-          intException);
-    } catch (ExecutionException exeException) {
-      logger.error("Failed to check if topic {} exists with ExecutionException: ", topicName,
-          exeException);
+    } catch (CompletionException compException) {
+      logger.error("Failed to check if topic {} exists with {}: ", topicName,
+          unwrap(compException).getClass().getSimpleName(), unwrap(compException));
     }
     return false;
   }
 
+  // gets the partition count of a topic from the cached topic metadata
+  public OptionalInt getPartitionCount(String topicName) {
+    try {
+      return topicCache.partitionCount(topicName);
+    } catch (CompletionException compException) {
+      logger.error("Failed to get partition count of topic {} with {}: ", topicName,
+          unwrap(compException).getClass().getSimpleName(), unwrap(compException));
+    }
+    return OptionalInt.empty();
+  }
+
+  // sets how long cached topic metadata is served before it is reloaded in the background
+  @Value("${kafka.topic.cache.ttl.ms:30000}")
+  public void setTopicCacheTtlMs(long topicCacheTtlMs) {
+    topicCache.setTtl(Duration.ofMillis(topicCacheTtlMs));
+  }
+
+  // reloads the cached topic metadata, e.g. after topics were changed outside this manager;
+  // lookups answer from the old metadata until the returned future completes
+  public CompletableFuture<Void> invalidateTopicCache() {
+    return topicCache.invalidate();
+  }
+
   // lists all existing topics
   public Set<String> listTopics() {
     try {
@@ -216,6 +258,7 @@ public class KafkaManager {
     try {
       adminClient.createPartitions(
           Collections.singletonMap(topicName, NewPartitions.increaseTo(numPartitions))).all().get();
+      topicCache.recordPartitions(Map.of(topicName, numPartitions));
       logger.info("Added partitions to topic: {}", topicName);
     } catch (InterruptedException intException) {
       Thread.currentThread().interrupt();
@@ -227,9 +270,360 @@ public class KafkaManager {
     }
   }
 
-  // closes the AdminClient instance
+  // sets the time after which the futures returned by the asynchronous methods fail with a
+  // TimeoutException
+  @Value("${kafka.admin.timeout.ms:30000}")
+  public void setAdminTimeoutMs(long adminTimeoutMs) {
+    this.adminTimeout = Duration.ofMillis(adminTimeoutMs);
+  }
+
+  public Duration getAdminTimeout() {
+    return adminTimeout;
+  }
+
+  // creates a new topic without blocking; completes with false if the topic already exists
+  public CompletableFuture<Boolean> createTopicAsync(String topicName, int numPartitions,
+      short replicationFactor) {
+    NewTopic newTopic = new NewTopic(topicName, numPartitions, replicationFactor);
+    return recover(toCompletableFuture(adminClient.createTopics(Collections.singleton(newTopic),
+            new CreateTopicsOptions().timeoutMs(adminTimeoutMs())).all())
+            .thenApply(ignored -> {
+              topicCache.recordPartitions(Map.of(topicName, numPartitions));
+              logger.info("Topic created: {}", topicName);
+              return true;
+            }), TopicExistsException.class, false,
+        "Failed to create topic " + topicName);
+  }
+
+  // deletes a topic without blocking; completes with false if the topic does not exist
+  public CompletableFuture<Boolean> deleteTopicAsync(String topicName) {
+    return recover(toCompletableFuture(adminClient.deleteTopics(Collections.singleton(topicName),
+            new DeleteTopicsOptions().timeoutMs(adminTimeoutMs())).all())
+            .thenApply(ignored -> {
+              topicCache.recordDeleted(Collections.singleton(topicName));
+              logger.info("Topic deleted: {}", topicName);
+              return true;
+            }), UnknownTopicOrPartitionException.class, false,
+        "Failed to delete topic " + topicName);
+  }
+
+  // deletes all existing topics without blocking; completes with the names of deleted topics
+  public CompletableFuture<Set<String>> deleteAllTopicsAsync() {
+    return listTopicsAsync().thenCompose(topics -> toCompletableFuture(
+            adminClient.deleteTopics(topics, new DeleteTopicsOptions().timeoutMs(adminTimeoutMs()))
+                .all())
+            .thenApply(ignored -> {
+              topicCache.recordDeleted(topics);
+              logger.info("All topics deleted: {}", topics);
+              return topics;
+            }))
+        .whenComplete((topics, throwable) -> logFailure(throwable, "Failed to delete all topics"));
+  }
+
+  // checks if a topic exists without blocking
+  public CompletableFuture<Boolean> topicExistsAsync(String topicName) {
+    return listTopicsAsync().thenApply(topics -> topics.contains(topicName));
+  }
+
+  // lists all existing topics without blocking
+  public CompletableFuture<Set<String>> listTopicsAsync() {
+    return toCompletableFuture(adminClient.listTopics(
+            new ListTopicsOptions().listInternal(false).timeoutMs(adminTimeoutMs())).names())
+        .whenComplete((topics, throwable) -> logFailure(throwable, "Failed to list all topics"));
+  }
+
+  // updates the configuration of an existing topic without blocking
+  public CompletableFuture<Void> updateTopicConfigAsync(String topicName,
+      Map<String, String> configs) {
+    ConfigResource configResource = new ConfigResource(ConfigResource.Type.TOPIC, topicName);
+    Collection<AlterConfigOp> configOps = configs.entrySet().stream()
+        .map(entry -> new AlterConfigOp(new ConfigEntry(entry.getKey(), entry.getValue()),
+            AlterConfigOp.OpType.SET))
+        .toList();
+    return toCompletableFuture(adminClient.incrementalAlterConfigs(
+            Collections.singletonMap(configResource, configOps),
+            new AlterConfigsOptions().timeoutMs(adminTimeoutMs())).all())
+        .whenComplete((ignored, throwable) -> logFailure(throwable,
+            "Failed to update configuration for topic " + topicName));
+  }
+
+  // gets the details of a specific topic without blocking; completes with null if the topic
+  // does not exist
+  public CompletableFuture<TopicDescription> describeTopicAsync(String topicName) {
+    return recover(toCompletableFuture(adminClient.describeTopics(
+                Collections.singleton(topicName),
+                new DescribeTopicsOptions().timeoutMs(adminTimeoutMs())).allTopicNames())
+            .thenApply(descriptions -> descriptions.get(topicName)),
+        UnknownTopicOrPartitionException.class, null, "Failed to describe topic " + topicName);
+  }
+
+  // lists all existing consumer groups without blocking
+  public CompletableFuture<Set<String>> listConsumerGroupsAsync() {
+    return toCompletableFuture(adminClient.listConsumerGroups(
+            new ListConsumerGroupsOptions().timeoutMs(adminTimeoutMs())).all())
+        .thenApply(groups -> groups.stream()
+            .map(ConsumerGroupListing::groupId)
+            .collect(Collectors.toSet()))
+        .whenComplete((groups, throwable) -> logFailure(throwable,
+            "Failed to list consumer groups"));
+  }
+
+  // adds partitions to an existing topic without blocking
+  public CompletableFuture<Void> addPartitionsToTopicAsync(String topicName, int numPartitions) {
+    return toCompletableFuture(adminClient.createPartitions(
+            Collections.singletonMap(topicName, NewPartitions.increaseTo(numPartitions)),
+            new CreatePartitionsOptions().timeoutMs(adminTimeoutMs())).all())
+        .thenRun(() -> topicCache.recordPartitions(Map.of(topicName, numPartitions)))
+        .whenComplete((ignored, throwable) -> logFailure(throwable,
+            "Failed to add partitions to topic " + topicName));
+  }
+
+  // creates many topics in a single request; an existing topic fails with TopicExistsException
+  public Map<String, TopicOperationResult> createTopics(Collection<NewTopic> newTopics) {
+    return awaitResults("create", newTopics.stream().map(NewTopic::name).toList(),
+        createTopicsAsync(newTopics));
+  }
+
+  // deletes many topics in a single request
+  public Map<String, TopicOperationResult> deleteTopics(Collection<String> topicNames) {
+    return awaitResults("delete", topicNames, deleteTopicsAsync(topicNames));
+  }
+
+  // updates the configurations of many topics in a single request, keyed by topic name
+  public Map<String, TopicOperationResult> updateTopicConfigs(
+      Map<String, Map<String, String>> topicConfigs) {
+    return awaitResults("update configuration of", topicConfigs.keySet(),
+        updateTopicConfigsAsync(topicConfigs));
+  }
+
+  // increases the partition counts of many topics in a single request, keyed by topic name
+  public Map<String, TopicOperationResult> addPartitionsToTopics(
+      Map<String, Integer> topicPartitions) {
+    return awaitResults("add partitions to", topicPartitions.keySet(),
+        addPartitionsToTopicsAsync(topicPartitions));
+  }
+
+  // non-blocking variant of createTopics
+  public CompletableFuture<Map<String, TopicOperationResult>> createTopicsAsync(
+      Collection<NewTopic> newTopics) {
+    return collectResults("create", adminClient.createTopics(newTopics,
+            new CreateTopicsOptions().timeoutMs(adminTimeoutMs())).values())
+        .thenApply(results -> {
+          Map<String, Integer> created = new HashMap<>();
+          boolean unknownPartitions = false;
+          for (NewTopic newTopic : newTopics) {
+            TopicOperationResult result = results.get(newTopic.name());
+            if (result.isSuccessful() && newTopic.numPartitions() > 0) {
+              created.put(newTopic.name(), newTopic.numPartitions());
+            } else if (result.isSuccessful() || result.error() instanceof TopicExistsException) {
+              unknownPartitions = true;
+            }
+          }
+          if (unknownPartitions) {
+            topicCache.invalidate();
+          } else {
+            topicCache.recordPartitions(created);
+          }
+          return results;
+        });
+  }
+
+  // non-blocking variant of deleteTopics
+  public CompletableFuture<Map<String, TopicOperationResult>> deleteTopicsAsync(
+      Collection<String> topicNames) {
+    return collectResults("delete", adminClient.deleteTopics(topicNames,
+            new DeleteTopicsOptions().timeoutMs(adminTimeoutMs())).topicNameValues())
+        .thenApply(results -> {
+          topicCache.recordDeleted(successfulTopics(results));
+          return results;
+        });
+  }
+
+  // non-blocking variant of updateTopicConfigs
+  public CompletableFuture<Map<String, TopicOperationResult>> updateTopicConfigsAsync(
+      Map<String, Map<String, String>> topicConfigs) {
+    Map<ConfigResource, Collection<AlterConfigOp>> configOps = new HashMap<>();
+    topicConfigs.forEach((topicName, configs) -> configOps.put(
+        new ConfigResource(ConfigResource.Type.TOPIC, topicName),
+        configs.entrySet().stream()
+            .map(entry -> new AlterConfigOp(new ConfigEntry(entry.getKey(), entry.getValue()),
+                AlterConfigOp.OpType.SET))
+            .toList()));
+    Map<String, KafkaFuture<Void>> futures = new HashMap<>();
+    adminClient.incrementalAlterConfigs(configOps,
+            new AlterConfigsOptions().timeoutMs(adminTimeoutMs())).values()
+        .forEach((resource, future) -> futures.put(resource.name(), future));
+    return collectResults("update configuration of", futures);
+  }
+
+  // non-blocking variant of addPartitionsToTopics
+  public CompletableFuture<Map<String, TopicOperationResult>> addPartitionsToTopicsAsync(
+      Map<String, Integer> topicPartitions) {
+    Map<String, NewPartitions> newPartitions = new HashMap<>();
+    topicPartitions.forEach((topicName, numPartitions) ->
+        newPartitions.put(topicName, NewPartitions.increaseTo(numPartitions)));
+    return collectResults("add partitions to", adminClient.createPartitions(newPartitions,
+            new CreatePartitionsOptions().timeoutMs(adminTimeoutMs())).values())
+        .thenApply(results -> {
+          Map<String, Integer> repartitioned = new HashMap<>();
+          for (String topicName : successfulTopics(results)) {
+            repartitioned.put(topicName, topicPartitions.get(topicName));
+          }
+          topicCache.recordPartitions(repartitioned);
+          return results;
+        });
+  }
+
+  // waits for every per-topic future of a bulk request without failing the whole batch when
+  // some topics fail
+  private CompletableFuture<Map<String, TopicOperationResult>> collectResults(String operation,
+      Map<String, KafkaFuture<Void>> topicFutures) {
+    Map<String, CompletableFuture<TopicOperationResult>> results = new HashMap<>();
+    topicFutures.forEach((topicName, topicFuture) -> results.put(topicName,
+        toCompletableFuture(topicFuture).handle((ignored, throwable) ->
+            new TopicOperationResult(topicName, throwable == null ? null : unwrap(throwable)))));
+    return CompletableFuture.allOf(results.values().toArray(CompletableFuture[]::new))
+        .thenApply(ignored -> {
+          Map<String, TopicOperationResult> collected = new HashMap<>();
+          int failed = 0;
+          for (CompletableFuture<TopicOperationResult> result : results.values()) {
+            TopicOperationResult topicResult = result.join();
+            collected.put(topicResult.topicName(), topicResult);
+            if (!topicResult.isSuccessful()) {
+              failed++;
+              logger.error("Failed to {} topic {}: {}", operation, topicResult.topicName(),
+                  topicResult.error().toString());
+            }
+          }
+          logger.info("Bulk {} topics: {} succeeded, {} failed", operation,
+              collected.size() - failed, failed);
+          return collected;
+        });
+  }
+
+  // waits for a bulk request; when the request fails as a whole, or the wait is interrupted,
+  // the failure is logged and reported for every topic, so the blocking variants do not throw
+  // either
+  private static Map<String, TopicOperationResult> awaitResults(String operation,
+      Collection<String> topicNames, CompletableFuture<Map<String, TopicOperationResult>> results) {
+    try {
+      return results.get();
+    } catch (InterruptedException intException) {
+      Thread.currentThread().interrupt();
+      return failedResults(operation, topicNames, intException);
+    } catch (ExecutionException exeException) {
+      return failedResults(operation, topicNames, unwrap(exeException));
+    }
+  }
+
+  private static Map<String, TopicOperationResult> failedResults(String operation,
+      Collection<String> topicNames, Throwable cause) {
+    logger.error("Failed to {} topics {} with {}: ", operation, topicNames,
+        cause.getClass().getSimpleName(), cause);
+    Map<String, TopicOperationResult> failed = new HashMap<>();
+    for (String topicName : topicNames) {
+      failed.put(topicName, new TopicOperationResult(topicName, cause));
+    }
+    return failed;
+  }
+
+  private static Set<String> successfulTopics(Map<String, TopicOperationResult> results) {
+    return results.values().stream()
+        .filter(TopicOperationResult::isSuccessful)
+        .map(TopicOperationResult::topicName)
+        .collect(Collectors.toSet());
+  }
+
+  // loads the partition count of every topic; topics deleted between listing and describing
+  // them are left out, while any other failure to describe a topic fails the whole load, so the
+  // cache keeps serving its last snapshot rather than one that misses existing topics
+  private CompletableFuture<Map<String, Integer>> loadTopicMetadata() {
+    return listTopicsAsync().thenCompose(topicNames -> {
+      if (topicNames.isEmpty()) {
+        return CompletableFuture.completedFuture(Map.of());
+      }
+      Map<String, Integer> partitionCounts = new ConcurrentHashMap<>();
+      return CompletableFuture.allOf(describeTopicsForCache(topicNames).entrySet().stream()
+              .map(entry -> entry.getValue()
+                  .thenAccept(description -> partitionCounts.put(entry.getKey(),
+                      description.partitions().size()))
+                  .exceptionally(throwable -> {
+                    Throwable cause = unwrap(throwable);
+                    if (cause instanceof UnknownTopicOrPartitionException) {
+                      return null;
+                    }
+                    throw new CompletionException(cause);
+                  }))
+              .toArray(CompletableFuture[]::new))
+          .thenApply(ignored -> partitionCounts);
+    });
+  }
+
+  // describes the topics for the metadata cache, one future per topic
+  Map<String, CompletableFuture<TopicDescription>> describeTopicsForCache(
+      Collection<String> topicNames) {
+    Map<String, CompletableFuture<TopicDescription>> descriptions = new HashMap<>();
+    adminClient.describeTopics(topicNames,
+            new DescribeTopicsOptions().timeoutMs(adminTimeoutMs())).topicNameValues()
+        .forEach((topicName, description) -> descriptions.put(topicName,
+            toCompletableFuture(description)));
+    return descriptions;
+  }
+
+  // bridges a KafkaFuture to a CompletableFuture that fails once the admin timeout has elapsed;
+  // the returned future is completed on the callback executor, so dependent stages run there
+  // rather than on the AdminClient network thread or the timeout thread
+  private <T> CompletableFuture<T> toCompletableFuture(KafkaFuture<T> kafkaFuture) {
+    CompletableFuture<T> completableFuture = new CompletableFuture<>();
+    kafkaFuture.whenComplete((result, throwable) -> {
+      if (throwable != null) {
+        completableFuture.completeExceptionally(unwrap(throwable));
+      } else {
+        completableFuture.complete(result);
+      }
+    });
+    return completableFuture.orTimeout(adminTimeout.toMillis(), TimeUnit.MILLISECONDS)
+        .whenCompleteAsync((result, throwable) -> { }, callbackExecutor);
+  }
+
+  // completes with the fallback value when the operation fails with the expected exception
+  private static <T> CompletableFuture<T> recover(CompletableFuture<T> future,
+      Class<? extends Throwable> expectedException, T fallbackValue, String failureMessage) {
+    return future.exceptionally(throwable -> {
+      Throwable cause = unwrap(throwable);
+      if (expectedException.isInstance(cause)) {
+        logger.info("{}: {}", failureMessage, cause.getMessage());
+        return fallbackValue;
+      }
+      logFailure(cause, failureMessage);
+      throw new CompletionException(cause);
+    });
+  }
+
+  private static void logFailure(Throwable throwable, String failureMessage) {
+    if (throwable != null) {
+      logger.error("{} with {}: ", failureMessage, unwrap(throwable).getClass().getSimpleName(),
+          unwrap(throwable));
+    }
+  }
+
+  private static Throwable unwrap(Throwable throwable) {
+    Throwable cause = throwable;
+    while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+        && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause;
+  }
+
+  private int adminTimeoutMs() {
+    return (int) Math.min(Integer.MAX_VALUE, adminTimeout.toMillis());
+  }
+
+  // closes the AdminClient instance, then the executor its callbacks were handed to
   public void closeAdminClient() {
     adminClient.close();
+    callbackExecutor.shutdown();
     logger.info("AdminClient closed");
   }
 }
\ No newline at end of file
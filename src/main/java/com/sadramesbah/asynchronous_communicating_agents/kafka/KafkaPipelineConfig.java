@@ -0,0 +1,147 @@
+package com.sadramesbah.asynchronous_communicating_agents.kafka;
+
+import com.sadramesbah.asynchronous_communicating_agents.agent.MessagingAgentFactory;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+// wires the consumer -> agent -> producer pipeline, enabled with kafka.pipeline.enabled=true
+@EnableKafka
+@Configuration
+@ConditionalOnProperty(name = "kafka.pipeline.enabled", havingValue = "true")
+public class KafkaPipelineConfig {
+
+  @Value("${kafka.bootstrap.server}")
+  private String bootstrapServer;
+
+  @Value("${kafka.pipeline.group.id:messaging-agents}")
+  private String groupId;
+
+  @Value("${kafka.pipeline.max.poll.records:500}")
+  private int maxPollRecords;
+
+  @Value("${kafka.pipeline.fetch.min.bytes:65536}")
+  private int fetchMinBytes;
+
+  @Value("${kafka.pipeline.fetch.max.wait.ms:100}")
+  private int fetchMaxWaitMs;
+
+  @Value("${kafka.pipeline.concurrency:1}")
+  private int concurrency;
+
+  @Value("${kafka.pipeline.producer.linger.ms:10}")
+  private int lingerMs;
+
+  @Value("${kafka.pipeline.producer.batch.size:131072}")
+  private int batchSize;
+
+  @Value("${kafka.pipeline.producer.compression.type:lz4}")
+  private String compressionType;
+
+  @Value("${kafka.pipeline.retry.backoff.ms:1000}")
+  private long retryBackoffMs;
+
+  @Value("${kafka.pipeline.retry.max.attempts:10}")
+  private long retryMaxAttempts;
+
+  @Value("${kafka.pipeline.dead.letter.topic:}")
+  private String deadLetterTopic;
+
+  // consumer factory reading batches of records without auto-committing their offsets
+  @Bean
+  public ConsumerFactory<String, byte[]> agentPipelineConsumerFactory() {
+    Map<String, Object> config = new HashMap<>();
+    config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer);
+    config.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+    config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+    config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+    config.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, fetchMinBytes);
+    config.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, fetchMaxWaitMs);
+    config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+    config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+    return new DefaultKafkaConsumerFactory<>(config);
+  }
+
+  // producer factory batching and compressing the processed messages
+  @Bean
+  public ProducerFactory<String, byte[]> agentPipelineProducerFactory() {
+    Map<String, Object> config = new HashMap<>();
+    config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer);
+    config.put(ProducerConfig.ACKS_CONFIG, "all");
+    config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+    config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+    config.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+    config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+    config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+    return new DefaultKafkaProducerFactory<>(config);
+  }
+
+  @Bean
+  public KafkaTemplate<String, byte[]> agentPipelineKafkaTemplate(
+      ProducerFactory<String, byte[]> agentPipelineProducerFactory) {
+    return new KafkaTemplate<>(agentPipelineProducerFactory);
+  }
+
+  // batch listener container factory; offsets are committed manually after the produce succeeded.
+  // a record that fails processing is retried from that record after the backoff, and a batch
+  // whose produce fails is retried as a whole; once the attempts are exhausted the records go to
+  // the dead letter topic, which is therefore required
+  @Bean
+  public ConcurrentKafkaListenerContainerFactory<String, byte[]> agentPipelineContainerFactory(
+      ConsumerFactory<String, byte[]> agentPipelineConsumerFactory,
+      KafkaTemplate<String, byte[]> agentPipelineKafkaTemplate) {
+    if (deadLetterTopic.isEmpty()) {
+      throw new IllegalStateException(
+          "kafka.pipeline.dead.letter.topic must be set when the pipeline is enabled.");
+    }
+    ConcurrentKafkaListenerContainerFactory<String, byte[]> factory =
+        new ConcurrentKafkaListenerContainerFactory<>();
+    factory.setConsumerFactory(agentPipelineConsumerFactory);
+    factory.setBatchListener(true);
+    factory.setConcurrency(concurrency);
+    factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+    factory.setCommonErrorHandler(new DefaultErrorHandler(
+        new DeadLetterPublishingRecoverer(agentPipelineKafkaTemplate,
+            (consumerRecord, exception) -> new TopicPartition(deadLetterTopic, -1)),
+        new FixedBackOff(retryBackoffMs, retryMaxAttempts)));
+    return factory;
+  }
+
+  @Bean
+  public MessagingAgentPipeline messagingAgentPipeline(
+      KafkaTemplate<String, byte[]> agentPipelineKafkaTemplate,
+      MessagingAgentFactory messagingAgentFactory,
+      @Value("${kafka.pipeline.agent.id:pipeline-agent}") String agentId,
+      @Value("${kafka.pipeline.output.topic}") String outputTopic,
+      @Value("${kafka.pipeline.message.type:JSON}") MessageType defaultMessageType,
+      @Value("${kafka.pipeline.worker.threads:0}") int workerThreads) {
+    int threads = workerThreads > 0 ? workerThreads : Runtime.getRuntime().availableProcessors();
+    return new MessagingAgentPipeline(messagingAgentFactory.createAgent(agentId), outputTopic,
+        defaultMessageType, agentPipelineKafkaTemplate,
+        Executors.newFixedThreadPool(threads));
+  }
+}
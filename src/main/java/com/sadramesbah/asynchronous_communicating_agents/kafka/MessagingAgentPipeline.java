@@ -0,0 +1,137 @@
+package com.sadramesbah.asynchronous_communicating_agents.kafka;
+
+import com.sadramesbah.asynchronous_communicating_agents.agent.MessagingAgent;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.Acknowledgment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+public class MessagingAgentPipeline implements AutoCloseable {
+
+  public static final String MESSAGE_TYPE_HEADER = "message-type";
+
+  private static final Logger logger = LoggerFactory.getLogger(MessagingAgentPipeline.class);
+  private final MessagingAgent agent;
+  private final String outputTopic;
+  private final MessageType defaultMessageType;
+  private final KafkaTemplate<String, byte[]> kafkaTemplate;
+  private final ExecutorService partitionExecutor;
+
+  public MessagingAgentPipeline(MessagingAgent agent, String outputTopic,
+      MessageType defaultMessageType, KafkaTemplate<String, byte[]> kafkaTemplate,
+      ExecutorService partitionExecutor) {
+    this.agent = agent;
+    this.outputTopic = outputTopic;
+    this.defaultMessageType = defaultMessageType;
+    this.kafkaTemplate = kafkaTemplate;
+    this.partitionExecutor = partitionExecutor;
+  }
+
+  // consumes a batch of records, processes each partition in parallel and commits the offsets
+  // only after every produced record has been acknowledged by the broker
+  @KafkaListener(id = "${kafka.pipeline.listener.id:messaging-agent-pipeline}",
+      topics = "${kafka.pipeline.input.topic}",
+      containerFactory = "agentPipelineContainerFactory")
+  public void onBatch(List<ConsumerRecord<String, byte[]>> records,
+      Acknowledgment acknowledgment) {
+    Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> recordsByPartition =
+        groupByPartition(records);
+    List<CompletableFuture<PartitionResult>> partitionResults =
+        new ArrayList<>(recordsByPartition.size());
+    recordsByPartition.forEach((partition, partitionRecords) -> partitionResults.add(
+        CompletableFuture.supplyAsync(() -> processPartition(partition, partitionRecords),
+            partitionExecutor).thenCompose(result -> CompletableFuture.allOf(
+            result.sendResults().toArray(CompletableFuture[]::new)).thenApply(sent -> result))));
+
+    // a produce failure propagates to the container error handler, which retries the whole batch
+    // without committing; records produced before the failure are produced again
+    CompletableFuture.allOf(partitionResults.toArray(CompletableFuture[]::new)).join();
+    PartitionResult failed = null;
+    int failedIndex = records.size();
+    for (CompletableFuture<PartitionResult> partitionResult : partitionResults) {
+      PartitionResult result = partitionResult.join();
+      if (result.failedRecord() != null) {
+        int index = records.indexOf(result.failedRecord());
+        if (index < failedIndex) {
+          failed = result;
+          failedIndex = index;
+        }
+      }
+    }
+    // a record that failed processing fails the batch at its index: the error handler commits
+    // the records before it, whose produce has completed above, and redelivers the rest of the
+    // batch from the failed record, which it dead-letters once the retries are exhausted
+    if (failed != null) {
+      throw new BatchListenerFailedException("Failed to process record at offset "
+          + failed.failedRecord().offset() + " of " + failed.partition() + ".",
+          failed.failure(), failedIndex);
+    }
+    acknowledgment.acknowledge();
+    logger.debug("Processed batch of {} records from {} partitions.", records.size(),
+        recordsByPartition.size());
+  }
+
+  // processes records of a single partition in offset order, which keeps the per-key order; a
+  // record that fails stops the partition, leaving it and the records after it to be redelivered
+  private PartitionResult processPartition(TopicPartition partition,
+      List<ConsumerRecord<String, byte[]>> partitionRecords) {
+    List<CompletableFuture<?>> sendResults = new ArrayList<>(partitionRecords.size());
+    for (ConsumerRecord<String, byte[]> consumerRecord : partitionRecords) {
+      try {
+        MessageType messageType = resolveMessageType(consumerRecord);
+        byte[] outputMessage = agent.handleInputMessage(consumerRecord.value(), messageType);
+        sendResults.add(kafkaTemplate.send(outputTopic, consumerRecord.key(), outputMessage));
+      } catch (Exception exception) {
+        return new PartitionResult(partition, sendResults, consumerRecord, exception);
+      }
+    }
+    return new PartitionResult(partition, sendResults, null, null);
+  }
+
+  // resolves the message type from the record header, falling back to the configured default
+  private MessageType resolveMessageType(ConsumerRecord<String, byte[]> consumerRecord) {
+    Header messageTypeHeader = consumerRecord.headers().lastHeader(MESSAGE_TYPE_HEADER);
+    if (messageTypeHeader == null || messageTypeHeader.value() == null) {
+      return defaultMessageType;
+    }
+    return MessageType.valueOf(new String(messageTypeHeader.value(), StandardCharsets.UTF_8));
+  }
+
+  private static Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> groupByPartition(
+      List<ConsumerRecord<String, byte[]>> records) {
+    Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> recordsByPartition =
+        new LinkedHashMap<>();
+    for (ConsumerRecord<String, byte[]> consumerRecord : records) {
+      recordsByPartition.computeIfAbsent(
+              new TopicPartition(consumerRecord.topic(), consumerRecord.partition()),
+              partition -> new ArrayList<>())
+          .add(consumerRecord);
+    }
+    return recordsByPartition;
+  }
+
+  // the produce results of a partition and the record that stopped it, if any
+  private record PartitionResult(TopicPartition partition, List<CompletableFuture<?>> sendResults,
+                                 ConsumerRecord<String, byte[]> failedRecord, Exception failure) {
+  }
+
+  @Override
+  public void close() {
+    partitionExecutor.shutdown();
+    agent.close();
+    logger.info("Messaging agent pipeline closed.");
+  }
+}
@@ -0,0 +1,174 @@
+package com.sadramesbah.asynchronous_communicating_agents.kafka;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// in-memory index of topic names to partition counts; reads are served from an immutable
+// snapshot, which is reloaded in the background once older than the TTL or invalidated and
+// updated in place when topics are created, deleted or repartitioned through KafkaManager. only
+// the very first lookups wait for the broker, and they all share one load
+final class TopicMetadataCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(TopicMetadataCache.class);
+
+  private final Supplier<CompletableFuture<Map<String, Integer>>> loader;
+  private final LongSupplier nanoClock;
+  // the running load, shared by everyone who needs the snapshot until it completes
+  private final AtomicReference<CompletableFuture<Map<String, Integer>>> inFlight =
+      new AtomicReference<>();
+  private volatile long ttlNanos;
+  // null until the first load
+  private volatile Map<String, Integer> partitionCounts;
+  private volatile long loadedAtNanos;
+  // set by an explicit invalidation until the next snapshot is installed
+  private volatile boolean invalidated;
+  // incremented by every local update so that a load which started earlier does not undo it
+  private long generation;
+
+  TopicMetadataCache(Supplier<CompletableFuture<Map<String, Integer>>> loader, Duration ttl) {
+    this(loader, ttl, System::nanoTime);
+  }
+
+  TopicMetadataCache(Supplier<CompletableFuture<Map<String, Integer>>> loader, Duration ttl,
+      LongSupplier nanoClock) {
+    this.loader = loader;
+    this.nanoClock = nanoClock;
+    setTtl(ttl);
+  }
+
+  void setTtl(Duration ttl) {
+    this.ttlNanos = ttl.toNanos();
+  }
+
+  boolean contains(String topicName) {
+    return current().containsKey(topicName);
+  }
+
+  OptionalInt partitionCount(String topicName) {
+    Integer count = current().get(topicName);
+    return count == null ? OptionalInt.empty() : OptionalInt.of(count);
+  }
+
+  Set<String> topicNames() {
+    return current().keySet();
+  }
+
+  synchronized void recordPartitions(Map<String, Integer> topicPartitions) {
+    generation++;
+    if (partitionCounts != null) {
+      Map<String, Integer> updated = new HashMap<>(partitionCounts);
+      updated.putAll(topicPartitions);
+      partitionCounts = Map.copyOf(updated);
+    }
+  }
+
+  synchronized void recordDeleted(Collection<String> topicNames) {
+    generation++;
+    if (partitionCounts != null) {
+      Map<String, Integer> updated = new HashMap<>(partitionCounts);
+      updated.keySet().removeAll(topicNames);
+      partitionCounts = Map.copyOf(updated);
+    }
+  }
+
+  // marks the snapshot as outdated and reloads it; lookups keep being served from the outdated
+  // snapshot until the returned future completes
+  CompletableFuture<Void> invalidate() {
+    synchronized (this) {
+      generation++;
+      invalidated = true;
+    }
+    return reload();
+  }
+
+  // returns the snapshot, waiting for the shared load if there is none yet and reloading it in
+  // the background if it has expired or was invalidated; an interrupted wait restores the
+  // interrupt flag and fails like the load
+  private Map<String, Integer> current() {
+    Map<String, Integer> counts = partitionCounts;
+    if (counts == null) {
+      try {
+        return load().get();
+      } catch (InterruptedException intException) {
+        Thread.currentThread().interrupt();
+        throw new CompletionException(intException);
+      } catch (ExecutionException exeException) {
+        throw new CompletionException(exeException.getCause());
+      }
+    }
+    if (invalidated || nanoClock.getAsLong() - loadedAtNanos > ttlNanos) {
+      load();
+      // a load that completed right away is already installed
+      return partitionCounts;
+    }
+    return counts;
+  }
+
+  // completes once a snapshot loaded after the invalidation is installed; a load that was
+  // already running, or was overtaken by a local update, is followed by another one
+  private CompletableFuture<Void> reload() {
+    return load().thenCompose(loaded -> invalidated
+        ? reload() : CompletableFuture.completedFuture(null));
+  }
+
+  // returns the running load, or starts one if none is running
+  private CompletableFuture<Map<String, Integer>> load() {
+    while (true) {
+      CompletableFuture<Map<String, Integer>> running = inFlight.get();
+      if (running != null) {
+        return running;
+      }
+      CompletableFuture<Map<String, Integer>> started = new CompletableFuture<>();
+      if (!inFlight.compareAndSet(null, started)) {
+        continue;
+      }
+      long startGeneration = currentGeneration();
+      try {
+        loader.get().whenComplete((loaded, throwable) -> {
+          if (throwable != null) {
+            logger.error("Failed to load topic metadata: ", throwable);
+            inFlight.set(null);
+            started.completeExceptionally(throwable);
+          } else {
+            Map<String, Integer> snapshot = Map.copyOf(loaded);
+            apply(snapshot, startGeneration);
+            // cleared after installing, so nobody starts another load for a missing snapshot
+            inFlight.set(null);
+            started.complete(snapshot);
+          }
+        });
+      } catch (RuntimeException runtimeException) {
+        logger.error("Failed to load topic metadata: ", runtimeException);
+        inFlight.set(null);
+        started.completeExceptionally(runtimeException);
+      }
+      return started;
+    }
+  }
+
+  // installs a loaded snapshot unless a local update happened while it was loading, in which
+  // case the current snapshot stays expired and the next lookup reloads it again
+  private synchronized void apply(Map<String, Integer> loaded, long startGeneration) {
+    if (generation == startGeneration) {
+      partitionCounts = loaded;
+      loadedAtNanos = nanoClock.getAsLong();
+      invalidated = false;
+    }
+  }
+
+  private synchronized long currentGeneration() {
+    return generation;
+  }
+}
@@ -0,0 +1,9 @@
+package com.sadramesbah.asynchronous_communicating_agents.kafka;
+
+// outcome of a bulk topic operation for a single topic; error is null when it succeeded
+public record TopicOperationResult(String topicName, Throwable error) {
+
+  public boolean isSuccessful() {
+    return error == null;
+  }
+}
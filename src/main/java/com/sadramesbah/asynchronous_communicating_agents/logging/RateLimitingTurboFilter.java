@@ -0,0 +1,81 @@
+package com.sadramesbah.asynchronous_communicating_agents.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.slf4j.Marker;
+
+// logback turbo filter that lets at most eventsPerSecond events up to the given level through
+// from the loggers under loggerName, so that per-message DEBUG and INFO logging cannot flood the
+// log under load. the count restarts every second; WARN and ERROR events, which report failures,
+// are never limited, and neither are other loggers
+public class RateLimitingTurboFilter extends TurboFilter {
+
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final LongSupplier nanoTime;
+  private final AtomicLong window = new AtomicLong(Long.MIN_VALUE);
+  private final AtomicInteger events = new AtomicInteger();
+  private String loggerName = Logger.ROOT_LOGGER_NAME;
+  private Level level = Level.INFO;
+  private int eventsPerSecond = 10;
+
+  public RateLimitingTurboFilter() {
+    this(System::nanoTime);
+  }
+
+  RateLimitingTurboFilter(LongSupplier nanoTime) {
+    this.nanoTime = nanoTime;
+  }
+
+  @Override
+  public FilterReply decide(Marker marker, Logger logger, Level level, String format,
+      Object[] params, Throwable throwable) {
+    // isEnabled checks carry no format, and events below the level of the logger are dropped
+    // anyway; neither must use up the budget
+    if (format == null || level.isGreaterOrEqual(Level.WARN) || !this.level.isGreaterOrEqual(level)
+        || !level.isGreaterOrEqual(logger.getEffectiveLevel()) || !isLimited(logger.getName())) {
+      return FilterReply.NEUTRAL;
+    }
+    long current = nanoTime.getAsLong() / WINDOW_NANOS;
+    long previous = window.get();
+    // the thread that moves the window on restarts the count; a few events racing with it may
+    // still be counted against the old window
+    if (current != previous && window.compareAndSet(previous, current)) {
+      events.set(0);
+    }
+    return events.incrementAndGet() <= eventsPerSecond ? FilterReply.NEUTRAL : FilterReply.DENY;
+  }
+
+  @Override
+  public void start() {
+    if (eventsPerSecond <= 0) {
+      addError("eventsPerSecond must be positive: " + eventsPerSecond);
+      return;
+    }
+    super.start();
+  }
+
+  public void setLoggerName(String loggerName) {
+    this.loggerName = loggerName;
+  }
+
+  // the most severe level that is limited; WARN and ERROR are accepted but still not limited
+  public void setLevel(String level) {
+    this.level = Level.toLevel(level, Level.INFO);
+  }
+
+  public void setEventsPerSecond(int eventsPerSecond) {
+    this.eventsPerSecond = eventsPerSecond;
+  }
+
+  private boolean isLimited(String name) {
+    return Logger.ROOT_LOGGER_NAME.equals(loggerName) || name.equals(loggerName)
+        || name.startsWith(loggerName) && name.charAt(loggerName.length()) == '.';
+  }
+}
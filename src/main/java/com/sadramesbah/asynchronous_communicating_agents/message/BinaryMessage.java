@@ -0,0 +1,78 @@
+package com.sadramesbah.asynchronous_communicating_agents.message;
+
+import java.sql.Timestamp;
+
+public class BinaryMessage implements Message {
+
+  private int messageId;
+  private String messageTitle;
+  private String messageBody;
+  private Timestamp creationTime;
+  private Timestamp lastModified;
+  private String lastAgent;
+  private String status;
+  private final ProcessingTrail processingTrail = new ProcessingTrail();
+
+  // getters and setters
+  public int getMessageId() {
+    return messageId;
+  }
+
+  public void setMessageId(int messageId) {
+    this.messageId = messageId;
+  }
+
+  public String getMessageTitle() {
+    return messageTitle;
+  }
+
+  public void setMessageTitle(String messageTitle) {
+    this.messageTitle = messageTitle;
+  }
+
+  // the binary format has no trail field, so the trail is always appended to the body
+  public String getMessageBody() {
+    return processingTrail.appendTo(messageBody);
+  }
+
+  public void setMessageBody(String messageBody) {
+    this.messageBody = messageBody;
+    processingTrail.bodyReplaced();
+  }
+
+  public Timestamp getCreationTime() {
+    return creationTime;
+  }
+
+  public void setCreationTime(Timestamp creationTime) {
+    this.creationTime = creationTime;
+  }
+
+  public Timestamp getLastModified() {
+    return lastModified;
+  }
+
+  public void setLastModified(Timestamp lastModified) {
+    this.lastModified = lastModified;
+  }
+
+  public String getLastAgent() {
+    return lastAgent;
+  }
+
+  public void setLastAgent(String lastAgent) {
+    this.lastAgent = lastAgent;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public void setStatus(String status) {
+    this.status = status;
+  }
+
+  public ProcessingTrail getProcessingTrail() {
+    return processingTrail;
+  }
+}
@@ -1,7 +1,10 @@
 package com.sadramesbah.asynchronous_communicating_agents.message;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.sql.Timestamp;
+import java.util.List;
 
 public class JsonMessage implements Message {
 
@@ -26,6 +29,9 @@ public class JsonMessage implements Message {
   @JsonProperty("Status")
   private String status;
 
+  @JsonIgnore
+  private final ProcessingTrail processingTrail = new ProcessingTrail();
+
   // getters and setters
   public int getMessageId() {
     return messageId;
@@ -44,11 +50,12 @@ public class JsonMessage implements Message {
   }
 
   public String getMessageBody() {
-    return messageBody;
+    return processingTrail.bodyOnWire(messageBody);
   }
 
   public void setMessageBody(String messageBody) {
     this.messageBody = messageBody;
+    processingTrail.bodyReplaced();
   }
 
   public Timestamp getCreationTime() {
@@ -82,4 +89,25 @@ public class JsonMessage implements Message {
   public void setStatus(String status) {
     this.status = status;
   }
+
+  @JsonIgnore
+  public ProcessingTrail getProcessingTrail() {
+    return processingTrail;
+  }
+
+  @Override
+  public boolean hasProcessingTrailField() {
+    return true;
+  }
+
+  // written only for a separate trail
+  @JsonProperty("ProcessingTrail")
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public List<ProcessingTrail.Entry> getProcessingTrailEntries() {
+    return processingTrail.entriesOnWire();
+  }
+
+  public void setProcessingTrailEntries(List<ProcessingTrail.Entry> entries) {
+    processingTrail.readFromWire(entries);
+  }
 }
@@ -22,8 +22,12 @@ public interface Message {
 
   String getMessageTitle();
 
+  // the body followed by the processing trail, unless the trail is written separately
   String getMessageBody();
 
+  // the updates applied since the message was bound, which are appended to the body when it is read
+  ProcessingTrail getProcessingTrail();
+
   Timestamp getCreationTime();
 
   Timestamp getLastModified();
@@ -31,4 +35,41 @@ public interface Message {
   String getLastAgent();
 
   String getStatus();
+
+  // whether the format can write a separate processing trail in a field of its own
+  default boolean hasProcessingTrailField() {
+    return false;
+  }
+
+  // the body followed by the processing trail, also when the trail is written separately
+  default String bodyWithProcessingTrail() {
+    ProcessingTrail processingTrail = getProcessingTrail();
+    return processingTrail.isSeparate() && hasProcessingTrailField()
+        ? processingTrail.appendTo(getMessageBody())
+        : getMessageBody();
+  }
+
+  // copies every field to the target, which may be of another format, and returns the target
+  default <T extends Message> T copyTo(T target) {
+    return copyTo(target, true);
+  }
+
+  // copies every field to the target; a separate processing trail stays separate only if both
+  // formats have a trail field and keepSeparateTrail is set, and is appended to the body otherwise
+  default <T extends Message> T copyTo(T target, boolean keepSeparateTrail) {
+    target.setMessageId(getMessageId());
+    target.setMessageTitle(getMessageTitle());
+    if (keepSeparateTrail && getProcessingTrail().isSeparate() && hasProcessingTrailField()
+        && target.hasProcessingTrailField()) {
+      target.setMessageBody(getMessageBody());
+      target.getProcessingTrail().copyFrom(getProcessingTrail());
+    } else {
+      target.setMessageBody(bodyWithProcessingTrail());
+    }
+    target.setCreationTime(getCreationTime());
+    target.setLastModified(getLastModified());
+    target.setLastAgent(getLastAgent());
+    target.setStatus(getStatus());
+    return target;
+  }
 }
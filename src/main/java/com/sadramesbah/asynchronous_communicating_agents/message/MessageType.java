@@ -3,5 +3,7 @@ package com.sadramesbah.asynchronous_communicating_agents.message;
 public enum MessageType {
   JSON,
   SOAP,
-  XML
+  XML,
+  // compact binary encoding for hops between our own agents, carried as Base64 in text APIs
+  BINARY
 }
@@ -0,0 +1,77 @@
+package com.sadramesbah.asynchronous_communicating_agents.message;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+// the changes a messaging agent applies to every message it processes; with separateTrail the
+// body suffix goes to a ProcessingTrail element or field instead of MessageBody, and a combined
+// update keeps the updates it was built from so that each of them becomes a trail entry
+public record MessageUpdate(String agentId, String bodySuffix, Timestamp lastModified,
+                            boolean separateTrail, List<MessageUpdate> combined) {
+
+  public MessageUpdate(String agentId, String bodySuffix, Timestamp lastModified) {
+    this(agentId, bodySuffix, lastModified, false);
+  }
+
+  public MessageUpdate(String agentId, String bodySuffix, Timestamp lastModified,
+      boolean separateTrail) {
+    this(agentId, bodySuffix, lastModified, separateTrail, List.of());
+  }
+
+  // applies the update to a bound message object and returns the same object; the body suffix
+  // goes to the processing trail, so the body is not copied for every update
+  public Message applyTo(Message message) {
+    ProcessingTrail processingTrail = message.getProcessingTrail();
+    if (separateTrail) {
+      processingTrail.setSeparate(true);
+    }
+    for (MessageUpdate update : trailUpdates()) {
+      processingTrail.append(update);
+    }
+    message.setLastModified(lastModified);
+    message.setLastAgent(agentId);
+    return message;
+  }
+
+  // the updates that each add one entry to a processing trail, in order
+  public List<MessageUpdate> trailUpdates() {
+    return combined.isEmpty() ? List.of(this) : combined;
+  }
+
+  // how much longer MessageBody gets before the last of the combined updates is applied; each
+  // agent checks the body it receives, so the body length rule has to allow for this much more
+  public int precedingSuffixLength() {
+    return combined.isEmpty()
+        ? 0
+        : bodySuffix.length() - combined.get(combined.size() - 1).bodySuffix().length();
+  }
+
+  // the same update for a format that carries the trail in MessageBody
+  public MessageUpdate withSeparateTrail(boolean separateTrail) {
+    return separateTrail == this.separateTrail
+        ? this
+        : new MessageUpdate(agentId, bodySuffix, lastModified, separateTrail, combined);
+  }
+
+  // the update equivalent to applying the updates in order to a message that is rewritten rather
+  // than bound: the body gets every suffix in turn, or the trail an entry per update, while the
+  // last update sets the agent and time. the trail is separate if any update asks for it
+  public static MessageUpdate combine(List<MessageUpdate> updates) {
+    MessageUpdate last = updates.get(updates.size() - 1);
+    if (updates.size() == 1) {
+      return last;
+    }
+    int length = 0;
+    boolean separateTrail = false;
+    for (MessageUpdate update : updates) {
+      length += update.bodySuffix().length();
+      separateTrail |= update.separateTrail();
+    }
+    StringBuilder bodySuffix = new StringBuilder(length);
+    for (MessageUpdate update : updates) {
+      bodySuffix.append(update.bodySuffix());
+    }
+    return new MessageUpdate(last.agentId(), bodySuffix.toString(), last.lastModified(),
+        separateTrail, List.copyOf(updates));
+  }
+}
@@ -0,0 +1,155 @@
+package com.sadramesbah.asynchronous_communicating_agents.message;
+
+import com.sadramesbah.asynchronous_communicating_agents.adapter.TimestampAdapter;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.xml.bind.annotation.XmlAttribute;
+import jakarta.xml.bind.annotation.XmlValue;
+import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// the updates agents applied to a bound message, kept apart from its body so that appending one
+// does not copy the body; MessageBody is built from the body and the trail only when it is read,
+// which normally happens once, at serialization. a separate trail is written as its own
+// ProcessingTrail element or field instead, leaving MessageBody as it was received
+public final class ProcessingTrail {
+
+  private List<Entry> entries = new ArrayList<>();
+  private boolean separate;
+  // the last built MessageBody, valid while the body and the number of entries are unchanged
+  private String builtFrom;
+  private int builtEntries;
+  private String built;
+
+  // appends the update in constant time
+  public void append(MessageUpdate update) {
+    entries.add(new Entry(update.agentId(), update.lastModified(), update.bodySuffix()));
+  }
+
+  public List<Entry> getEntries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  public boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  public boolean isSeparate() {
+    return separate;
+  }
+
+  // writes the trail as its own element or field instead of appending it to MessageBody; the
+  // binary format has no such field and always appends it
+  public void setSeparate(boolean separate) {
+    this.separate = separate;
+  }
+
+  // returns the body followed by the text of every entry
+  public String appendTo(String body) {
+    if (entries.isEmpty()) {
+      return body;
+    }
+    if (built != null && builtFrom == body && builtEntries == entries.size()) {
+      return built;
+    }
+    String start = String.valueOf(body);
+    int length = start.length();
+    for (Entry entry : entries) {
+      length += textOf(entry).length();
+    }
+    StringBuilder builder = new StringBuilder(length).append(start);
+    for (Entry entry : entries) {
+      builder.append(textOf(entry));
+    }
+    builtFrom = body;
+    builtEntries = entries.size();
+    built = builder.toString();
+    return built;
+  }
+
+  // the value of MessageBody on the wire
+  String bodyOnWire(String body) {
+    return separate ? body : appendTo(body);
+  }
+
+  // the entries of the ProcessingTrail element or field, or null when there is none
+  List<Entry> entriesOnWire() {
+    return separate && !entries.isEmpty() ? entries : null;
+  }
+
+  // takes over the entries read from a ProcessingTrail element or field; JAXB adds the entries
+  // to the list after handing it over, so the list itself is kept
+  void readFromWire(List<Entry> wireEntries) {
+    entries = wireEntries instanceof ArrayList<Entry> ? wireEntries : new ArrayList<>(wireEntries);
+    separate = true;
+    built = null;
+  }
+
+  void copyFrom(ProcessingTrail source) {
+    entries = new ArrayList<>(source.entries);
+    separate = source.separate;
+    built = null;
+  }
+
+  // setting MessageBody replaces what it returned, which includes the trail unless it is separate
+  void bodyReplaced() {
+    if (!separate) {
+      entries = new ArrayList<>();
+      built = null;
+    }
+  }
+
+  private static String textOf(Entry entry) {
+    return entry.getText() == null ? "" : entry.getText();
+  }
+
+  // one update in the trail: the agent, when it processed the message and the text it appended
+  public static final class Entry {
+
+    private String agentId;
+    private Timestamp processedAt;
+    private String text;
+
+    public Entry() {
+    }
+
+    public Entry(String agentId, Timestamp processedAt, String text) {
+      this.agentId = agentId;
+      this.processedAt = processedAt;
+      this.text = text;
+    }
+
+    @XmlAttribute(name = "Agent")
+    @JsonProperty("Agent")
+    public String getAgentId() {
+      return agentId;
+    }
+
+    public void setAgentId(String agentId) {
+      this.agentId = agentId;
+    }
+
+    @XmlAttribute(name = "ProcessedAt")
+    @XmlJavaTypeAdapter(TimestampAdapter.class)
+    @JsonProperty("ProcessedAt")
+    public Timestamp getProcessedAt() {
+      return processedAt;
+    }
+
+    public void setProcessedAt(Timestamp processedAt) {
+      this.processedAt = processedAt;
+    }
+
+    @XmlValue
+    @JsonProperty("Text")
+    public String getText() {
+      return text;
+    }
+
+    public void setText(String text) {
+      this.text = text;
+    }
+  }
+}
@@ -2,11 +2,18 @@ package com.sadramesbah.asynchronous_communicating_agents.message;
 
 import com.sadramesbah.asynchronous_communicating_agents.adapter.TimestampAdapter;
 import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlElementWrapper;
 import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlTransient;
+import jakarta.xml.bind.annotation.XmlType;
 import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import java.sql.Timestamp;
+import java.util.List;
 
+// the elements are written in the order XmlMessageSchema.xsd declares them
 @XmlRootElement(name = "Message")
+@XmlType(propOrder = {"messageId", "messageTitle", "messageBody", "creationTime", "lastModified",
+    "lastAgent", "status", "processingTrailEntries"})
 public class XmlMessage implements Message {
 
   private int messageId;
@@ -16,6 +23,7 @@ public class XmlMessage implements Message {
   private Timestamp lastModified;
   private String lastAgent;
   private String status;
+  private final ProcessingTrail processingTrail = new ProcessingTrail();
 
   @XmlElement(name = "MessageID")
   public int getMessageId() {
@@ -37,11 +45,12 @@ public class XmlMessage implements Message {
 
   @XmlElement(name = "MessageBody")
   public String getMessageBody() {
-    return messageBody;
+    return processingTrail.bodyOnWire(messageBody);
   }
 
   public void setMessageBody(String messageBody) {
     this.messageBody = messageBody;
+    processingTrail.bodyReplaced();
   }
 
   @XmlElement(name = "CreationTime")
@@ -81,4 +90,25 @@ public class XmlMessage implements Message {
   public void setStatus(String status) {
     this.status = status;
   }
+
+  @XmlTransient
+  public ProcessingTrail getProcessingTrail() {
+    return processingTrail;
+  }
+
+  @Override
+  public boolean hasProcessingTrailField() {
+    return true;
+  }
+
+  // written only for a separate trail
+  @XmlElementWrapper(name = "ProcessingTrail")
+  @XmlElement(name = "Entry")
+  public List<ProcessingTrail.Entry> getProcessingTrailEntries() {
+    return processingTrail.entriesOnWire();
+  }
+
+  public void setProcessingTrailEntries(List<ProcessingTrail.Entry> entries) {
+    processingTrail.readFromWire(entries);
+  }
 }
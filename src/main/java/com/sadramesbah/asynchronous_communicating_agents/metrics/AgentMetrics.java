@@ -0,0 +1,185 @@
+package com.sadramesbah.asynchronous_communicating_agents.metrics;
+
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
+
+// meters of one agent tagged by agent id and message type; meters are looked up once and cached,
+// so recording on the hot path costs a clock read and an array access
+public final class AgentMetrics {
+
+  private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+  private static final MessageMetrics.Stage[] STAGES = MessageMetrics.Stage.values();
+  private static final MessageMetrics.FailureReason[] FAILURE_REASONS =
+      MessageMetrics.FailureReason.values();
+
+  private final MessageMetrics messageMetrics;
+  private final MeterRegistry meterRegistry;
+  private final String agentId;
+  private final Timer[][] stageTimers = new Timer[STAGES.length][MESSAGE_TYPES.length];
+  private final DistributionSummary[] inputSizes = new DistributionSummary[MESSAGE_TYPES.length];
+  private final DistributionSummary[] outputSizes = new DistributionSummary[MESSAGE_TYPES.length];
+  private final DistributionSummary[] inputBytes = new DistributionSummary[MESSAGE_TYPES.length];
+  private final DistributionSummary[] outputBytes = new DistributionSummary[MESSAGE_TYPES.length];
+  private final Counter[][] failureCounters =
+      new Counter[FAILURE_REASONS.length][MESSAGE_TYPES.length];
+  // validation failures keyed by message type and field, both from a fixed set
+  private final ConcurrentMap<String, Counter> validationFailureCounters =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Counter> overflowCounters = new ConcurrentHashMap<>();
+  private volatile Timer mailboxWaitTimer;
+
+  AgentMetrics(MessageMetrics messageMetrics, String agentId) {
+    this.messageMetrics = messageMetrics;
+    this.meterRegistry = messageMetrics.getMeterRegistry();
+    this.agentId = agentId;
+  }
+
+  public long startTime() {
+    return meterRegistry.config().clock().monotonicTime();
+  }
+
+  // records the time since startTime and returns the end time, which starts the next stage
+  public long recordStage(MessageMetrics.Stage stage, MessageType messageType, long startTime) {
+    long endTime = startTime();
+    stageTimer(stage, messageType).record(endTime - startTime, TimeUnit.NANOSECONDS);
+    return endTime;
+  }
+
+  // records the input and output sizes of a processed message in characters
+  public void recordSizes(MessageType messageType, int inputSize, int outputSize) {
+    sizeSummary(inputSizes, MessageMetrics.SIZE_SUMMARY, "characters", messageType, "in")
+        .record(inputSize);
+    sizeSummary(outputSizes, MessageMetrics.SIZE_SUMMARY, "characters", messageType, "out")
+        .record(outputSize);
+  }
+
+  // records the input and output sizes of a message processed in encoded form in bytes
+  public void recordByteSizes(MessageType messageType, int inputSize, int outputSize) {
+    sizeSummary(inputBytes, MessageMetrics.BYTES_SUMMARY, "bytes", messageType, "in")
+        .record(inputSize);
+    sizeSummary(outputBytes, MessageMetrics.BYTES_SUMMARY, "bytes", messageType, "out")
+        .record(outputSize);
+  }
+
+  // counts a message that failed for a reason other than validation; the field tag is none
+  public void recordFailure(MessageType messageType, MessageMetrics.FailureReason reason) {
+    Counter counter = failureCounters[reason.ordinal()][messageType.ordinal()];
+    if (counter == null) {
+      counter = failureCounter(messageType, reason, MessageMetrics.NO_FIELD);
+      failureCounters[reason.ordinal()][messageType.ordinal()] = counter;
+    }
+    counter.increment();
+  }
+
+  // counts a message that failed validation, tagged with the field that failed
+  public void recordValidationFailure(MessageType messageType, String field) {
+    validationFailureCounters.computeIfAbsent(tagValue(messageType) + '/' + field,
+        key -> failureCounter(messageType, MessageMetrics.FailureReason.VALIDATION, field))
+        .increment();
+  }
+
+  // removes the meters of the agent once no other agent with its ID uses them
+  public void release() {
+    messageMetrics.release(agentId);
+  }
+
+  // reports the number of messages waiting in the mailbox of the agent until it is removed; a
+  // mailbox created later for the same agent ID takes over the gauge
+  public void gaugeMailboxDepth(IntSupplier depth) {
+    AtomicReference<IntSupplier> mailboxDepth = messageMetrics.mailboxDepth(agentId);
+    mailboxDepth.set(depth);
+    Gauge.builder(MessageMetrics.MAILBOX_DEPTH_GAUGE, mailboxDepth, AgentMetrics::currentDepth)
+        .description("Messages waiting in the mailbox of an agent")
+        .tag("agent", agentId)
+        .register(meterRegistry);
+  }
+
+  // stops reporting the depth unless another mailbox took over the gauge in the meantime
+  public void removeMailboxDepth(IntSupplier depth) {
+    messageMetrics.mailboxDepth(agentId).compareAndSet(depth, null);
+  }
+
+  // records how long a message waited in the mailbox since its enqueueTime, taken by startTime
+  public void recordMailboxWait(long enqueueTime) {
+    Timer timer = mailboxWaitTimer;
+    if (timer == null) {
+      timer = Timer.builder(MessageMetrics.MAILBOX_WAIT_TIMER)
+          .description("Time a message waits in the mailbox of an agent")
+          .tag("agent", agentId)
+          .register(meterRegistry);
+      mailboxWaitTimer = timer;
+    }
+    timer.record(startTime() - enqueueTime, TimeUnit.NANOSECONDS);
+  }
+
+  // counts a message the full mailbox dropped, rejected or spilled, tagged with the outcome
+  public void recordMailboxOverflow(String outcome) {
+    overflowCounters.computeIfAbsent(outcome,
+        key -> Counter.builder(MessageMetrics.MAILBOX_OVERFLOW_COUNTER)
+            .description("Messages affected by the overflow of the mailbox of an agent")
+            .tag("agent", agentId)
+            .tag("outcome", outcome)
+            .register(meterRegistry)).increment();
+  }
+
+  private Counter failureCounter(MessageType messageType, MessageMetrics.FailureReason reason,
+      String field) {
+    return Counter.builder(MessageMetrics.FAILURE_COUNTER)
+        .description("Messages an agent failed to process")
+        .tag("agent", agentId)
+        .tag("type", tagValue(messageType))
+        .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+        .tag("field", field)
+        .register(meterRegistry);
+  }
+
+  // registering twice returns the same meter, so a race here only costs a second lookup
+  private Timer stageTimer(MessageMetrics.Stage stage, MessageType messageType) {
+    Timer timer = stageTimers[stage.ordinal()][messageType.ordinal()];
+    if (timer == null) {
+      timer = Timer.builder(MessageMetrics.STAGE_TIMER)
+          .description("Time an agent spends in a processing stage")
+          .tag("agent", agentId)
+          .tag("type", tagValue(messageType))
+          .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+          .register(meterRegistry);
+      stageTimers[stage.ordinal()][messageType.ordinal()] = timer;
+    }
+    return timer;
+  }
+
+  private DistributionSummary sizeSummary(DistributionSummary[] summaries, String name,
+      String baseUnit, MessageType messageType, String direction) {
+    DistributionSummary summary = summaries[messageType.ordinal()];
+    if (summary == null) {
+      summary = DistributionSummary.builder(name)
+          .description("Size of the messages an agent processes")
+          .baseUnit(baseUnit)
+          .tag("agent", agentId)
+          .tag("type", tagValue(messageType))
+          .tag("direction", direction)
+          .register(meterRegistry);
+      summaries[messageType.ordinal()] = summary;
+    }
+    return summary;
+  }
+
+  private static double currentDepth(AtomicReference<IntSupplier> mailboxDepth) {
+    IntSupplier depth = mailboxDepth.get();
+    return depth == null ? 0 : depth.getAsInt();
+  }
+
+  private static String tagValue(MessageType messageType) {
+    return messageType.name().toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,111 @@
+package com.sadramesbah.asynchronous_communicating_agents.metrics;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
+
+// entry point to the Micrometer meters of message processing; agents obtain their own
+// AgentMetrics, which caches the meters tagged with the agent id. the meters of an agent ID are
+// removed once every agent with that ID has released its AgentMetrics, so short-lived agents do
+// not grow the number of meters without bound
+public class MessageMetrics {
+
+  public static final String STAGE_TIMER = "agent.message.stage";
+  public static final String SIZE_SUMMARY = "agent.message.size";
+  public static final String BYTES_SUMMARY = "agent.message.bytes";
+  public static final String FAILURE_COUNTER = "agent.message.failures";
+  public static final String MAILBOX_DEPTH_GAUGE = "agent.mailbox.depth";
+  public static final String MAILBOX_WAIT_TIMER = "agent.mailbox.wait";
+  public static final String MAILBOX_OVERFLOW_COUNTER = "agent.mailbox.overflows";
+  // the field tag of failures other than validation failures
+  public static final String NO_FIELD = "none";
+  private static final String AGENT_TAG = "agent";
+  private static final String METER_PREFIX = "agent.";
+
+  // a composite registry without children hands out no-op meters
+  private static final MessageMetrics NOOP = new MessageMetrics(new CompositeMeterRegistry(), true);
+
+  private final MeterRegistry meterRegistry;
+  // the mailbox each agent ID currently reports its depth from; Micrometer keeps one depth gauge
+  // per agent ID, so the gauge reads this holder rather than a mailbox that may be replaced
+  private final ConcurrentMap<String, AtomicReference<IntSupplier>> mailboxDepths =
+      new ConcurrentHashMap<>();
+  // the number of agents per agent ID whose AgentMetrics have not been released
+  private final ConcurrentMap<String, Integer> agentReferences = new ConcurrentHashMap<>();
+  private final boolean noop;
+
+  public MessageMetrics(MeterRegistry meterRegistry) {
+    this(meterRegistry, false);
+  }
+
+  private MessageMetrics(MeterRegistry meterRegistry, boolean noop) {
+    this.meterRegistry = meterRegistry;
+    this.noop = noop;
+  }
+
+  public static MessageMetrics noop() {
+    return NOOP;
+  }
+
+  // every call has to be matched by a release of the AgentMetrics once the agent is discarded
+  public AgentMetrics forAgent(String agentId) {
+    if (!noop) {
+      agentReferences.merge(agentId, 1, Integer::sum);
+    }
+    return new AgentMetrics(this, agentId);
+  }
+
+  // removes the meters and the mailbox depth of the agent ID when its last agent is released
+  void release(String agentId) {
+    if (noop) {
+      return;
+    }
+    agentReferences.computeIfPresent(agentId, (key, references) -> {
+      if (references > 1) {
+        return references - 1;
+      }
+      mailboxDepths.remove(agentId);
+      for (Meter meter : meterRegistry.getMeters()) {
+        if (meter.getId().getName().startsWith(METER_PREFIX)
+            && agentId.equals(meter.getId().getTag(AGENT_TAG))) {
+          meterRegistry.remove(meter);
+        }
+      }
+      return null;
+    });
+  }
+
+  public MeterRegistry getMeterRegistry() {
+    return meterRegistry;
+  }
+
+  AtomicReference<IntSupplier> mailboxDepth(String agentId) {
+    return mailboxDepths.computeIfAbsent(agentId, key -> new AtomicReference<>());
+  }
+
+  // processing stages timed separately; streaming paths report a single transform stage
+  public enum Stage {
+    PARSE,
+    UPDATE,
+    SERIALIZE,
+    TRANSFORM
+  }
+
+  // reasons a message fails for; the failure counter is tagged with these and, for validation
+  // failures, with the field that failed, so that its number of series stays fixed whatever the
+  // handlers throw
+  public enum FailureReason {
+    // the message is not well-formed
+    PARSE,
+    // the message is well-formed but breaks the message rules or the schema
+    VALIDATION,
+    // reading or writing the message failed
+    IO,
+    // an unexpected runtime failure
+    INTERNAL
+  }
+}
@@ -0,0 +1,196 @@
+package com.sadramesbah.asynchronous_communicating_agents.agent;
+
+import com.sadramesbah.asynchronous_communicating_agents.exception.MessageValidationException;
+import com.sadramesbah.asynchronous_communicating_agents.handler.BinaryMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.handler.JsonMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageHandlerRegistry;
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageValidator;
+import com.sadramesbah.asynchronous_communicating_agents.handler.SoapMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.handler.XmlMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import org.junit.jupiter.api.Test;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.soap.SOAPException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentChainTest {
+
+  private static final String JSON_MESSAGE =
+      "{\"MessageID\":10860,\"MessageTitle\":\"Test Title\",\"MessageBody\":\"Test Body\","
+          + "\"CreationTime\":\"2024-12-20T16:15:00Z\",\"LastModified\":\"2024-12-20T16:35:00Z\""
+          + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\",\"Priority\":3}";
+  private static final String XML_MESSAGE =
+      "<Message><MessageID>10860</MessageID><MessageTitle>Test Title</MessageTitle>"
+          + "<MessageBody>Test Body</MessageBody><CreationTime>2024-12-20T16:15:00Z</CreationTime>"
+          + "<LastModified>2024-12-20T16:35:00Z</LastModified><LastAgent>Agent-108</LastAgent>"
+          + "<Status>Active</Status></Message>";
+  private static final String SOAP_MESSAGE = "<soapenv:Envelope "
+      + "xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Header/>"
+      + "<soapenv:Body>" + XML_MESSAGE + "</soapenv:Body></soapenv:Envelope>";
+  private static final String HEADERLESS_SOAP_MESSAGE = "<soapenv:Envelope "
+      + "xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+      + "<soapenv:Body>" + XML_MESSAGE + "</soapenv:Body></soapenv:Envelope>";
+
+  @Test
+  void testChainMatchesPerHopPath() throws Exception {
+    MessageHandlerRegistry registry = MessageHandlerRegistry.defaultRegistry();
+    for (AgentOptions options : List.of(AgentOptions.defaults(),
+        AgentOptions.defaults().withStreamingXml(true).withStreamingSoap(true))) {
+      AgentOptions separateOptions = options.withSeparateProcessingTrail(true);
+      // every agent appending to the body, every agent keeping a separate trail, and chains
+      // whose agents switch from one to the other part way
+      for (List<AgentOptions> agentOptions : List.of(List.of(options, options, options),
+          List.of(separateOptions, separateOptions, separateOptions),
+          List.of(options, separateOptions, separateOptions),
+          List.of(options, options, separateOptions),
+          List.of(separateOptions, options, options))) {
+        assertChainMatchesPerHopPath(agents(registry, agentOptions), registry);
+      }
+    }
+  }
+
+  @Test
+  void testChainChecksBodyLengthAtEveryHop() throws Exception {
+    // the third agent receives "Test Body" and two suffixes of 52 characters each, which the
+    // streaming paths check, while the bound paths also check the body they write
+    for (int maxBodyLength : List.of(112, 113, 165)) {
+      MessageHandlerRegistry registry = registry(MessageValidator.defaults()
+          .withMaxBodyLength(maxBodyLength));
+      for (AgentOptions options : List.of(AgentOptions.defaults(),
+          AgentOptions.defaults().withStreamingXml(true).withStreamingSoap(true))) {
+        AgentOptions separateOptions = options.withSeparateProcessingTrail(true);
+        assertChainMatchesPerHopPath(agents(registry, List.of(options, options, options)),
+            registry);
+        assertChainMatchesPerHopPath(agents(registry, List.of(options, separateOptions,
+            separateOptions)), registry);
+      }
+    }
+
+    MessageHandlerRegistry registry = registry(MessageValidator.defaults()
+        .withMaxBodyLength(112));
+    AgentChain chain = new AgentChain(agents(registry,
+        List.of(AgentOptions.defaults(), AgentOptions.defaults(), AgentOptions.defaults())));
+    assertEquals("InvalidJsonMessageException: MessageBody",
+        outcome(() -> chain.handleInputMessage(JSON_MESSAGE, MessageType.JSON)));
+    // a separate trail leaves the body as it was received
+    AgentOptions separateOptions = AgentOptions.defaults().withSeparateProcessingTrail(true);
+    assertTrue(new AgentChain(agents(registry,
+        List.of(separateOptions, separateOptions, separateOptions)))
+        .handleInputMessage(JSON_MESSAGE, MessageType.JSON).contains("\"Agent-3\""));
+  }
+
+  @Test
+  void testSoapChainAppliesEveryUpdate() throws Exception {
+    for (AgentOptions options : List.of(AgentOptions.defaults(),
+        AgentOptions.defaults().withStreamingSoap(true))) {
+      String result = new AgentChain(agents(options))
+          .handleInputMessage(SOAP_MESSAGE, MessageType.SOAP);
+      assertTrue(result.contains("Test Body Processed by Agent: Agent-1 at 2024-12-21 09:00:01."
+          + " Processed by Agent: Agent-2 at 2024-12-21 09:00:02."
+          + " Processed by Agent: Agent-3 at 2024-12-21 09:00:03.</MessageBody>"));
+      assertTrue(result.contains("<LastAgent>Agent-3</LastAgent>"));
+      assertTrue(result.contains("<LastModified>2024-12-21T09:00:03Z</LastModified>"));
+      // one SecurityToken header per agent, as when each agent handles the envelope in turn
+      assertEquals(3, result.split("<SecurityToken", -1).length - 1);
+    }
+  }
+
+  @Test
+  void testChainTranscodesOnce() throws Exception {
+    List<MessagingAgent> agents = agents(AgentOptions.defaults());
+    String xmlMessage = new AgentChain(agents)
+        .transcode(JSON_MESSAGE, MessageType.JSON, MessageType.XML);
+    assertTrue(xmlMessage.contains("Test Body Processed by Agent: Agent-1 at 2024-12-21 09:00:01."
+        + " Processed by Agent: Agent-2 at 2024-12-21 09:00:02."
+        + " Processed by Agent: Agent-3 at 2024-12-21 09:00:03.</MessageBody>"));
+    assertTrue(xmlMessage.contains("<LastAgent>Agent-3</LastAgent>"));
+    assertThrows(IllegalArgumentException.class, () -> new AgentChain(List.of()));
+  }
+
+  // compares the chain to handing the output of each agent to the next one, for every format
+  // or the given ones, and transcoding to the last agent transcoding that output; a chain has
+  // to fail where one of the hops would
+  private static void assertChainMatchesPerHopPath(List<MessagingAgent> agents,
+      MessageHandlerRegistry registry, MessageType... messageTypes) throws Exception {
+    AgentChain chain = new AgentChain(agents);
+    Set<MessageType> checkedTypes = messageTypes.length == 0
+        ? EnumSet.allOf(MessageType.class)
+        : EnumSet.of(messageTypes[0], messageTypes);
+    for (Map.Entry<MessageType, String> message : messages(registry)) {
+      if (checkedTypes.contains(message.getKey())) {
+        assertEquals(outcome(() -> perHop(agents, message.getValue(), message.getKey())),
+            outcome(() -> chain.handleInputMessage(message.getValue(), message.getKey())),
+            message.getKey() + " with " + agents.get(0).getOptions());
+      }
+    }
+    assertEquals(outcome(() -> agents.get(2).transcode(
+            perHop(agents.subList(0, 2), JSON_MESSAGE, MessageType.JSON),
+            MessageType.JSON, MessageType.XML)),
+        outcome(() -> chain.transcode(JSON_MESSAGE, MessageType.JSON, MessageType.XML)));
+  }
+
+  // the output, or the type of the exception and the field for a message that failed a check;
+  // any other failure fails the test
+  private static String outcome(Callable<String> handling) throws Exception {
+    try {
+      return handling.call();
+    } catch (Exception exception) {
+      MessageValidationException validationException =
+          MessageValidationException.findIn(exception);
+      if (validationException == null) {
+        throw exception;
+      }
+      return exception.getClass().getSimpleName() + ": " + validationException.getField();
+    }
+  }
+
+  // the test message in every format; SOAP both with and without a header
+  private static List<Map.Entry<MessageType, String>> messages(
+      MessageHandlerRegistry registry) throws Exception {
+    return List.of(Map.entry(MessageType.JSON, JSON_MESSAGE),
+        Map.entry(MessageType.XML, XML_MESSAGE),
+        Map.entry(MessageType.SOAP, SOAP_MESSAGE),
+        Map.entry(MessageType.SOAP, HEADERLESS_SOAP_MESSAGE),
+        Map.entry(MessageType.BINARY, registry.getBinaryHandler().toBinaryString(
+            registry.getJsonHandler().parse(JSON_MESSAGE))));
+  }
+
+  private static MessageHandlerRegistry registry(MessageValidator validator)
+      throws JAXBException, SOAPException {
+    return new MessageHandlerRegistry(new JsonMessageHandler(validator),
+        new XmlMessageHandler(validator), new SoapMessageHandler(validator),
+        new BinaryMessageHandler(validator));
+  }
+
+  // three agents whose clocks read one, two and three seconds past 09:00
+  private static List<MessagingAgent> agents(AgentOptions options)
+      throws JAXBException, SOAPException {
+    return agents(MessageHandlerRegistry.defaultRegistry(), List.of(options, options, options));
+  }
+
+  private static List<MessagingAgent> agents(MessageHandlerRegistry registry,
+      List<AgentOptions> options) {
+    return List.of(1, 2, 3).stream()
+        .map(index -> new MessagingAgent("Agent-" + index, registry, options.get(index - 1)
+            .withClock(Clock.fixed(Instant.parse("2024-12-21T09:00:0" + index + "Z"),
+                ZoneOffset.UTC))))
+        .toList();
+  }
+
+  private static String perHop(List<MessagingAgent> agents, String message, MessageType type)
+      throws Exception {
+    for (MessagingAgent agent : agents) {
+      message = agent.handleInputMessage(message, type);
+    }
+    return message;
+  }
+}
@@ -0,0 +1,140 @@
+package com.sadramesbah.asynchronous_communicating_agents.agent;
+
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidBinaryMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidJsonMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageHandlerRegistry;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import org.junit.jupiter.api.Test;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.soap.SOAPException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentDispatcherTest {
+
+  private static final String JSON_MESSAGE =
+      "{\"MessageID\":10854,\"MessageTitle\":\"Test Title\",\"MessageBody\":\"Test Body\","
+          + "\"CreationTime\":\"2024-12-20T11:25:00Z\",\"LastModified\":\"2024-12-20T11:50:00Z\""
+          + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\"}";
+
+  @Test
+  void testDispatchRunsAgentOnVirtualThread() throws Exception {
+    try (AgentDispatcher dispatcher = new AgentDispatcher(0, Map.of())) {
+      MessagingAgent agent = new MessagingAgent("Agent-410",
+          MessageHandlerRegistry.defaultRegistry()) {
+        @Override
+        public String handleInputMessage(String inputMessage, MessageType inputMessageType)
+            throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+            InvalidBinaryMessageException {
+          assertTrue(Thread.currentThread().isVirtual());
+          return super.handleInputMessage(inputMessage, inputMessageType);
+        }
+      };
+
+      String result = dispatcher.dispatch(agent, JSON_MESSAGE, MessageType.JSON).join();
+
+      assertTrue(result.contains("\"LastAgent\":\"Agent-410\""));
+    }
+  }
+
+  @Test
+  void testDispatchReportsFailureToCallback() throws Exception {
+    try (AgentDispatcher dispatcher = new AgentDispatcher(0, Map.of())) {
+      MessagingAgent agent = new MessagingAgent("Agent-411",
+          MessageHandlerRegistry.defaultRegistry());
+      CompletableFuture<Throwable> failure = new CompletableFuture<>();
+
+      dispatcher.dispatch(agent, "{\"MessageID\":-1}", MessageType.JSON,
+          (result, throwable) -> failure.complete(throwable));
+
+      assertNotNull(failure.get());
+      assertThrows(CompletionException.class,
+          () -> dispatcher.dispatch(agent, "not json", MessageType.JSON).join());
+    }
+  }
+
+  @Test
+  void testConcurrencyLimitsAreHonoured() throws Exception {
+    GatedAgent agent = new GatedAgent("Agent-412");
+
+    try (AgentDispatcher dispatcher = new AgentDispatcher(3, Map.of(MessageType.XML, 2))) {
+      // the limits cap the messages running at once however long the gate stays closed
+      assertEquals(2, agent.runAll(dispatcher, MessageType.XML, 2));
+      assertEquals(3, agent.runAll(dispatcher, MessageType.JSON, 3));
+      assertEquals(0, dispatcher.activeAgents());
+    }
+  }
+
+  @Test
+  void testBusyAgentDoesNotBlockOtherAgentsOfSameType() throws Exception {
+    GatedAgent busyAgent = new GatedAgent("Agent-413");
+    MessagingAgent idleAgent = new MessagingAgent("Agent-414",
+        MessageHandlerRegistry.defaultRegistry());
+
+    try (AgentDispatcher dispatcher = new AgentDispatcher(1, Map.of(MessageType.JSON, 2))) {
+      List<CompletableFuture<String>> busyResults = IntStream.range(0, 5)
+          .mapToObj(i -> dispatcher.dispatch(busyAgent, "json", MessageType.JSON))
+          .toList();
+      assertTrue(busyAgent.entered.tryAcquire(5, TimeUnit.SECONDS));
+
+      String idleResult = dispatcher.dispatch(idleAgent, JSON_MESSAGE, MessageType.JSON)
+          .get(5, TimeUnit.SECONDS);
+      assertTrue(idleResult.contains("\"LastAgent\":\"Agent-414\""));
+
+      busyAgent.gate.countDown();
+      busyResults.forEach(CompletableFuture::join);
+    }
+  }
+
+  // agent that holds every message until the gate opens and records how many ran at once
+  private static final class GatedAgent extends MessagingAgent {
+
+    private final Semaphore entered = new Semaphore(0);
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private volatile CountDownLatch gate = new CountDownLatch(1);
+
+    private GatedAgent(String agentId) throws JAXBException, SOAPException {
+      super(agentId, MessageHandlerRegistry.defaultRegistry());
+    }
+
+    @Override
+    public String handleInputMessage(String inputMessage, MessageType inputMessageType) {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      entered.release();
+      try {
+        gate.await();
+      } catch (InterruptedException intException) {
+        Thread.currentThread().interrupt();
+      }
+      running.decrementAndGet();
+      return inputMessage;
+    }
+
+    // dispatches ten messages, waits until the expected number run, then lets all of them
+    // finish and returns the most that ran at once
+    private int runAll(AgentDispatcher dispatcher, MessageType messageType, int expectedRunning)
+        throws Exception {
+      gate = new CountDownLatch(1);
+      maxRunning.set(0);
+      entered.drainPermits();
+      List<CompletableFuture<String>> results = IntStream.range(0, 10)
+          .mapToObj(i -> dispatcher.dispatch(this, "message", messageType))
+          .toList();
+      assertTrue(entered.tryAcquire(expectedRunning, 5, TimeUnit.SECONDS));
+      gate.countDown();
+      results.forEach(CompletableFuture::join);
+      return maxRunning.get();
+    }
+  }
+}
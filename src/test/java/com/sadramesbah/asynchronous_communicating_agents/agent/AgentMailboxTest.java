@@ -0,0 +1,198 @@
+package com.sadramesbah.asynchronous_communicating_agents.agent;
+
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidBinaryMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidJsonMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageHandlerRegistry;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import com.sadramesbah.asynchronous_communicating_agents.metrics.MessageMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.soap.SOAPException;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentMailboxTest {
+
+  private static final String JSON_MESSAGE =
+      "{\"MessageID\":10861,\"MessageTitle\":\"Test Title\",\"MessageBody\":\"Test Body\","
+          + "\"CreationTime\":\"2024-12-20T16:15:00Z\",\"LastModified\":\"2024-12-20T16:35:00Z\""
+          + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\"}";
+
+  @Test
+  void testProcessesMessagesInOrderAndRecordsMetrics() throws Exception {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    List<String> processed = new CopyOnWriteArrayList<>();
+    MessagingAgent agent = new MessagingAgent("Agent-420",
+        MessageHandlerRegistry.defaultRegistry(),
+        AgentOptions.defaults().withMetrics(new MessageMetrics(meterRegistry))) {
+      @Override
+      public String handleInputMessage(String inputMessage, MessageType inputMessageType) {
+        assertTrue(Thread.currentThread().isVirtual());
+        processed.add(inputMessage);
+        return inputMessage;
+      }
+    };
+
+    List<CompletableFuture<String>> results;
+    try (AgentMailbox mailbox = new AgentMailbox(agent, 8, AgentMailbox.OverflowPolicy.BLOCK)) {
+      results = IntStream.range(0, 100)
+          .mapToObj(index -> mailbox.submit("message-" + index, MessageType.JSON))
+          .toList();
+    }
+
+    assertEquals(IntStream.range(0, 100).mapToObj(index -> "message-" + index).toList(),
+        processed);
+    results.forEach(result -> assertTrue(result.isDone()));
+    assertEquals(100, meterRegistry.get(MessageMetrics.MAILBOX_WAIT_TIMER)
+        .tag("agent", "Agent-420").timer().count());
+    assertEquals(0, meterRegistry.get(MessageMetrics.MAILBOX_DEPTH_GAUGE)
+        .tag("agent", "Agent-420").gauge().value());
+  }
+
+  @Test
+  void testOverflowPolicies() throws Exception {
+    // REJECT fails the new message
+    withFullMailbox("Agent-421", AgentMailbox.OverflowPolicy.REJECT, null, (agent, mailbox) -> {
+      CompletableFuture<String> rejected = mailbox.submit("overflow", MessageType.JSON);
+      CompletionException failure = assertThrows(CompletionException.class, rejected::join);
+      assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+      assertEquals(2, mailbox.getDepth());
+    });
+
+    // DROP_OLDEST fails the oldest waiting message and keeps the new one
+    withFullMailbox("Agent-422", AgentMailbox.OverflowPolicy.DROP_OLDEST, null,
+        (agent, mailbox) -> {
+          CompletableFuture<String> kept = mailbox.submit("overflow", MessageType.JSON);
+          assertThrows(CompletionException.class, () -> agent.waiting.get(0).join());
+          agent.gate.countDown();
+          assertEquals("overflow", kept.get(5, TimeUnit.SECONDS));
+          assertEquals("waiting-1", agent.waiting.get(1).get(5, TimeUnit.SECONDS));
+        });
+
+    // SPILL hands the new message to the spill and completes once it is stored
+    List<String> spilled = new CopyOnWriteArrayList<>();
+    AgentMailbox.Spill spill = (inputMessage, inputMessageType) -> {
+      spilled.add(inputMessageType + ":" + inputMessage);
+      return CompletableFuture.completedFuture(null);
+    };
+    withFullMailbox("Agent-423", AgentMailbox.OverflowPolicy.SPILL, spill, (agent, mailbox) -> {
+      assertNull(mailbox.submit("overflow", MessageType.XML).get(5, TimeUnit.SECONDS));
+      assertEquals(List.of("XML:overflow"), spilled);
+    });
+    assertThrows(IllegalArgumentException.class, () -> new AgentMailbox(
+        new MessagingAgent("Agent-424"), 1, AgentMailbox.OverflowPolicy.SPILL));
+  }
+
+  @Test
+  void testBlockPolicyWaitsForFreeSlot() throws Exception {
+    withFullMailbox("Agent-425", AgentMailbox.OverflowPolicy.BLOCK, null, (agent, mailbox) -> {
+      CompletableFuture<CompletableFuture<String>> submitted = CompletableFuture.supplyAsync(
+          () -> mailbox.submit(JSON_MESSAGE, MessageType.JSON));
+      Thread.sleep(100);
+      assertFalse(submitted.isDone());
+
+      agent.gate.countDown();
+      String result = submitted.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+      assertTrue(result.contains("\"LastAgent\":\"Agent-425\""));
+    });
+    AgentMailbox closed = new AgentMailbox(new MessagingAgent("Agent-426"), 1,
+        AgentMailbox.OverflowPolicy.BLOCK);
+    closed.close();
+    assertThrows(CompletionException.class,
+        () -> closed.submit(JSON_MESSAGE, MessageType.JSON).join());
+  }
+
+  @Test
+  void testDepthGaugeFollowsRecreatedMailbox() throws Exception {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    MessageMetrics metrics = new MessageMetrics(meterRegistry);
+    new AgentMailbox(new MessagingAgent("Agent-427", MessageHandlerRegistry.defaultRegistry(),
+        AgentOptions.defaults().withMetrics(metrics)), 4, AgentMailbox.OverflowPolicy.BLOCK)
+        .close();
+
+    // an agent recreated with the same ID reports the depth of its new mailbox
+    GatedAgent agent = new GatedAgent("Agent-427", metrics);
+    AgentMailbox mailbox = new AgentMailbox(agent, 4, AgentMailbox.OverflowPolicy.BLOCK);
+    try {
+      mailbox.submit("processing", MessageType.JSON);
+      assertTrue(agent.started.await(5, TimeUnit.SECONDS));
+      mailbox.submit("waiting-0", MessageType.JSON);
+      mailbox.submit("waiting-1", MessageType.JSON);
+      assertEquals(2, meterRegistry.get(MessageMetrics.MAILBOX_DEPTH_GAUGE)
+          .tag("agent", "Agent-427").gauge().value());
+    } finally {
+      agent.gate.countDown();
+      mailbox.close();
+    }
+    assertEquals(0, meterRegistry.get(MessageMetrics.MAILBOX_DEPTH_GAUGE)
+        .tag("agent", "Agent-427").gauge().value());
+  }
+
+  // runs the test against a mailbox of capacity two that holds two messages while the agent
+  // processes a third, and lets the agent go on before closing the mailbox
+  private static void withFullMailbox(String agentId, AgentMailbox.OverflowPolicy overflowPolicy,
+      AgentMailbox.Spill spill, MailboxTest test) throws Exception {
+    GatedAgent agent = new GatedAgent(agentId);
+    AgentMailbox mailbox = new AgentMailbox(agent, 2, overflowPolicy, spill);
+    try {
+      mailbox.submit("processing", MessageType.JSON);
+      assertTrue(agent.started.await(5, TimeUnit.SECONDS));
+      agent.waiting.add(mailbox.submit("waiting-0", MessageType.JSON));
+      agent.waiting.add(mailbox.submit("waiting-1", MessageType.JSON));
+      assertEquals(2, mailbox.getDepth());
+      test.run(agent, mailbox);
+    } finally {
+      agent.gate.countDown();
+      mailbox.close();
+    }
+  }
+
+  @FunctionalInterface
+  private interface MailboxTest {
+
+    void run(GatedAgent agent, AgentMailbox mailbox) throws Exception;
+  }
+
+  // agent that holds its first message until the gate opens, leaving the mailbox to fill up
+  private static final class GatedAgent extends MessagingAgent {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final List<CompletableFuture<String>> waiting = new CopyOnWriteArrayList<>();
+
+    private GatedAgent(String agentId) throws JAXBException, SOAPException {
+      super(agentId, MessageHandlerRegistry.defaultRegistry());
+    }
+
+    private GatedAgent(String agentId, MessageMetrics metrics)
+        throws JAXBException, SOAPException {
+      super(agentId, MessageHandlerRegistry.defaultRegistry(),
+          AgentOptions.defaults().withMetrics(metrics));
+    }
+
+    @Override
+    public String handleInputMessage(String inputMessage, MessageType inputMessageType)
+        throws JAXBException, SOAPException, IOException, InvalidJsonMessageException,
+        InvalidBinaryMessageException {
+      started.countDown();
+      try {
+        gate.await();
+      } catch (InterruptedException intException) {
+        throw new IllegalStateException(intException);
+      }
+      return inputMessage.startsWith("{")
+          ? super.handleInputMessage(inputMessage, inputMessageType)
+          : inputMessage;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.sadramesbah.asynchronous_communicating_agents.agent;
+
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageHandlerRegistry;
+import com.sadramesbah.asynchronous_communicating_agents.message.JsonMessage;
+import com.sadramesbah.asynchronous_communicating_agents.message.Message;
+import org.junit.jupiter.api.Test;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.soap.SOAPException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentRegistryTest {
+
+  private static final int KEYS = 10_000;
+
+  @Test
+  void testRoutingIsStableAndEven() throws JAXBException, SOAPException {
+    AgentRegistry registry = registry(4);
+    AgentRegistry otherRegistry = registry(4);
+    Map<String, Integer> counts = new HashMap<>();
+    for (int messageId = 0; messageId < KEYS; messageId++) {
+      String agentId = registry.route(messageId).getId();
+      assertEquals(agentId, registry.route(messageId).getId());
+      // a registry with agents of the same IDs, as in another JVM, routes the same way
+      assertEquals(agentId, otherRegistry.route(messageId).getId());
+      counts.merge(agentId, 1, Integer::sum);
+    }
+    assertEquals(4, counts.size());
+    counts.values().forEach(count -> assertTrue(count > KEYS / 8, "uneven spread: " + counts));
+  }
+
+  @Test
+  void testAddingAndRemovingAgentsMovesOnlyTheirKeys() throws JAXBException, SOAPException {
+    AgentRegistry registry = registry(4);
+    String[] before = routes(registry);
+
+    registry.register(new MessagingAgent("Agent-5", MessageHandlerRegistry.defaultRegistry()));
+    String[] added = routes(registry);
+    int moved = 0;
+    for (int messageId = 0; messageId < KEYS; messageId++) {
+      if (!before[messageId].equals(added[messageId])) {
+        assertEquals("Agent-5", added[messageId]);
+        moved++;
+      }
+    }
+    assertTrue(moved > KEYS / 10 && moved < KEYS / 3, "moved " + moved);
+
+    assertNotNull(registry.unregister("Agent-5"));
+    assertArrayEquals(before, routes(registry));
+
+    registry.unregister("Agent-2");
+    String[] removed = routes(registry);
+    for (int messageId = 0; messageId < KEYS; messageId++) {
+      if (!before[messageId].equals("Agent-2")) {
+        assertEquals(before[messageId], removed[messageId]);
+      }
+      assertNotEquals("Agent-2", removed[messageId]);
+    }
+  }
+
+  @Test
+  void testRoutesMessagesByConfiguredKey() throws JAXBException, SOAPException {
+    JsonMessage message = new JsonMessage();
+    message.setMessageId(10860);
+    message.setMessageTitle("Test Title");
+    AgentRegistry byMessageId = registry(new AgentRegistry(), 3);
+    assertSame(byMessageId.route(10860), byMessageId.route(message));
+    AgentRegistry byTitle = registry(new AgentRegistry(16, Message::getMessageTitle), 3);
+    assertSame(byTitle.route("Test Title"), byTitle.route(message));
+
+    assertThrows(IllegalStateException.class, () -> new AgentRegistry().route(10860));
+    assertThrows(IllegalArgumentException.class, () -> new AgentRegistry(0, null));
+  }
+
+  private static AgentRegistry registry(int agents) throws JAXBException, SOAPException {
+    return registry(new AgentRegistry(), agents);
+  }
+
+  private static AgentRegistry registry(AgentRegistry registry, int agents)
+      throws JAXBException, SOAPException {
+    MessageHandlerRegistry handlerRegistry = MessageHandlerRegistry.defaultRegistry();
+    for (int index = 1; index <= agents; index++) {
+      registry.register(new MessagingAgent("Agent-" + index, handlerRegistry));
+    }
+    assertEquals(agents, registry.size());
+    return registry;
+  }
+
+  private static String[] routes(AgentRegistry registry) {
+    String[] routes = new String[KEYS];
+    for (int messageId = 0; messageId < KEYS; messageId++) {
+      routes[messageId] = registry.route(messageId).getId();
+    }
+    return routes;
+  }
+}
@@ -1,14 +1,29 @@
 package com.sadramesbah.asynchronous_communicating_agents.agent;
 
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidJsonMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.handler.BinaryMessageHandler;
 import com.sadramesbah.asynchronous_communicating_agents.handler.JsonMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageHandlerRegistry;
+import com.sadramesbah.asynchronous_communicating_agents.handler.MessageValidator;
+import com.sadramesbah.asynchronous_communicating_agents.handler.SoapMessageHandler;
+import com.sadramesbah.asynchronous_communicating_agents.handler.XmlMessageHandler;
 import com.sadramesbah.asynchronous_communicating_agents.message.JsonMessage;
 import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import com.sadramesbah.asynchronous_communicating_agents.metrics.MessageMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.soap.SOAPException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
+import java.time.Clock;
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -134,11 +149,11 @@ class MessagingAgentTest {
   @Test
   void testHandleNullMessage() {
     assertThrows(Exception.class, () ->
-        messagingAgent.handleInputMessage(null, MessageType.JSON));
+        messagingAgent.handleInputMessage((String) null, MessageType.JSON));
     assertThrows(Exception.class, () ->
-        messagingAgent.handleInputMessage(null, MessageType.XML));
+        messagingAgent.handleInputMessage((String) null, MessageType.XML));
     assertThrows(Exception.class, () ->
-        messagingAgent.handleInputMessage(null, MessageType.SOAP));
+        messagingAgent.handleInputMessage((String) null, MessageType.SOAP));
   }
 
   @Test
@@ -155,4 +170,490 @@ class MessagingAgentTest {
     assertTrue(updatedMessage.getLastModified().after(originalTimestamp),
         "LastModified timestamp should be updated to a more recent time.");
   }
-}
\ No newline at end of file
+
+  @Test
+  void testAgentsShareDefaultHandlerRegistry() throws Exception {
+    MessageHandlerRegistry registry = MessageHandlerRegistry.defaultRegistry();
+    assertSame(registry, MessageHandlerRegistry.defaultRegistry());
+
+    MessagingAgentFactory factory = new MessagingAgentFactory(registry, AgentOptions.defaults());
+    MessagingAgent firstAgent = factory.createAgent("Agent-401");
+    MessagingAgent secondAgent = factory.createAgent("Agent-402");
+    String xmlMessage =
+        "<Message><MessageID>10857</MessageID><MessageTitle>Test Title</MessageTitle>"
+            + "<MessageBody>Test Body</MessageBody><CreationTime>2024-12-20T10:25:00Z</CreationTime>"
+            + "<LastModified>2024-12-20T11:45:00Z</LastModified><LastAgent>Agent-109</LastAgent>"
+            + "<Status>Active</Status></Message>";
+
+    String firstResult = firstAgent.handleInputMessage(xmlMessage, MessageType.XML);
+    String secondResult = secondAgent.handleInputMessage(firstResult, MessageType.XML);
+
+    assertTrue(secondResult.contains("Processed by Agent: Agent-401"));
+    assertTrue(secondResult.contains("Processed by Agent: Agent-402"));
+    assertTrue(secondResult.contains("<LastAgent>Agent-402</LastAgent>"));
+
+    // only agents created as registered ones are routed to, until they are unregistered
+    AgentRegistry agentRegistry = factory.getAgentRegistry();
+    assertEquals(0, agentRegistry.size());
+    MessagingAgent routedAgent = factory.createRegisteredAgent("Agent-403");
+    MessagingAgent otherRoutedAgent = factory.createRegisteredAgent("Agent-404");
+    assertEquals(2, agentRegistry.size());
+    assertSame(routedAgent, agentRegistry.getAgent("Agent-403"));
+    int routedKey = 0;
+    while (agentRegistry.route(routedKey) != routedAgent) {
+      routedKey++;
+    }
+    assertSame(routedAgent, agentRegistry.unregister("Agent-403"));
+    assertSame(otherRoutedAgent, agentRegistry.route(routedKey));
+    assertEquals(1, agentRegistry.size());
+  }
+
+  @Test
+  void testHandleXmlMessageWithStreamingTransform() throws Exception {
+    MessagingAgent streamingAgent = new MessagingAgent(AGENT_ID,
+        MessageHandlerRegistry.defaultRegistry(), AgentOptions.defaults().withStreamingXml(true));
+    String xmlMessage =
+        "<Message><MessageID>10858</MessageID><MessageTitle>Test Title</MessageTitle>"
+            + "<MessageBody>Test Body</MessageBody><CreationTime>2024-12-20T10:25:00Z</CreationTime>"
+            + "<LastModified>2024-12-20T11:45:00Z</LastModified><LastAgent>Agent-109</LastAgent>"
+            + "<Status>Active</Status></Message>";
+
+    String result = streamingAgent.handleInputMessage(xmlMessage, MessageType.XML);
+
+    assertTrue(result.contains("<MessageBody>Test Body Processed by Agent: " + AGENT_ID));
+    assertTrue(result.contains("<LastAgent>" + AGENT_ID + "</LastAgent>"));
+    assertFalse(result.contains("<LastModified>2024-12-20T11:45:00Z</LastModified>"));
+    assertThrows(Exception.class, () -> streamingAgent.handleInputMessage(
+        xmlMessage.replace("<LastAgent>Agent-109</LastAgent>", ""), MessageType.XML));
+  }
+
+  @Test
+  void testHandleSoapMessageWithStreamingTransform() throws Exception {
+    MessagingAgent streamingAgent = new MessagingAgent(AGENT_ID,
+        MessageHandlerRegistry.defaultRegistry(), AgentOptions.defaults().withStreamingSoap(true));
+    String soapMessageInString = new StringBuilder()
+        .append("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">")
+        .append("<soapenv:Header/>")
+        .append("<soapenv:Body>")
+        .append("<Message>")
+        .append("<MessageID>10859</MessageID>")
+        .append("<MessageTitle>Test Title</MessageTitle>")
+        .append("<MessageBody>Test Body</MessageBody>")
+        .append("<CreationTime>2024-12-20T12:00:00Z</CreationTime>")
+        .append("<LastModified>2024-12-20T12:45:00Z</LastModified>")
+        .append("<LastAgent>Agent-108</LastAgent>")
+        .append("<Status>Active</Status>")
+        .append("</Message>")
+        .append("</soapenv:Body>")
+        .append("</soapenv:Envelope>")
+        .toString();
+
+    String result = streamingAgent.handleInputMessage(soapMessageInString, MessageType.SOAP);
+
+    assertTrue(result.contains("Test Body Processed by Agent: " + AGENT_ID));
+    assertTrue(result.contains("<LastAgent>" + AGENT_ID + "</LastAgent>"));
+    assertTrue(result.contains("SecurityToken"));
+  }
+
+  @Test
+  void testAgentRecordsStageMetrics() throws Exception {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    MessagingAgent meteredAgent = new MessagingAgent(AGENT_ID,
+        MessageHandlerRegistry.defaultRegistry(),
+        AgentOptions.defaults().withMetrics(new MessageMetrics(meterRegistry)));
+    String xmlMessage =
+        "<Message><MessageID>10860</MessageID><MessageTitle>Test Title</MessageTitle>"
+            + "<MessageBody>Test Body</MessageBody><CreationTime>2024-12-20T10:25:00Z</CreationTime>"
+            + "<LastModified>2024-12-20T11:45:00Z</LastModified><LastAgent>Agent-109</LastAgent>"
+            + "<Status>Active</Status></Message>";
+
+    meteredAgent.handleInputMessage(xmlMessage, MessageType.XML);
+
+    for (String stage : new String[]{"parse", "update", "serialize"}) {
+      assertEquals(1, meterRegistry.get(MessageMetrics.STAGE_TIMER)
+          .tags("agent", AGENT_ID, "type", "xml", "stage", stage).timer().count());
+    }
+    assertEquals(xmlMessage.length(), meterRegistry.get(MessageMetrics.SIZE_SUMMARY)
+        .tags("type", "xml", "direction", "in").summary().totalAmount());
+  }
+
+  @Test
+  void testAgentCountsFailuresByReason() throws Exception {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    MessagingAgent meteredAgent = new MessagingAgent(AGENT_ID,
+        MessageHandlerRegistry.defaultRegistry(),
+        AgentOptions.defaults().withMetrics(new MessageMetrics(meterRegistry)));
+
+    assertThrows(Exception.class,
+        () -> meteredAgent.handleInputMessage("{\"MessageID\":1}", MessageType.JSON));
+    assertEquals(1, meterRegistry.get(MessageMetrics.FAILURE_COUNTER)
+        .tags("agent", AGENT_ID, "type", "json", "reason", "validation", "field", "MessageTitle")
+        .counter().count());
+
+    // XML and SOAP validation failures are told apart from malformed input as well
+    String invalidXml = "<Message><MessageID>7</MessageID><MessageTitle>Title</MessageTitle>"
+        + "<MessageBody>Body</MessageBody><CreationTime>2024-12-20T10:25:00Z</CreationTime>"
+        + "<LastModified>2024-12-20T11:45:00Z</LastModified><LastAgent>Agent-1</LastAgent>"
+        + "</Message>";
+    assertThrows(Exception.class,
+        () -> meteredAgent.handleInputMessage(invalidXml, MessageType.XML));
+    assertThrows(Exception.class, () -> meteredAgent.handleInputMessage(
+        "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+            + "<soapenv:Body>" + invalidXml + "</soapenv:Body></soapenv:Envelope>",
+        MessageType.SOAP));
+    assertEquals(1, meterRegistry.get(MessageMetrics.FAILURE_COUNTER)
+        .tags("type", "xml", "reason", "validation", "field", "Status").counter().count());
+    assertEquals(1, meterRegistry.get(MessageMetrics.FAILURE_COUNTER)
+        .tags("type", "soap", "reason", "validation", "field", "Status").counter().count());
+
+    assertThrows(Exception.class,
+        () -> meteredAgent.handleInputMessage("{\"MessageID\":", MessageType.JSON));
+    assertThrows(Exception.class,
+        () -> meteredAgent.handleInputMessage("<Message>", MessageType.XML));
+    assertEquals(1, meterRegistry.get(MessageMetrics.FAILURE_COUNTER)
+        .tags("agent", AGENT_ID, "type", "json", "reason", "parse", "field", "none")
+        .counter().count());
+    assertEquals(1, meterRegistry.get(MessageMetrics.FAILURE_COUNTER)
+        .tags("agent", AGENT_ID, "type", "xml", "reason", "parse").counter().count());
+    // the reason and field tags only take fixed values
+    assertEquals(5, meterRegistry.get(MessageMetrics.FAILURE_COUNTER).counters().size());
+  }
+
+  @Test
+  void testClosedAgentsRemoveTheirMeters() throws Exception {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    MessagingAgentFactory factory = new MessagingAgentFactory(
+        MessageHandlerRegistry.defaultRegistry(),
+        AgentOptions.defaults().withMetrics(new MessageMetrics(meterRegistry)));
+    String jsonMessage = "{\"MessageID\":10860,\"MessageTitle\":\"Test Title\","
+        + "\"MessageBody\":\"Test Body\",\"CreationTime\":\"2024-12-20T11:25:00Z\","
+        + "\"LastModified\":\"2024-12-20T11:50:00Z\",\"LastAgent\":\"Agent-108\","
+        + "\"Status\":\"Active\"}";
+
+    for (int index = 0; index < 100; index++) {
+      try (MessagingAgent transientAgent = factory.createAgent("Agent-5" + index)) {
+        transientAgent.handleInputMessage(jsonMessage, MessageType.JSON);
+        assertThrows(Exception.class,
+            () -> transientAgent.handleInputMessage("{\"MessageID\":1}", MessageType.JSON));
+      }
+    }
+    assertTrue(meterRegistry.getMeters().isEmpty());
+
+    // agents sharing an ID share their meters until the last of them is closed
+    MessagingAgent firstAgent = factory.createAgent(AGENT_ID);
+    MessagingAgent secondAgent = factory.createAgent(AGENT_ID);
+    try (AgentMailbox mailbox = new AgentMailbox(firstAgent, 4,
+        AgentMailbox.OverflowPolicy.REJECT, null)) {
+      mailbox.submit(jsonMessage, MessageType.JSON).get();
+    }
+    firstAgent.close();
+    firstAgent.close();
+    secondAgent.handleInputMessage(jsonMessage, MessageType.JSON);
+    assertEquals(2, meterRegistry.get(MessageMetrics.SIZE_SUMMARY)
+        .tags("agent", AGENT_ID, "direction", "in").summary().count());
+    secondAgent.close();
+    assertTrue(meterRegistry.getMeters().isEmpty());
+  }
+
+  @Test
+  void testHandleBinaryMessage() throws Exception {
+    MessageHandlerRegistry handlerRegistry = MessageHandlerRegistry.defaultRegistry();
+    String jsonMessage =
+        "{\"MessageID\":10861,\"MessageTitle\":\"Test Title\",\"MessageBody\":\"Test Body\","
+            + "\"CreationTime\":\"2024-12-20T11:25:00Z\",\"LastModified\":\"2024-12-20T11:50:00Z\""
+            + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\"}";
+    String binaryMessage = handlerRegistry.getBinaryHandler().toBinaryString(
+        handlerRegistry.getJsonHandler().parse(jsonMessage));
+
+    String result = messagingAgent.handleInputMessage(binaryMessage, MessageType.BINARY);
+
+    JsonMessage processed = handlerRegistry.getBinaryHandler().parse(result)
+        .copyTo(new JsonMessage());
+    assertTrue(processed.getMessageBody().startsWith("Test Body Processed by Agent: " + AGENT_ID));
+    assertEquals(AGENT_ID, processed.getLastAgent());
+  }
+
+  @Test
+  void testTranscodeSoapToJson() throws Exception {
+    String soapMessageInString =
+        "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+            + "<soapenv:Header/><soapenv:Body><Message><MessageID>10862</MessageID>"
+            + "<MessageTitle>Test Title</MessageTitle><MessageBody>Test Body</MessageBody>"
+            + "<CreationTime>2024-12-20T12:00:00Z</CreationTime>"
+            + "<LastModified>2024-12-20T12:45:00Z</LastModified><LastAgent>Agent-108</LastAgent>"
+            + "<Status>Active</Status></Message></soapenv:Body></soapenv:Envelope>";
+
+    String result = messagingAgent.transcode(soapMessageInString, MessageType.SOAP,
+        MessageType.JSON);
+
+    JsonMessage jsonMessage = new JsonMessageHandler().parse(result);
+    assertEquals(10862, jsonMessage.getMessageId());
+    assertTrue(jsonMessage.getMessageBody().startsWith("Test Body Processed by Agent: " + AGENT_ID));
+    assertEquals(AGENT_ID, jsonMessage.getLastAgent());
+    assertEquals(Timestamp.from(Instant.parse("2024-12-20T12:00:00Z")),
+        jsonMessage.getCreationTime());
+  }
+
+  @Test
+  void testTranscodeJsonToSoapAndBack() throws Exception {
+    String jsonMessage =
+        "{\"MessageID\":10863,\"MessageTitle\":\"Test Title\",\"MessageBody\":\"Test Body\","
+            + "\"CreationTime\":\"2024-12-20T11:25:00Z\",\"LastModified\":\"2024-12-20T11:50:00Z\""
+            + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\"}";
+
+    String soapMessage = messagingAgent.transcode(jsonMessage, MessageType.JSON, MessageType.SOAP);
+
+    assertTrue(soapMessage.contains("<SecurityToken"));
+    assertTrue(soapMessage.contains("<LastAgent>" + AGENT_ID + "</LastAgent>"));
+    String xmlMessage = messagingAgent.transcode(soapMessage, MessageType.SOAP, MessageType.XML);
+    assertTrue(xmlMessage.contains("<MessageID>10863</MessageID>"));
+    assertEquals(2, xmlMessage.split("Processed by Agent: " + AGENT_ID, -1).length - 1);
+  }
+
+  @Test
+  void testHandleEncodedMessages() throws Exception {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    MessagingAgent meteredAgent = new MessagingAgent(AGENT_ID,
+        MessageHandlerRegistry.defaultRegistry(),
+        AgentOptions.defaults().withMetrics(new MessageMetrics(meterRegistry)));
+    byte[] jsonMessage =
+        ("{\"MessageID\":10863,\"MessageTitle\":\"Test Title\",\"MessageBody\":\"Test Body\","
+            + "\"CreationTime\":\"2024-12-20T11:25:00Z\",\"LastModified\":\"2024-12-20T11:50:00Z\""
+            + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\"}")
+            .getBytes(StandardCharsets.UTF_8);
+    byte[] xmlMessage =
+        ("<Message><MessageID>10864</MessageID><MessageTitle>Test Title</MessageTitle>"
+            + "<MessageBody>Test Body</MessageBody><CreationTime>2024-12-20T10:25:00Z</CreationTime>"
+            + "<LastModified>2024-12-20T11:45:00Z</LastModified><LastAgent>Agent-109</LastAgent>"
+            + "<Status>Active</Status></Message>").getBytes(StandardCharsets.UTF_8);
+
+    String jsonResult = new String(meteredAgent.handleInputMessage(jsonMessage, MessageType.JSON),
+        StandardCharsets.UTF_8);
+    assertTrue(jsonResult.contains("\"LastAgent\":\"" + AGENT_ID + "\""));
+    assertEquals(jsonMessage.length, meterRegistry.get(MessageMetrics.BYTES_SUMMARY)
+        .tags("type", "json", "direction", "in").summary().totalAmount());
+
+    ByteBuffer directBuffer = ByteBuffer.allocateDirect(xmlMessage.length);
+    directBuffer.put(xmlMessage).flip();
+    String xmlResult = new String(meteredAgent.handleInputMessage(directBuffer, MessageType.XML),
+        StandardCharsets.UTF_8);
+    assertTrue(xmlResult.contains("<LastAgent>" + AGENT_ID + "</LastAgent>"));
+    assertEquals(0, directBuffer.position());
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    meteredAgent.handleInputMessage(new ByteArrayInputStream(jsonMessage), outputStream,
+        MessageType.JSON);
+    assertTrue(outputStream.toString(StandardCharsets.UTF_8)
+        .contains("\"MessageBody\":\"Test Body Processed by Agent: " + AGENT_ID));
+  }
+
+  @Test
+  void testStreamedInvalidMessageWritesNothing() throws Exception {
+    MessagingAgent streamingAgent = new MessagingAgent(AGENT_ID,
+        MessageHandlerRegistry.defaultRegistry(), AgentOptions.defaults().withStreamingXml(true));
+    byte[] jsonMessage = ("{\"MessageID\":10866,\"MessageBody\":\"Test Body\","
+        + "\"CreationTime\":\"2024-12-20T11:25:00Z\",\"LastModified\":\"2024-12-20T11:50:00Z\""
+        + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\"}")
+        .getBytes(StandardCharsets.UTF_8);
+    byte[] xmlMessage = ("<Message><MessageID>10866</MessageID><MessageBody>Test Body"
+        + "</MessageBody><CreationTime>2024-12-20T11:25:00Z</CreationTime><LastModified>"
+        + "2024-12-20T11:50:00Z</LastModified><LastAgent>Agent-108</LastAgent>"
+        + "<Status>Active</Status></Message>").getBytes(StandardCharsets.UTF_8);
+
+    ByteArrayOutputStream jsonOutput = new ByteArrayOutputStream();
+    assertThrows(InvalidJsonMessageException.class, () -> streamingAgent.handleInputMessage(
+        new ByteArrayInputStream(jsonMessage), jsonOutput, MessageType.JSON));
+    assertEquals(0, jsonOutput.size());
+
+    ByteArrayOutputStream xmlOutput = new ByteArrayOutputStream();
+    assertThrows(JAXBException.class, () -> streamingAgent.handleInputMessage(
+        new ByteArrayInputStream(xmlMessage), xmlOutput, MessageType.XML));
+    assertEquals(0, xmlOutput.size());
+  }
+
+  @Test
+  void testHandleRawBinaryMessage() throws Exception {
+    MessageHandlerRegistry handlerRegistry = MessageHandlerRegistry.defaultRegistry();
+    JsonMessage jsonMessage = handlerRegistry.getJsonHandler().parse(
+        "{\"MessageID\":10865,\"MessageTitle\":\"Test Title\",\"MessageBody\":\"Test Body\","
+            + "\"CreationTime\":\"2024-12-20T11:25:00Z\",\"LastModified\":\"2024-12-20T11:50:00Z\""
+            + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\"}");
+    byte[] binaryMessage = handlerRegistry.getBinaryHandler().toBytes(jsonMessage);
+
+    byte[] result = messagingAgent.handleInputMessage(binaryMessage, MessageType.BINARY);
+
+    assertEquals(AGENT_ID, handlerRegistry.getBinaryHandler().parse(result).getLastAgent());
+  }
+
+  @Test
+  void testUpdateUsesOneReadingOfTheConfiguredClock() throws Exception {
+    Instant processedAt = Instant.parse("2024-12-21T09:30:15.250Z");
+    MessagingAgent fixedClockAgent = new MessagingAgent(AGENT_ID,
+        MessageHandlerRegistry.defaultRegistry(),
+        AgentOptions.defaults().withClock(Clock.fixed(processedAt, ZoneOffset.UTC)));
+    String jsonMessage =
+        "{\"MessageID\":10857,\"MessageTitle\":\"Test Title\",\"MessageBody\":\"Test Body\","
+            + "\"CreationTime\":\"2024-12-20T16:15:00Z\",\"LastModified\":\"2024-12-20T16:35:00Z\""
+            + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\"}";
+
+    JsonMessage updatedMessage = new JsonMessageHandler().parse(
+        fixedClockAgent.handleInputMessage(jsonMessage, MessageType.JSON));
+    assertEquals("Test Body Processed by Agent: " + AGENT_ID + " at 2024-12-21 09:30:15.",
+        updatedMessage.getMessageBody());
+    assertEquals(Timestamp.from(processedAt), updatedMessage.getLastModified());
+  }
+
+  @Test
+  void testCoarseClockFollowsSystemClock() throws InterruptedException {
+    CoarseClock coarseClock = CoarseClock.system(ZoneOffset.UTC);
+    long before = System.currentTimeMillis();
+    Thread.sleep(20);
+    long reading = coarseClock.millis();
+    assertTrue(reading >= before && reading <= System.currentTimeMillis());
+    assertEquals(ZoneOffset.UTC, coarseClock.getZone());
+    assertSame(coarseClock, coarseClock.withZone(ZoneOffset.UTC));
+  }
+
+  @Test
+  void testSeparateProcessingTrailOption() throws Exception {
+    MessagingAgent trailAgent = new MessagingAgent(AGENT_ID,
+        MessageHandlerRegistry.defaultRegistry(),
+        AgentOptions.defaults().withSeparateProcessingTrail(true));
+    String jsonMessage =
+        "{\"MessageID\":10858,\"MessageTitle\":\"Test Title\",\"MessageBody\":\"Test Body\","
+            + "\"CreationTime\":\"2024-12-20T16:15:00Z\",\"LastModified\":\"2024-12-20T16:35:00Z\""
+            + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\"}";
+
+    String firstHop = trailAgent.transcode(jsonMessage, MessageType.JSON, MessageType.XML);
+    String secondHop = trailAgent.transcode(firstHop, MessageType.XML, MessageType.JSON);
+    assertTrue(firstHop.contains("<MessageBody>Test Body</MessageBody>"));
+    assertTrue(firstHop.contains("<Entry Agent=\"" + AGENT_ID + "\""));
+    assertTrue(secondHop.contains("\"MessageBody\":\"Test Body\""));
+    assertEquals(2, secondHop.split("\\{\"Agent\":\"" + AGENT_ID + "\"").length - 1);
+
+    String appendedHop = messagingAgent.transcode(jsonMessage, MessageType.JSON, MessageType.XML);
+    assertFalse(appendedHop.contains("ProcessingTrail"));
+    assertTrue(appendedHop.contains("Test Body Processed by Agent: " + AGENT_ID));
+  }
+
+  @Test
+  void testSeparateProcessingTrailAcrossFormatsWithoutTrailField() throws Exception {
+    MessagingAgent trailAgent = new MessagingAgent(AGENT_ID,
+        MessageHandlerRegistry.defaultRegistry(),
+        AgentOptions.defaults().withSeparateProcessingTrail(true));
+    String jsonMessage =
+        "{\"MessageID\":10862,\"MessageTitle\":\"Test Title\",\"MessageBody\":\"Test Body\","
+            + "\"CreationTime\":\"2024-12-20T16:15:00Z\",\"LastModified\":\"2024-12-20T16:35:00Z\""
+            + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\"}";
+    String processedBy = "Processed by Agent: ";
+
+    // the binary format carries the trail in the body, which is not duplicated on the way out
+    String binaryMessage = messagingAgent.transcode(jsonMessage, MessageType.JSON,
+        MessageType.BINARY);
+    String fromBinary = trailAgent.transcode(binaryMessage, MessageType.BINARY, MessageType.JSON);
+    assertEquals(2, fromBinary.split(processedBy).length - 1);
+    assertFalse(fromBinary.contains("ProcessingTrail"));
+
+    // a separate trail is appended to the body of a binary message rather than dropped
+    String toBinary = trailAgent.transcode(jsonMessage, MessageType.JSON, MessageType.BINARY);
+    String decoded = messagingAgent.transcode(toBinary, MessageType.BINARY, MessageType.JSON);
+    assertTrue(decoded.contains("Test Body " + processedBy + AGENT_ID));
+    assertEquals(2, decoded.split(processedBy).length - 1);
+
+    // and to the body of a SOAP envelope, which has no ProcessingTrail element
+    String toSoap = trailAgent.transcode(jsonMessage, MessageType.JSON, MessageType.SOAP);
+    assertFalse(toSoap.contains("ProcessingTrail"));
+    assertTrue(toSoap.contains("Test Body " + processedBy + AGENT_ID));
+  }
+
+  @Test
+  void testProcessingTrailStaysWholeAcrossFormatsAndPaths() throws Exception {
+    MessageHandlerRegistry registry = MessageHandlerRegistry.defaultRegistry();
+    AgentOptions streaming = AgentOptions.defaults().withStreamingXml(true)
+        .withStreamingSoap(true);
+    MessagingAgent trailAgent = new MessagingAgent("Agent-1", registry,
+        AgentOptions.defaults().withSeparateProcessingTrail(true));
+    MessagingAgent streamingTrailAgent = new MessagingAgent("Agent-2", registry,
+        streaming.withSeparateProcessingTrail(true));
+    MessagingAgent boundAgent = new MessagingAgent("Agent-3", registry);
+    MessagingAgent streamingAgent = new MessagingAgent("Agent-4", registry, streaming);
+    String jsonMessage =
+        "{\"MessageID\":10863,\"MessageTitle\":\"Test Title\",\"MessageBody\":\"Test Body\","
+            + "\"CreationTime\":\"2024-12-20T16:15:00Z\",\"LastModified\":\"2024-12-20T16:35:00Z\""
+            + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\"}";
+
+    // the option takes effect on the streaming JSON path, and agents without it extend the trail
+    // the message already has
+    String json = trailAgent.handleInputMessage(jsonMessage, MessageType.JSON);
+    assertTrue(json.contains("\"MessageBody\":\"Test Body\""));
+    assertEquals(1, occurrences(json, "{\"Agent\":"));
+    json = boundAgent.handleInputMessage(json, MessageType.JSON);
+    assertEquals(2, occurrences(json, "{\"Agent\":"));
+
+    String xml = boundAgent.transcode(json, MessageType.JSON, MessageType.XML);
+    xml = boundAgent.handleInputMessage(xml, MessageType.XML);
+    xml = streamingAgent.handleInputMessage(xml, MessageType.XML);
+    xml = streamingTrailAgent.handleInputMessage(xml, MessageType.XML);
+    assertTrue(xml.contains("<MessageBody>Test Body</MessageBody>"));
+    assertEquals(6, occurrences(xml, "<Entry Agent="));
+    assertTrue(xml.contains("<Entry Agent=\"Agent-2\""));
+
+    String soap = "<soapenv:Envelope "
+        + "xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Header/>"
+        + "<soapenv:Body>" + xml.substring(xml.indexOf("<Message>"))
+        + "</soapenv:Body></soapenv:Envelope>";
+    soap = streamingAgent.handleInputMessage(soap, MessageType.SOAP);
+    soap = boundAgent.handleInputMessage(soap, MessageType.SOAP);
+    assertTrue(soap.contains("<MessageBody>Test Body</MessageBody>"));
+    assertEquals(8, occurrences(soap, "<Entry "));
+
+    json = boundAgent.transcode(soap, MessageType.SOAP, MessageType.JSON);
+    json = streamingTrailAgent.handleInputMessage(json, MessageType.JSON);
+    assertTrue(json.contains("\"MessageBody\":\"Test Body\""));
+    assertEquals(10, occurrences(json, "{\"Agent\":"));
+    assertEquals(10, occurrences(json, "Processed by Agent: "));
+  }
+
+  @Test
+  void testStrictAgentsAcceptEachOthersOutput() throws Exception {
+    MessageValidator strictValidator = MessageValidator.defaults().withSchemaValidation(true);
+    MessageHandlerRegistry strictRegistry = new MessageHandlerRegistry(
+        new JsonMessageHandler(strictValidator), new XmlMessageHandler(strictValidator),
+        new SoapMessageHandler(strictValidator), new BinaryMessageHandler(strictValidator));
+    String xmlMessage = "<Message><MessageID>10859</MessageID><MessageTitle>Test Title"
+        + "</MessageTitle><MessageBody>Test Body</MessageBody><CreationTime>2024-12-20T16:15:00Z"
+        + "</CreationTime><LastModified>2024-12-20T16:35:00Z</LastModified><LastAgent>Agent-108"
+        + "</LastAgent><Status>Active</Status></Message>";
+    String jsonMessage =
+        "{\"MessageID\":10859,\"MessageTitle\":\"Test Title\",\"MessageBody\":\"Test Body\","
+            + "\"CreationTime\":\"2024-12-20T16:15:00Z\",\"LastModified\":\"2024-12-20T16:35:00Z\""
+            + ",\"LastAgent\":\"Agent-108\",\"Status\":\"Active\"}";
+    String soapMessage = "<soapenv:Envelope "
+        + "xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Header/>"
+        + "<soapenv:Body>" + xmlMessage + "</soapenv:Body></soapenv:Envelope>";
+
+    for (AgentOptions options : List.of(AgentOptions.defaults(),
+        AgentOptions.defaults().withStreamingXml(true).withStreamingSoap(true),
+        AgentOptions.defaults().withSeparateProcessingTrail(true))) {
+      MessagingAgent first = new MessagingAgent("Agent-1", strictRegistry, options);
+      MessagingAgent second = new MessagingAgent("Agent-2", strictRegistry, options);
+      assertTrue(second.handleInputMessage(first.handleInputMessage(jsonMessage,
+          MessageType.JSON), MessageType.JSON).contains("\"LastAgent\":\"Agent-2\""));
+      assertTrue(second.handleInputMessage(first.handleInputMessage(xmlMessage,
+          MessageType.XML), MessageType.XML).contains("<LastAgent>Agent-2</LastAgent>"));
+      assertTrue(second.handleInputMessage(first.handleInputMessage(soapMessage,
+          MessageType.SOAP), MessageType.SOAP).contains("<LastAgent>Agent-2</LastAgent>"));
+      String transcoded = first.transcode(jsonMessage, MessageType.JSON, MessageType.XML);
+      assertTrue(second.transcode(transcoded, MessageType.XML, MessageType.JSON)
+          .contains("\"LastAgent\":\"Agent-2\""));
+    }
+  }
+
+  private static int occurrences(String text, String part) {
+    int count = 0;
+    for (int index = text.indexOf(part); index >= 0; index = text.indexOf(part, index + 1)) {
+      count++;
+    }
+    return count;
+  }
+}
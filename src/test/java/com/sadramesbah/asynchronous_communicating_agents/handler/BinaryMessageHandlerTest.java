@@ -0,0 +1,119 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidBinaryMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.message.BinaryMessage;
+import com.sadramesbah.asynchronous_communicating_agents.message.JsonMessage;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageUpdate;
+import com.sadramesbah.asynchronous_communicating_agents.message.XmlMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryMessageHandlerTest {
+
+  private BinaryMessageHandler binaryMessageHandler;
+  private static final String VALID_JSON =
+      "{\"MessageID\":300,\"MessageTitle\":\"TestTitle\",\"MessageBody\":\"Test Body é中\","
+          + "\"CreationTime\":\"2024-10-10T10:25:00Z\",\"LastModified\":\"2024-10-10T11:45:00Z\","
+          + "\"LastAgent\":\"Agent-32\",\"Status\":\"Active\"}";
+  private static final MessageUpdate UPDATE = new MessageUpdate("Agent-77",
+      " Processed by Agent: Agent-77", Timestamp.from(Instant.parse("2024-10-11T08:00:00Z")));
+
+  @BeforeEach
+  void setUp() {
+    binaryMessageHandler = new BinaryMessageHandler();
+  }
+
+  @Test
+  void testJsonRoundTripIsLossless() throws Exception {
+    JsonMessageHandler jsonMessageHandler = new JsonMessageHandler();
+    JsonMessage jsonMessageObject = jsonMessageHandler.parse(VALID_JSON);
+
+    byte[] binaryMessage = binaryMessageHandler.toBytes(jsonMessageObject);
+    JsonMessage roundTripped = binaryMessageHandler.parse(binaryMessage).copyTo(new JsonMessage());
+
+    assertEquals(jsonMessageHandler.toJsonString(jsonMessageObject),
+        jsonMessageHandler.toJsonString(roundTripped));
+    assertTrue(binaryMessage.length * 2 < VALID_JSON.getBytes(StandardCharsets.UTF_8).length);
+  }
+
+  @Test
+  void testXmlRoundTripKeepsSubMillisecondPrecision() throws Exception {
+    XmlMessage xmlMessageObject = new XmlMessage();
+    xmlMessageObject.setMessageId(Integer.MAX_VALUE);
+    xmlMessageObject.setMessageTitle("TestTitle");
+    xmlMessageObject.setMessageBody("TestBody");
+    xmlMessageObject.setCreationTime(
+        Timestamp.from(Instant.parse("1969-07-20T20:17:40.123456789Z")));
+    xmlMessageObject.setLastModified(Timestamp.from(Instant.parse("2024-10-10T11:45:00.5Z")));
+    xmlMessageObject.setLastAgent("Agent-32");
+    xmlMessageObject.setStatus("Active");
+
+    BinaryMessage binaryMessageObject = binaryMessageHandler.parse(
+        binaryMessageHandler.toBinaryString(xmlMessageObject));
+
+    assertEquals(Integer.MAX_VALUE, binaryMessageObject.getMessageId());
+    assertEquals(xmlMessageObject.getCreationTime(), binaryMessageObject.getCreationTime());
+    assertEquals(xmlMessageObject.getLastModified(), binaryMessageObject.getLastModified());
+    assertEquals("Active", binaryMessageObject.getStatus());
+  }
+
+  @Test
+  void testTransformAppliesUpdate() throws Exception {
+    String binaryMessage = binaryMessageHandler.toBinaryString(
+        new JsonMessageHandler().parse(VALID_JSON));
+
+    BinaryMessage transformed = binaryMessageHandler.parse(
+        binaryMessageHandler.transform(binaryMessage, UPDATE));
+
+    assertEquals("Test Body é中 Processed by Agent: Agent-77",
+        transformed.getMessageBody());
+    assertEquals("Agent-77", transformed.getLastAgent());
+    assertEquals(UPDATE.lastModified(), transformed.getLastModified());
+  }
+
+  @Test
+  void testParseRejectsMalformedMessages() throws Exception {
+    byte[] binaryMessage = binaryMessageHandler.toBytes(new JsonMessageHandler().parse(VALID_JSON));
+
+    assertThrows(InvalidBinaryMessageException.class,
+        () -> binaryMessageHandler.parse(Arrays.copyOf(binaryMessage, binaryMessage.length - 1)));
+    assertThrows(InvalidBinaryMessageException.class,
+        () -> binaryMessageHandler.parse(Arrays.copyOf(binaryMessage, binaryMessage.length + 1)));
+    assertThrows(InvalidBinaryMessageException.class, () -> binaryMessageHandler.parse("%%%"));
+    assertThrows(InvalidBinaryMessageException.class,
+        () -> binaryMessageHandler.toBytes(new BinaryMessage()));
+  }
+
+  @Test
+  void testParseRejectsNegativeAndOverlongVarints() {
+    byte[] minusOne = {-1, -1, -1, -1, -1, -1, -1, -1, -1, 1};
+    byte[] overflowing = {-1, -1, -1, -1, -1, -1, -1, -1, -1, 2};
+    byte[] overlong = {-128, -128, -128, -128, -128, -128, -128, -128, -128, -128, 0};
+
+    // a negative MessageID, string length or sub-millisecond nanos
+    assertMalformed("MessageID", new byte[] {1, 0}, minusOne, new byte[] {0, 0, 0, 0});
+    assertMalformed("invalid length", new byte[] {1, 0, 1}, minusOne, minusOne);
+    assertMalformed("invalid nanos", new byte[] {1, 5, 1, 0, 0, 2}, minusOne, new byte[] {0, 0});
+    // a varint overflowing a long or longer than ten bytes
+    assertMalformed("malformed varint", new byte[] {1, 0}, overflowing, new byte[] {0, 0, 0, 0});
+    assertMalformed("malformed varint", new byte[] {1, 0}, overlong, new byte[] {0, 0, 0, 0});
+  }
+
+  private void assertMalformed(String expectedMessage, byte[]... parts) {
+    byte[] binaryMessage = new byte[Arrays.stream(parts).mapToInt(part -> part.length).sum()];
+    int position = 0;
+    for (byte[] part : parts) {
+      System.arraycopy(part, 0, binaryMessage, position, part.length);
+      position += part.length;
+    }
+    InvalidBinaryMessageException exception = assertThrows(InvalidBinaryMessageException.class,
+        () -> binaryMessageHandler.parse(binaryMessage));
+    assertTrue(exception.getMessage().contains(expectedMessage), exception.getMessage());
+  }
+}
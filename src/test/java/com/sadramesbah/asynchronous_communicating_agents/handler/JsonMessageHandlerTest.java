@@ -2,10 +2,15 @@ package com.sadramesbah.asynchronous_communicating_agents.handler;
 
 import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidJsonMessageException;
 import com.sadramesbah.asynchronous_communicating_agents.message.JsonMessage;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageUpdate;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import java.time.Instant;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -17,6 +22,13 @@ class JsonMessageHandlerTest {
   private static final String MESSAGE_TITLE = "TestTitle";
   private static final String MESSAGE_BODY = "TestBody";
   private static final String LAST_AGENT_ID = "Agent-32";
+  private static final String VALID_JSON =
+      "{\"MessageID\":14,\"MessageTitle\":\"TestTitle\",\"MessageBody\":\"TestBody\","
+          + "\"ExtraField\":{\"Nested\":[1,2]},\"CreationTime\":\"2024-10-10T10:25:00Z\","
+          + "\"LastModified\":\"2024-10-10T11:45:00Z\",\"LastAgent\":\"Agent-32\","
+          + "\"Status\":\"Active\"}";
+  private static final MessageUpdate UPDATE = new MessageUpdate("Agent-77",
+      " Processed by Agent: Agent-77", Timestamp.from(Instant.parse("2024-10-11T08:00:00Z")));
 
   @BeforeEach
   void setUp() {
@@ -126,4 +138,126 @@ class JsonMessageHandlerTest {
     assertThrows(InvalidJsonMessageException.class,
         () -> jsonMessageHandler.toJsonString(jsonMessageObject));
   }
+
+  @Test
+  void testTransformRewritesOnlyUpdatedFields() throws IOException, InvalidJsonMessageException {
+    String transformed = jsonMessageHandler.transform(VALID_JSON, UPDATE);
+    assertTrue(transformed.contains(
+        "\"MessageBody\":\"TestBody Processed by Agent: Agent-77\""));
+    assertTrue(transformed.contains("\"LastAgent\":\"Agent-77\""));
+    assertTrue(transformed.contains("\"ExtraField\":{\"Nested\":[1,2]}"));
+    assertTrue(transformed.contains("\"CreationTime\":\"2024-10-10T10:25:00Z\""));
+
+    JsonMessage jsonMessageObject = jsonMessageHandler.parse(transformed);
+    assertEquals(14, jsonMessageObject.getMessageId());
+    assertEquals(UPDATE.lastModified(), jsonMessageObject.getLastModified());
+    assertEquals(MESSAGE_TITLE, jsonMessageObject.getMessageTitle());
+  }
+
+  @Test
+  void testTransformBytesAndByteBuffer() throws IOException, InvalidJsonMessageException {
+    String expected = jsonMessageHandler.transform(VALID_JSON, UPDATE);
+    byte[] jsonInBytes = VALID_JSON.getBytes(StandardCharsets.UTF_8);
+
+    assertEquals(expected,
+        new String(jsonMessageHandler.transform(jsonInBytes, UPDATE), StandardCharsets.UTF_8));
+
+    ByteBuffer directBuffer = ByteBuffer.allocateDirect(jsonInBytes.length);
+    directBuffer.put(jsonInBytes).flip();
+    assertEquals(expected,
+        new String(jsonMessageHandler.transform(directBuffer, UPDATE), StandardCharsets.UTF_8));
+    assertEquals(0, directBuffer.position());
+  }
+
+  @Test
+  void testTransformInvalidJson() {
+    String missingStatus = VALID_JSON.replace(",\"Status\":\"Active\"", "");
+    String nullTitle = VALID_JSON.replace("\"TestTitle\"", "null");
+    String zeroMessageId = VALID_JSON.replace("\"MessageID\":14", "\"MessageID\":0");
+    assertThrows(InvalidJsonMessageException.class,
+        () -> jsonMessageHandler.transform(missingStatus, UPDATE));
+    assertThrows(InvalidJsonMessageException.class,
+        () -> jsonMessageHandler.transform(nullTitle, UPDATE));
+    assertThrows(InvalidJsonMessageException.class,
+        () -> jsonMessageHandler.transform(zeroMessageId, UPDATE));
+    assertThrows(InvalidJsonMessageException.class,
+        () -> jsonMessageHandler.transform("[]", UPDATE));
+    assertThrows(IOException.class, () -> jsonMessageHandler.transform("{\"MessageID\":", UPDATE));
+  }
+
+  @Test
+  void testBytesAndStreams() throws IOException, InvalidJsonMessageException {
+    byte[] jsonInBytes = VALID_JSON.getBytes(StandardCharsets.UTF_8);
+    JsonMessage jsonMessageObject = jsonMessageHandler.parse(jsonInBytes);
+    assertEquals(14, jsonMessageObject.getMessageId());
+    assertEquals(jsonMessageHandler.toJsonString(jsonMessageObject),
+        new String(jsonMessageHandler.toJsonBytes(jsonMessageObject), StandardCharsets.UTF_8));
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    jsonMessageHandler.transform(new ByteArrayInputStream(jsonInBytes), outputStream, UPDATE);
+    assertEquals(jsonMessageHandler.transform(VALID_JSON, UPDATE),
+        outputStream.toString(StandardCharsets.UTF_8));
+    assertEquals(UPDATE.agentId(), jsonMessageHandler.parse(
+        new ByteArrayInputStream(outputStream.toByteArray())).getLastAgent());
+  }
+
+  @Test
+  void testTransformValidatesLikeBinding() throws IOException, InvalidJsonMessageException {
+    for (String timestamp : new String[] {"\"\"", "\"garbage\"", "true", "{}", "[]", "null"}) {
+      for (String field : new String[] {"CreationTime", "LastModified"}) {
+        String json = VALID_JSON.replaceFirst("\"" + field + "\":\"[^\"]*\"",
+            "\"" + field + "\":" + timestamp);
+        assertThrows(Exception.class, () -> jsonMessageHandler.parse(json), json);
+        assertThrows(InvalidJsonMessageException.class,
+            () -> jsonMessageHandler.transform(json, UPDATE), json);
+      }
+    }
+
+    // numeric strings and epoch milliseconds bind, so the transform takes them as well
+    String coerced = VALID_JSON.replace("\"MessageID\":14", "\"MessageID\":\"14\"")
+        .replace("\"2024-10-10T10:25:00Z\"", "1728555900000");
+    assertEquals(14, jsonMessageHandler.parse(coerced).getMessageId());
+    String transformed = jsonMessageHandler.transform(coerced, UPDATE);
+    assertTrue(transformed.contains("\"MessageID\":\"14\""));
+    // fields that are not rewritten are copied as they came
+    assertTrue(transformed.contains("\"CreationTime\":1728555900000"), transformed);
+    String notANumber = coerced.replace("\"14\"", "\"fourteen\"");
+    assertThrows(InvalidJsonMessageException.class,
+        () -> jsonMessageHandler.transform(notANumber, UPDATE));
+  }
+
+  @Test
+  void testTransformReadsTimestampsLikeBinding() throws IOException, InvalidJsonMessageException {
+    for (String timestamp : new String[] {"\"2024-10-10T10:25Z\"", "\"2024-10-10T10:25\"",
+        "\"2024-10-10\"", "\"2024-10-10T10:25:00.123456+02:00\"", "\"2024-10-10T10:25:00+0200\"",
+        "\"2024-10-10T10:25:00-02\"", "\" 1728555900000 \"", "\"-5\"", "1728555900000",
+        "\"Thu, 10 Oct 2024 10:25:00 GMT\"", "\"2024-13-45T10:25:00Z\"", "\"2024-10-10 10:25\"",
+        "\"2024-10-10T1:25:00Z\"", "\"20241010\"", "\"garbage\""}) {
+      String json = VALID_JSON.replace("\"2024-10-10T10:25:00Z\"", timestamp);
+      JsonMessage bound;
+      try {
+        bound = jsonMessageHandler.parse(json);
+      } catch (IOException bindingException) {
+        assertThrows(InvalidJsonMessageException.class,
+            () -> jsonMessageHandler.transform(json, UPDATE), json);
+        continue;
+      }
+      String transformed = jsonMessageHandler.transform(json, UPDATE);
+      assertTrue(transformed.contains("\"CreationTime\":" + timestamp), json);
+      assertEquals(bound.getCreationTime(),
+          jsonMessageHandler.parse(transformed).getCreationTime(), json);
+    }
+  }
+
+  @Test
+  void testDefaultOutputWritesEpochMillis() throws IOException, InvalidJsonMessageException {
+    JsonMessage jsonMessageObject = jsonMessageHandler.parse(VALID_JSON);
+    String bound = jsonMessageHandler.toJsonString(jsonMessageObject);
+    assertTrue(bound.contains("\"CreationTime\":1728555900000"), bound);
+    assertTrue(bound.contains("\"LastModified\":1728560700000"), bound);
+
+    String streamed = jsonMessageHandler.transform(VALID_JSON, UPDATE);
+    assertTrue(streamed.contains("\"LastModified\":" + UPDATE.lastModified().getTime()),
+        streamed);
+  }
 }
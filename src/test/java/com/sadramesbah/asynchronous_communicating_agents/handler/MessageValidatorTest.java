@@ -0,0 +1,204 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import com.sadramesbah.asynchronous_communicating_agents.exception.InvalidJsonMessageException;
+import com.sadramesbah.asynchronous_communicating_agents.message.JsonMessage;
+import com.sadramesbah.asynchronous_communicating_agents.message.Message;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageUpdate;
+import com.sadramesbah.asynchronous_communicating_agents.message.XmlMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.soap.SOAPException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageValidatorTest {
+
+  private static final MessageUpdate UPDATE = new MessageUpdate("Agent-77",
+      " Processed by Agent: Agent-77", Timestamp.from(Instant.parse("2024-10-11T08:00:00Z")));
+
+  @Test
+  void testReportsFirstFailingField() {
+    MessageValidator validator = MessageValidator.defaults();
+    XmlMessage xmlMessage = validMessage(new XmlMessage());
+    assertEquals(ValidationResult.VALID, validator.validate(xmlMessage));
+    assertEquals(ValidationResult.MISSING_MESSAGE, validator.validate(null));
+
+    xmlMessage.setLastAgent("null");
+    assertEquals(ValidationResult.MISSING_LAST_AGENT, validator.validate(xmlMessage));
+    assertEquals("LastAgent", validator.validate(xmlMessage).getField());
+
+    xmlMessage.setMessageId(0);
+    assertEquals(ValidationResult.INVALID_MESSAGE_ID, validator.validate(xmlMessage));
+  }
+
+  @Test
+  void testDeclarativeRules() {
+    MessageValidator validator = MessageValidator.defaults()
+        .withMaxBodyLength(8)
+        .withAllowedStatuses(List.of("Active", "Archived"));
+    JsonMessage jsonMessage = validMessage(new JsonMessage());
+    assertEquals(ValidationResult.VALID, validator.validate(jsonMessage));
+
+    jsonMessage.setStatus("Deleted");
+    assertEquals(ValidationResult.STATUS_NOT_ALLOWED, validator.validate(jsonMessage));
+
+    jsonMessage.setMessageBody("Longer than eight");
+    assertEquals(ValidationResult.MESSAGE_BODY_TOO_LONG, validator.validate(jsonMessage));
+    assertTrue(MessageValidator.defaults().validate(jsonMessage).isValid());
+  }
+
+  @Test
+  void testStreamingTransformsApplyRules() throws JAXBException {
+    MessageValidator validator = MessageValidator.defaults()
+        .withAllowedStatuses(List.of("Active"));
+    String json = "{\"MessageID\":14,\"MessageTitle\":\"Title\",\"MessageBody\":\"Body\","
+        + "\"CreationTime\":\"2024-10-10T10:25:00Z\",\"LastModified\":\"2024-10-10T11:45:00Z\","
+        + "\"LastAgent\":\"Agent-32\",\"Status\":\"Deleted\"}";
+    InvalidJsonMessageException jsonException = assertThrows(InvalidJsonMessageException.class,
+        () -> new JsonMessageHandler(validator).transform(json, UPDATE));
+    assertTrue(jsonException.getMessage().endsWith(ValidationResult.STATUS_NOT_ALLOWED.name()));
+
+    String xml = "<Message><MessageID>14</MessageID><MessageTitle>Title</MessageTitle>"
+        + "<MessageBody>Body</MessageBody><CreationTime>2024-10-10T10:25:00Z</CreationTime>"
+        + "<LastModified>2024-10-10T11:45:00Z</LastModified><LastAgent>Agent-32</LastAgent>"
+        + "<Status>Deleted</Status></Message>";
+    XmlMessageHandler xmlHandler = new XmlMessageHandler(validator);
+    JAXBException xmlException = assertThrows(JAXBException.class,
+        () -> xmlHandler.transform(xml, UPDATE));
+    assertTrue(xmlException.getMessage().endsWith(ValidationResult.STATUS_NOT_ALLOWED.name()));
+    XmlMessageHandler defaultXmlHandler = new XmlMessageHandler();
+    assertNotNull(defaultXmlHandler.transform(xml, UPDATE));
+
+    String missingAgent = xml.replace("<LastAgent>Agent-32</LastAgent>", "");
+    JAXBException missingException = assertThrows(JAXBException.class,
+        () -> defaultXmlHandler.transform(missingAgent, UPDATE));
+    assertTrue(missingException.getMessage().endsWith(ValidationResult.MISSING_LAST_AGENT.name()));
+  }
+
+  private static <T extends Message> T validMessage(T message) {
+    message.setMessageId(14);
+    message.setMessageTitle("Title");
+    message.setMessageBody("Body");
+    message.setCreationTime(Timestamp.from(Instant.parse("2024-10-10T10:25:00Z")));
+    message.setLastModified(Timestamp.from(Instant.parse("2024-10-10T11:45:00Z")));
+    message.setLastAgent("Agent-32");
+    message.setStatus("Active");
+    return message;
+  }
+
+  @Test
+  void testStrictModeChecksJsonSchemaWhileReading() throws Exception {
+    JsonMessageHandler strictHandler = new JsonMessageHandler(
+        MessageValidator.defaults().withSchemaValidation(true));
+    String json = "{\"MessageID\":14,\"MessageTitle\":\"Title\",\"MessageBody\":\"Body\","
+        + "\"CreationTime\":\"2024-10-10T10:25:00Z\",\"LastModified\":\"2024-10-10T11:45:00Z\","
+        + "\"LastAgent\":\"Agent-32\",\"Status\":\"Active\",\"Extra\":{\"Nested\":[1]}}";
+    assertEquals(14, strictHandler.parse(json).getMessageId());
+    assertEquals(14, strictHandler.parse(json.getBytes(StandardCharsets.UTF_8)).getMessageId());
+    assertTrue(strictHandler.transform(json, UPDATE).contains("Agent-77"));
+
+    String stringId = json.replace("\"MessageID\":14", "\"MessageID\":\"14\"");
+    assertNotNull(new JsonMessageHandler().parse(stringId));
+    InvalidJsonMessageException typeException = assertThrows(InvalidJsonMessageException.class,
+        () -> strictHandler.parse(stringId));
+    assertTrue(typeException.getMessage().endsWith("MessageID is not of type integer"));
+
+    String localTime = json.replace("2024-10-10T10:25:00Z", "2024-10-10 10:25");
+    InvalidJsonMessageException formatException = assertThrows(
+        InvalidJsonMessageException.class, () -> strictHandler.transform(localTime, UPDATE));
+    assertTrue(formatException.getMessage().endsWith("CreationTime is not a date-time"));
+
+    String missingStatus = json.replace(",\"Status\":\"Active\"", "");
+    InvalidJsonMessageException requiredException = assertThrows(
+        InvalidJsonMessageException.class, () -> strictHandler.parse(missingStatus));
+    assertTrue(requiredException.getMessage().endsWith("Status is required"));
+  }
+
+  @Test
+  void testStrictModeAcceptsNonStrictOutput() throws Exception {
+    JsonMessageHandler handler = new JsonMessageHandler();
+    JsonMessageHandler strictHandler = new JsonMessageHandler(
+        MessageValidator.defaults().withSchemaValidation(true));
+    String json = "{\"MessageID\":14,\"MessageTitle\":\"Title\",\"MessageBody\":\"Body\","
+        + "\"CreationTime\":\"2024-10-10T10:25:00Z\",\"LastModified\":\"2024-10-10T11:45:00Z\","
+        + "\"LastAgent\":\"Agent-32\",\"Status\":\"Active\"}";
+
+    // agents without schema validation write epoch milliseconds, which the schema accepts for
+    // its date-time properties, on the bound and streaming paths alike
+    String bound = handler.toJsonString(handler.parse(json));
+    String streamed = handler.transform(json, UPDATE);
+    assertTrue(bound.contains("\"LastModified\":1728560700000"), bound);
+    assertTrue(streamed.contains("\"LastModified\":1728633600000"), streamed);
+    assertEquals(14, strictHandler.parse(bound).getMessageId());
+    assertEquals(14, strictHandler.parse(streamed).getMessageId());
+    assertTrue(strictHandler.transform(streamed, UPDATE)
+        .contains("\"LastModified\":\"2024-10-11T08:00:00Z\""));
+
+    String decimal = bound.replace("1728560700000", "1728560700000.5");
+    InvalidJsonMessageException typeException = assertThrows(InvalidJsonMessageException.class,
+        () -> strictHandler.parse(decimal));
+    assertTrue(typeException.getMessage().endsWith("LastModified is not of type string"));
+  }
+
+  @Test
+  void testJsonSchemaRejectsUnsupportedKeywords() throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+    String schema = "{\"$schema\":\"http://json-schema.org/draft-07/schema#\",\"type\":\"object\","
+        + "\"properties\":{\"Status\":{\"type\":\"string\"%s}}%s}";
+    assertNotNull(MessageSchemas.JsonSchema.compile(objectMapper.readTree(
+        schema.formatted(",\"description\":\"Status\"", ",\"required\":[\"Status\"]"))));
+
+    for (String keyword : List.of(",\"enum\":[\"Active\"]", ",\"minLength\":1",
+        ",\"pattern\":\"^A\"", ",\"format\":\"email\"")) {
+      IllegalStateException exception = assertThrows(IllegalStateException.class,
+          () -> MessageSchemas.JsonSchema.compile(objectMapper.readTree(
+              schema.formatted(keyword, ""))), keyword);
+      assertTrue(exception.getMessage().endsWith("of Status"), exception.getMessage());
+    }
+    IllegalStateException exception = assertThrows(IllegalStateException.class,
+        () -> MessageSchemas.JsonSchema.compile(objectMapper.readTree(
+            schema.formatted("", ",\"additionalProperties\":false"))));
+    assertEquals("Unsupported JSON schema keyword additionalProperties", exception.getMessage());
+  }
+
+  @Test
+  void testStrictModeChecksXmlSchemaWhileReading() throws Exception {
+    MessageValidator strictValidator = MessageValidator.defaults().withSchemaValidation(true);
+    assertTrue(strictValidator.isSchemaValidation());
+    assertFalse(MessageValidator.defaults().isSchemaValidation());
+    XmlMessageHandler strictXmlHandler = new XmlMessageHandler(strictValidator);
+    String xml = "<Message><MessageID>14</MessageID><MessageTitle>Title</MessageTitle>"
+        + "<MessageBody>Body</MessageBody><CreationTime>2024-10-10T10:25:00Z</CreationTime>"
+        + "<LastModified>2024-10-10T11:45:00Z</LastModified><LastAgent>Agent-32</LastAgent>"
+        + "<Status>Active</Status></Message>";
+    assertEquals(14, strictXmlHandler.parse(xml).getMessageId());
+    assertTrue(strictXmlHandler.transform(xml, UPDATE).contains("<LastAgent>Agent-77</LastAgent>"));
+
+    // the streaming transform accepts fields in any order, the schema does not
+    String reordered = xml.replace("<MessageTitle>Title</MessageTitle>", "")
+        .replace("</Message>", "<MessageTitle>Title</MessageTitle></Message>");
+    assertNotNull(new XmlMessageHandler().transform(reordered, UPDATE));
+    assertThrows(JAXBException.class, () -> strictXmlHandler.transform(reordered, UPDATE));
+    assertThrows(JAXBException.class, () -> strictXmlHandler.parse(reordered));
+
+    SoapMessageHandler strictSoapHandler = new SoapMessageHandler(strictValidator);
+    String envelope = "<soapenv:Envelope "
+        + "xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Header/>"
+        + "<soapenv:Body>%s</soapenv:Body></soapenv:Envelope>";
+    assertTrue(strictSoapHandler.transform(envelope.formatted(xml), UPDATE)
+        .contains("<LastAgent>Agent-77</LastAgent>"));
+    assertEquals(14, strictSoapHandler.parseInnerMessage(envelope.formatted(xml)).getMessageId());
+
+    String textId = envelope.formatted(xml.replace(">14<", ">fourteen<"));
+    SOAPException soapException = assertThrows(SOAPException.class,
+        () -> strictSoapHandler.transform(textId, UPDATE));
+    assertTrue(soapException.getCause().getMessage().contains("does not match the schema"));
+    assertThrows(SOAPException.class, () -> strictSoapHandler.parseInnerMessage(textId));
+    assertThrows(SOAPException.class, () -> strictSoapHandler.parseContext(textId));
+  }
+}
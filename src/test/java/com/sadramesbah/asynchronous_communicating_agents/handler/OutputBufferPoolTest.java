@@ -0,0 +1,60 @@
+package com.sadramesbah.asynchronous_communicating_agents.handler;
+
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputBufferPoolTest {
+
+  @Test
+  void testReleasedBufferIsReusedEmpty() {
+    OutputBufferPool outputBuffers = new OutputBufferPool(16, 1024, 2);
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    byte[] message = "grows past the initial capacity".getBytes(StandardCharsets.UTF_8);
+    buffer.write(message, 0, message.length);
+    assertArrayEquals(message, buffer.toByteArray());
+    int grownCapacity = buffer.capacity();
+
+    outputBuffers.release(buffer);
+    assertEquals(1, outputBuffers.idleBuffers());
+
+    OutputBufferPool.Buffer reused = outputBuffers.acquire();
+    assertSame(buffer, reused);
+    assertEquals(0, reused.size());
+    assertEquals(grownCapacity, reused.capacity());
+    assertEquals(0, outputBuffers.idleBuffers());
+  }
+
+  @Test
+  void testOversizedBuffersAreShrunkOrDropped() {
+    OutputBufferPool outputBuffers = new OutputBufferPool(16, 1024, 2);
+    OutputBufferPool.Buffer oversized = outputBuffers.acquire();
+    oversized.write(new byte[2048], 0, 2048);
+    outputBuffers.release(oversized);
+    assertEquals(0, outputBuffers.idleBuffers());
+
+    // a buffer that grew for one large message shrinks once the average is far below it
+    OutputBufferPool.Buffer buffer = outputBuffers.acquire();
+    for (int message = 0; message < 32; message++) {
+      buffer.write(new byte[8], 0, 8);
+      outputBuffers.release(buffer);
+      buffer = outputBuffers.acquire();
+    }
+    buffer.write(new byte[1000], 0, 1000);
+    outputBuffers.release(buffer);
+    assertTrue(outputBuffers.acquire().capacity() < 1000);
+  }
+
+  @Test
+  void testPoolKeepsAtMostMaxIdleBuffers() {
+    OutputBufferPool outputBuffers = new OutputBufferPool(16, 1024, 2);
+    OutputBufferPool.Buffer first = outputBuffers.acquire();
+    OutputBufferPool.Buffer second = outputBuffers.acquire();
+    OutputBufferPool.Buffer third = outputBuffers.acquire();
+    outputBuffers.release(first);
+    outputBuffers.release(second);
+    outputBuffers.release(third);
+    assertEquals(2, outputBuffers.idleBuffers());
+  }
+}
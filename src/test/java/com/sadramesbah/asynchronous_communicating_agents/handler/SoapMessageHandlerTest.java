@@ -1,11 +1,23 @@
 package com.sadramesbah.asynchronous_communicating_agents.handler;
 
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageUpdate;
+import com.sadramesbah.asynchronous_communicating_agents.message.XmlMessage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.soap.SOAPException;
 import jakarta.xml.soap.SOAPMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,6 +39,10 @@ class SoapMessageHandlerTest {
   private static final String MESSAGE_END_TAG = "</Message>";
   private static final String SOAP_BODY_END_TAG = "</soapenv:Body>";
   private static final String SOAP_ENVELOPE_END_TAG = "</soapenv:Envelope>";
+  private static final String SECURITY_TOKEN =
+      "<SecurityToken xmlns=\"https://realuri.example.com/security\">123456789</SecurityToken>";
+  private static final MessageUpdate UPDATE = new MessageUpdate("Agent-77",
+      " Processed by Agent: Agent-77", Timestamp.from(Instant.parse("2024-11-04T08:00:00Z")));
 
   @BeforeEach
   void setUp() throws JAXBException, SOAPException {
@@ -133,4 +149,301 @@ class SoapMessageHandlerTest {
     String soapMessageInString = "";
     assertThrows(SOAPException.class, () -> soapMessageHandler.parse(soapMessageInString));
   }
-}
\ No newline at end of file
+
+  @Test
+  void testConcurrentParseAndConvert() throws Exception {
+    int threads = 16;
+    int iterationsPerThread = 100;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int thread = 0; thread < threads; thread++) {
+        int threadIndex = thread;
+        results.add(executor.submit(() -> {
+          for (int iteration = 1; iteration <= iterationsPerThread; iteration++) {
+            int messageId = threadIndex * iterationsPerThread + iteration;
+            String soapMessageInString = new StringBuilder()
+                .append(SOAP_ENVELOPE_TAG)
+                .append(SOAP_HEADER_END_TAG)
+                .append(SOAP_BODY_TAG)
+                .append(MESSAGE_TAG)
+                .append("<MessageID>").append(messageId).append("</MessageID>")
+                .append(MESSAGE_TITLE)
+                .append(MESSAGE_BODY)
+                .append(CREATION_TIME)
+                .append(LAST_MODIFIED_TIME)
+                .append("<LastAgent>Agent-").append(threadIndex).append("</LastAgent>")
+                .append(ACTIVE_STATUS)
+                .append(MESSAGE_END_TAG)
+                .append(SOAP_BODY_END_TAG)
+                .append(SOAP_ENVELOPE_END_TAG)
+                .toString();
+
+            SOAPMessage soapMessage = soapMessageHandler.parse(soapMessageInString);
+            assertEquals(messageId,
+                soapMessageHandler.extractInnerXmlMessage(soapMessage).getMessageId());
+            String soapString = soapMessageHandler.toSoapString(soapMessage);
+            assertTrue(soapString.contains("<MessageID>" + messageId + "</MessageID>"));
+            assertTrue(soapString.contains("<LastAgent>Agent-" + threadIndex + "</LastAgent>"));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testTransformPlainEnvelope() throws SOAPException, IOException {
+    String soapMessageInString = new StringBuilder()
+        .append(SOAP_ENVELOPE_TAG)
+        .append(SOAP_HEADER_END_TAG)
+        .append(SOAP_BODY_TAG)
+        .append(MESSAGE_TAG)
+        .append(MESSAGE_ID)
+        .append(MESSAGE_TITLE)
+        .append(MESSAGE_BODY)
+        .append(CREATION_TIME)
+        .append(LAST_MODIFIED_TIME)
+        .append(LAST_AGENT_ID)
+        .append(ACTIVE_STATUS)
+        .append(MESSAGE_END_TAG)
+        .append(SOAP_BODY_END_TAG)
+        .append(SOAP_ENVELOPE_END_TAG)
+        .toString();
+
+    String transformed = soapMessageHandler.transform(soapMessageInString, UPDATE);
+    assertTrue(transformed.contains("<soapenv:Header>" + SECURITY_TOKEN + "</soapenv:Header>"));
+    assertTrue(transformed.contains(
+        "<MessageBody>Test Body Processed by Agent: Agent-77</MessageBody>"));
+    assertTrue(transformed.contains("<LastAgent>Agent-77</LastAgent>"));
+    assertTrue(transformed.contains("<LastModified>2024-11-04T08:00:00Z</LastModified>"));
+    assertTrue(transformed.contains(CREATION_TIME));
+
+    SOAPMessage soapMessage = soapMessageHandler.parse(transformed);
+    assertEquals("Agent-77",
+        soapMessageHandler.extractInnerXmlMessage(soapMessage).getLastAgent());
+  }
+
+  @Test
+  void testTransformEnvelopeWithoutHeader() throws SOAPException, IOException {
+    String soapMessageInString = new StringBuilder()
+        .append(SOAP_ENVELOPE_TAG)
+        .append(SOAP_BODY_TAG)
+        .append(MESSAGE_TAG)
+        .append(MESSAGE_ID)
+        .append(MESSAGE_TITLE)
+        .append(MESSAGE_BODY)
+        .append(CREATION_TIME)
+        .append(LAST_MODIFIED_TIME)
+        .append(LAST_AGENT_ID)
+        .append(ACTIVE_STATUS)
+        .append(MESSAGE_END_TAG)
+        .append(SOAP_BODY_END_TAG)
+        .append(SOAP_ENVELOPE_END_TAG)
+        .toString();
+
+    String transformed = soapMessageHandler.transform(soapMessageInString, UPDATE);
+    assertTrue(transformed.contains(
+        "<soapenv:Header>" + SECURITY_TOKEN + "</soapenv:Header>" + SOAP_BODY_TAG));
+  }
+
+  @Test
+  void testTransformDefaultNamespaceEnvelopeWithoutHeader() throws SOAPException, IOException {
+    String soapMessageInString = new StringBuilder()
+        .append("<Envelope xmlns=\"http://schemas.xmlsoap.org/soap/envelope/\"><Body>")
+        .append("<Message xmlns=\"\">")
+        .append(MESSAGE_ID)
+        .append(MESSAGE_TITLE)
+        .append(MESSAGE_BODY)
+        .append(CREATION_TIME)
+        .append(LAST_MODIFIED_TIME)
+        .append(LAST_AGENT_ID)
+        .append(ACTIVE_STATUS)
+        .append(MESSAGE_END_TAG)
+        .append("</Body></Envelope>")
+        .toString();
+
+    String transformed = soapMessageHandler.transform(soapMessageInString, UPDATE);
+    assertTrue(transformed.contains("<Header>" + SECURITY_TOKEN + "</Header><Body>"),
+        transformed);
+    assertTrue(transformed.contains("<LastAgent>Agent-77</LastAgent>"), transformed);
+    assertEquals("Agent-77", soapMessageHandler.extractInnerXmlMessage(
+        soapMessageHandler.parse(transformed)).getLastAgent());
+    assertArrayEquals(transformed.getBytes(StandardCharsets.UTF_8), soapMessageHandler.transform(
+        soapMessageInString.getBytes(StandardCharsets.UTF_8), UPDATE));
+  }
+
+  @Test
+  void testTransformInvalidEnvelopes() {
+    String faultMessage = new StringBuilder()
+        .append(SOAP_ENVELOPE_TAG)
+        .append(SOAP_BODY_TAG)
+        .append("<soapenv:Fault><faultcode>soapenv:Server</faultcode>")
+        .append("<faultstring>Failure</faultstring></soapenv:Fault>")
+        .append(SOAP_BODY_END_TAG)
+        .append(SOAP_ENVELOPE_END_TAG)
+        .toString();
+    String missingFieldsMessage = new StringBuilder()
+        .append(SOAP_ENVELOPE_TAG)
+        .append(SOAP_HEADER_END_TAG)
+        .append(SOAP_BODY_TAG)
+        .append(MESSAGE_TAG)
+        .append(MESSAGE_ID)
+        .append(MESSAGE_TITLE)
+        .append(MESSAGE_END_TAG)
+        .append(SOAP_BODY_END_TAG)
+        .append(SOAP_ENVELOPE_END_TAG)
+        .toString();
+
+    assertThrows(SOAPException.class, () -> soapMessageHandler.transform(faultMessage, UPDATE));
+    assertThrows(SOAPException.class,
+        () -> soapMessageHandler.transform(missingFieldsMessage, UPDATE));
+    assertThrows(SOAPException.class, () -> soapMessageHandler.transform("", UPDATE));
+
+    String badTimestampMessage = new StringBuilder()
+        .append(SOAP_ENVELOPE_TAG)
+        .append(SOAP_HEADER_END_TAG)
+        .append(SOAP_BODY_TAG)
+        .append(MESSAGE_TAG)
+        .append(MESSAGE_ID)
+        .append(MESSAGE_TITLE)
+        .append(MESSAGE_BODY)
+        .append("<CreationTime>garbage</CreationTime>")
+        .append(LAST_MODIFIED_TIME)
+        .append(LAST_AGENT_ID)
+        .append(ACTIVE_STATUS)
+        .append(MESSAGE_END_TAG)
+        .append(SOAP_BODY_END_TAG)
+        .append(SOAP_ENVELOPE_END_TAG)
+        .toString();
+    assertThrows(SOAPException.class,
+        () -> soapMessageHandler.transform(badTimestampMessage, UPDATE));
+  }
+
+  @Test
+  void testContextKeepsInnerMessageInSyncWithUpdates() throws SOAPException, IOException {
+    String soapMessageInString = new StringBuilder()
+        .append(SOAP_ENVELOPE_TAG)
+        .append(SOAP_HEADER_END_TAG)
+        .append(SOAP_BODY_TAG)
+        .append(MESSAGE_TAG)
+        .append(MESSAGE_ID)
+        .append(MESSAGE_TITLE)
+        .append(MESSAGE_BODY)
+        .append(CREATION_TIME)
+        .append(LAST_MODIFIED_TIME)
+        .append(LAST_AGENT_ID)
+        .append(ACTIVE_STATUS)
+        .append(MESSAGE_END_TAG)
+        .append(SOAP_BODY_END_TAG)
+        .append(SOAP_ENVELOPE_END_TAG)
+        .toString();
+
+    SoapMessageContext context = soapMessageHandler.parseContext(soapMessageInString);
+    assertEquals(106, context.getInnerMessage().getMessageId());
+    assertEquals("Test Body", context.getMessageBodyElement().getTextContent());
+
+    soapMessageHandler.applyUpdate(context, UPDATE);
+    assertEquals("Test Body Processed by Agent: Agent-77",
+        context.getInnerMessage().getMessageBody());
+    assertEquals("Agent-77", context.getInnerMessage().getLastAgent());
+    assertEquals("Agent-77", context.getLastAgentElement().getTextContent());
+
+    String soapString = soapMessageHandler.toSoapString(context);
+    assertTrue(soapString.contains(
+        "<MessageBody>Test Body Processed by Agent: Agent-77</MessageBody>"));
+    assertTrue(soapString.contains("<LastModified>2024-11-04T08:00:00Z</LastModified>"));
+    assertEquals(soapMessageHandler.extractInnerXmlMessage(context.getSoapMessage())
+        .getMessageBody(), context.getInnerMessage().getMessageBody());
+  }
+
+  @Test
+  void testContextResolvesFirstFieldElements() throws SOAPException, IOException {
+    String soapMessageInString = new StringBuilder()
+        .append(SOAP_ENVELOPE_TAG)
+        .append(SOAP_HEADER_END_TAG)
+        .append(SOAP_BODY_TAG)
+        .append(MESSAGE_TAG)
+        .append(MESSAGE_ID)
+        .append(MESSAGE_TITLE)
+        .append(MESSAGE_BODY)
+        .append("<MessageBody>Duplicate Body</MessageBody>")
+        .append(CREATION_TIME)
+        .append(LAST_MODIFIED_TIME)
+        .append("<Extension><LastAgent>Nested Agent</LastAgent></Extension>")
+        .append(LAST_AGENT_ID)
+        .append(ACTIVE_STATUS)
+        .append(MESSAGE_END_TAG)
+        .append(SOAP_BODY_END_TAG)
+        .append(SOAP_ENVELOPE_END_TAG)
+        .toString();
+
+    // the first element of each name in document order, nested ones included
+    SoapMessageContext context = soapMessageHandler.parseContext(soapMessageInString);
+    assertEquals("Test Body", context.getMessageBodyElement().getTextContent());
+    assertEquals("Nested Agent", context.getLastAgentElement().getTextContent());
+
+    soapMessageHandler.applyUpdate(context, UPDATE);
+    String soapString = soapMessageHandler.toSoapString(context);
+    assertTrue(soapString.contains(
+        "<MessageBody>Test Body Processed by Agent: Agent-77</MessageBody>"
+            + "<MessageBody>Duplicate Body</MessageBody>"), soapString);
+    assertTrue(soapString.contains("<Extension><LastAgent>Agent-77</LastAgent></Extension>"
+        + LAST_AGENT_ID), soapString);
+  }
+
+  @Test
+  void testParseInnerMessageAndWrapInEnvelope() throws SOAPException, IOException {
+    String soapMessageInString = SOAP_ENVELOPE_TAG + SOAP_HEADER_END_TAG + SOAP_BODY_TAG
+        + MESSAGE_TAG + MESSAGE_ID + MESSAGE_TITLE + MESSAGE_BODY + CREATION_TIME
+        + LAST_MODIFIED_TIME + LAST_AGENT_ID + ACTIVE_STATUS + MESSAGE_END_TAG
+        + SOAP_BODY_END_TAG + SOAP_ENVELOPE_END_TAG;
+
+    XmlMessage innerMessage = soapMessageHandler.parseInnerMessage(soapMessageInString);
+    assertEquals(106, innerMessage.getMessageId());
+    assertEquals("Test Body", innerMessage.getMessageBody());
+
+    String envelope = soapMessageHandler.toSoapEnvelope(innerMessage);
+    assertTrue(envelope.contains(SECURITY_TOKEN));
+    XmlMessage rewrapped = soapMessageHandler.extractInnerXmlMessage(
+        soapMessageHandler.parse(envelope));
+    assertEquals(innerMessage.getMessageTitle(), rewrapped.getMessageTitle());
+    assertEquals(innerMessage.getLastModified(), rewrapped.getLastModified());
+  }
+
+  @Test
+  void testTransformBytesAndStreams() throws SOAPException, IOException {
+    byte[] soapMessageInBytes = (SOAP_ENVELOPE_TAG + SOAP_HEADER_END_TAG + SOAP_BODY_TAG
+        + MESSAGE_TAG + MESSAGE_ID + MESSAGE_TITLE + MESSAGE_BODY + CREATION_TIME
+        + LAST_MODIFIED_TIME + LAST_AGENT_ID + ACTIVE_STATUS + MESSAGE_END_TAG
+        + SOAP_BODY_END_TAG + SOAP_ENVELOPE_END_TAG).getBytes(StandardCharsets.UTF_8);
+
+    byte[] transformed = soapMessageHandler.transform(soapMessageInBytes, UPDATE);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    soapMessageHandler.transform(new ByteArrayInputStream(soapMessageInBytes), outputStream,
+        UPDATE);
+    assertArrayEquals(transformed, outputStream.toByteArray());
+
+    SoapMessageContext soapMessageContext = soapMessageHandler.parseContext(transformed);
+    assertEquals("Test Body Processed by Agent: Agent-77",
+        soapMessageContext.getInnerMessage().getMessageBody());
+    String reserialized = new String(soapMessageHandler.toSoapBytes(soapMessageContext),
+        StandardCharsets.UTF_8);
+    assertEquals(soapMessageHandler.toSoapString(soapMessageContext), reserialized);
+    assertTrue(reserialized.contains("<LastAgent>Agent-77</LastAgent>"));
+  }
+
+  @Test
+  void testTransformBytesFallsBackToSaajForFaults() {
+    byte[] faultMessage = (SOAP_ENVELOPE_TAG + SOAP_BODY_TAG
+        + "<soapenv:Fault><faultcode>soapenv:Server</faultcode><faultstring>Failure</faultstring>"
+        + "</soapenv:Fault>" + SOAP_BODY_END_TAG + SOAP_ENVELOPE_END_TAG)
+        .getBytes(StandardCharsets.UTF_8);
+    assertThrows(SOAPException.class, () -> soapMessageHandler.transform(faultMessage, UPDATE));
+  }
+}
@@ -1,11 +1,20 @@
 package com.sadramesbah.asynchronous_communicating_agents.handler;
 
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageUpdate;
 import com.sadramesbah.asynchronous_communicating_agents.message.XmlMessage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import jakarta.xml.bind.JAXBException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -16,6 +25,8 @@ class XmlMessageHandlerTest {
   private static final String MESSAGE_TITLE = "TestTitle";
   private static final String MESSAGE_BODY = "TestBody";
   private static final String LAST_AGENT_ID = "Agent-32";
+  private static final MessageUpdate UPDATE = new MessageUpdate("Agent-77",
+      " Processed by Agent: Agent-77", Timestamp.from(Instant.parse("2024-10-11T08:00:00Z")));
 
   @BeforeEach
   void setUp() throws JAXBException {
@@ -137,4 +148,173 @@ class XmlMessageHandlerTest {
     xmlMessageObject.setStatus(null);
     assertThrows(JAXBException.class, () -> xmlMessageHandler.toXmlString(xmlMessageObject));
   }
-}
\ No newline at end of file
+
+  @Test
+  void testConcurrentParseAndConvert() throws Exception {
+    int threads = 16;
+    int iterationsPerThread = 250;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int thread = 0; thread < threads; thread++) {
+        int threadIndex = thread;
+        results.add(executor.submit(() -> {
+          for (int iteration = 1; iteration <= iterationsPerThread; iteration++) {
+            int messageId = threadIndex * iterationsPerThread + iteration;
+            String body = "Body-" + messageId + "-" + "x".repeat(iteration % 64);
+            XmlMessage xmlMessageObject = new XmlMessage();
+            xmlMessageObject.setMessageId(messageId);
+            xmlMessageObject.setMessageTitle(MESSAGE_TITLE);
+            xmlMessageObject.setMessageBody(body);
+            xmlMessageObject.setCreationTime(Timestamp.from(Instant.now()));
+            xmlMessageObject.setLastModified(Timestamp.from(Instant.now()));
+            xmlMessageObject.setLastAgent("Agent-" + threadIndex);
+            xmlMessageObject.setStatus(ACTIVE_STATUS);
+
+            XmlMessage roundTrip = xmlMessageHandler.parse(
+                xmlMessageHandler.toXmlString(xmlMessageObject));
+            assertEquals(messageId, roundTrip.getMessageId());
+            assertEquals(body, roundTrip.getMessageBody());
+            assertEquals("Agent-" + threadIndex, roundTrip.getLastAgent());
+          }
+          return null;
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testTransformRewritesOnlyUpdatedFields() throws JAXBException {
+    String xmlInString =
+        "<?xml version=\"1.0\"?><Message><MessageID>14</MessageID>"
+            + "<MessageTitle>TestTitle</MessageTitle><MessageBody>TestBody</MessageBody>"
+            + "<ExtraField code=\"7\"><Nested>ExtraValue</Nested></ExtraField>"
+            + "<CreationTime>2024-10-10T10:25:00Z</CreationTime>"
+            + "<LastModified>2024-10-10T11:45:00Z</LastModified><LastAgent>Agent-32</LastAgent>"
+            + "<Status>Active</Status></Message>";
+    String transformed = xmlMessageHandler.transform(xmlInString, UPDATE);
+    assertTrue(transformed.contains(
+        "<MessageBody>TestBody Processed by Agent: Agent-77</MessageBody>"));
+    assertTrue(transformed.contains("<LastAgent>Agent-77</LastAgent>"));
+    assertTrue(transformed.contains("<LastModified>2024-10-11T08:00:00Z</LastModified>"));
+    assertTrue(transformed.contains(
+        "<ExtraField code=\"7\"><Nested>ExtraValue</Nested></ExtraField>"));
+    assertTrue(transformed.contains("<CreationTime>2024-10-10T10:25:00Z</CreationTime>"));
+
+    XmlMessage xmlMessageObject = xmlMessageHandler.parse(transformed);
+    assertEquals(14, xmlMessageObject.getMessageId());
+    assertEquals(UPDATE.lastModified(), xmlMessageObject.getLastModified());
+  }
+
+  @Test
+  void testTransformInvalidXml() {
+    String nullAgent =
+        "<Message><MessageID>14</MessageID><MessageTitle>TestTitle</MessageTitle>"
+            + "<MessageBody>TestBody</MessageBody><CreationTime>2024-10-10T10:25:00Z</CreationTime>"
+            + "<LastModified>2024-10-10T11:45:00Z</LastModified><LastAgent>null</LastAgent>"
+            + "<Status>Active</Status></Message>";
+    assertThrows(JAXBException.class, () -> xmlMessageHandler.transform(nullAgent, UPDATE));
+    assertThrows(JAXBException.class,
+        () -> xmlMessageHandler.transform("<Message></Message>", UPDATE));
+    assertThrows(JAXBException.class,
+        () -> xmlMessageHandler.transform("<Other><MessageID>14</MessageID></Other>", UPDATE));
+    assertThrows(JAXBException.class, () -> xmlMessageHandler.transform("", UPDATE));
+
+    // timestamps that TimestampAdapter cannot bind fail the streaming rewrite as well
+    String message = "<Message><MessageID>14</MessageID><MessageTitle>TestTitle</MessageTitle>"
+        + "<MessageBody>TestBody</MessageBody><CreationTime>%s</CreationTime>"
+        + "<LastModified>%s</LastModified><LastAgent>Agent-32</LastAgent>"
+        + "<Status>Active</Status></Message>";
+    for (String timestamp : new String[]{"garbage", "2024-10-10 10:25", "2024-10-10"}) {
+      String badCreationTime = message.formatted(timestamp, "2024-10-10T11:45:00Z");
+      String badLastModified = message.formatted("2024-10-10T10:25:00Z", timestamp);
+      assertThrows(JAXBException.class, () -> xmlMessageHandler.parse(badCreationTime));
+      assertThrows(JAXBException.class,
+          () -> xmlMessageHandler.transform(badCreationTime, UPDATE));
+      assertThrows(JAXBException.class,
+          () -> xmlMessageHandler.transform(badLastModified, UPDATE));
+    }
+  }
+
+  @Test
+  void testBytesAndStreams() throws JAXBException {
+    byte[] xmlInBytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<Message><MessageID>14</MessageID><MessageTitle>TestTitle</MessageTitle><MessageBody>TestBody \u00e9</MessageBody>"
+        + "<CreationTime>2024-10-10T10:25:00Z</CreationTime>"
+        + "<LastModified>2024-10-10T11:45:00Z</LastModified><LastAgent>Agent-32</LastAgent>"
+        + "<Status>Active</Status></Message>").getBytes(StandardCharsets.UTF_8);
+    XmlMessage xmlMessageObject = xmlMessageHandler.parse(xmlInBytes);
+    assertEquals("TestBody \u00e9", xmlMessageObject.getMessageBody());
+    assertEquals(xmlMessageObject.getMessageBody(), xmlMessageHandler.parse(
+        xmlMessageHandler.toXmlBytes(xmlMessageObject)).getMessageBody());
+
+    byte[] transformed = xmlMessageHandler.transform(xmlInBytes, UPDATE);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    xmlMessageHandler.transform(new ByteArrayInputStream(xmlInBytes), outputStream, UPDATE);
+    assertArrayEquals(transformed, outputStream.toByteArray());
+
+    XmlMessage transformedObject = xmlMessageHandler.parse(
+        new ByteArrayInputStream(transformed));
+    assertEquals("TestBody \u00e9 Processed by Agent: Agent-77",
+        transformedObject.getMessageBody());
+    assertEquals(UPDATE.lastModified(), transformedObject.getLastModified());
+  }
+
+  @Test
+  void testProcessingTrailIsAppendedToBodyOnSerialization() throws JAXBException {
+    String xmlInString =
+        "<Message><MessageID>14</MessageID><MessageTitle>TestTitle</MessageTitle>"
+            + "<MessageBody>TestBody</MessageBody><CreationTime>2024-10-10T10:25:00Z</CreationTime>"
+            + "<LastModified>2024-10-10T11:45:00Z</LastModified><LastAgent>Agent-32</LastAgent>"
+            + "<Status>Active</Status></Message>";
+    XmlMessage xmlMessageObject = xmlMessageHandler.parse(xmlInString);
+    StringBuilder expectedBody = new StringBuilder(MESSAGE_BODY);
+    for (int hop = 0; hop < 30; hop++) {
+      UPDATE.applyTo(xmlMessageObject);
+      expectedBody.append(UPDATE.bodySuffix());
+    }
+    assertEquals(30, xmlMessageObject.getProcessingTrail().getEntries().size());
+    assertEquals(expectedBody.toString(), xmlMessageObject.getMessageBody());
+    assertSame(xmlMessageObject.getMessageBody(), xmlMessageObject.getMessageBody());
+
+    String xmlOutput = xmlMessageHandler.toXmlString(xmlMessageObject);
+    assertTrue(xmlOutput.contains("<MessageBody>" + expectedBody + "</MessageBody>"));
+    assertFalse(xmlOutput.contains("ProcessingTrail"));
+
+    xmlMessageObject.setMessageBody("Replaced");
+    assertTrue(xmlMessageObject.getProcessingTrail().isEmpty());
+    assertEquals("Replaced", xmlMessageObject.getMessageBody());
+  }
+
+  @Test
+  void testSeparateProcessingTrailRoundTrip() throws JAXBException {
+    String xmlInString =
+        "<Message><MessageID>14</MessageID><MessageTitle>TestTitle</MessageTitle>"
+            + "<MessageBody>TestBody</MessageBody><CreationTime>2024-10-10T10:25:00Z</CreationTime>"
+            + "<LastModified>2024-10-10T11:45:00Z</LastModified><LastAgent>Agent-32</LastAgent>"
+            + "<Status>Active</Status></Message>";
+    XmlMessage xmlMessageObject = xmlMessageHandler.parse(xmlInString);
+    xmlMessageObject.getProcessingTrail().setSeparate(true);
+    UPDATE.applyTo(xmlMessageObject);
+    assertEquals(MESSAGE_BODY, xmlMessageObject.getMessageBody());
+
+    String xmlOutput = xmlMessageHandler.toXmlString(xmlMessageObject);
+    assertTrue(xmlOutput.contains("<MessageBody>TestBody</MessageBody>"));
+    assertTrue(xmlOutput.contains("<Entry Agent=\"Agent-77\" ProcessedAt=\"2024-10-11T08:00:00Z\">"
+        + " Processed by Agent: Agent-77</Entry>"));
+
+    XmlMessage parsedMessage = xmlMessageHandler.parse(xmlOutput);
+    assertTrue(parsedMessage.getProcessingTrail().isSeparate());
+    assertEquals(MESSAGE_BODY, parsedMessage.getMessageBody());
+    assertEquals("Agent-77", parsedMessage.getProcessingTrail().getEntries().get(0).getAgentId());
+    UPDATE.applyTo(parsedMessage);
+    assertEquals(2, parsedMessage.getProcessingTrail().getEntries().size());
+    assertEquals(MESSAGE_BODY + UPDATE.bodySuffix() + UPDATE.bodySuffix(),
+        parsedMessage.getProcessingTrail().appendTo(parsedMessage.getMessageBody()));
+  }
+}
@@ -3,6 +3,9 @@ package com.sadramesbah.asynchronous_communicating_agents.kafka;
 import java.util.stream.Collectors;
 import org.apache.kafka.clients.admin.*;
 import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,10 +14,16 @@ import org.springframework.kafka.test.EmbeddedKafkaBroker;
 import org.springframework.kafka.test.context.EmbeddedKafka;
 import org.springframework.kafka.test.utils.KafkaTestUtils;
 import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.OptionalInt;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -159,4 +168,193 @@ class KafkaManagerTest {
       kafkaManager.addPartitionsToTopic(topicName, 3);
     });
   }
-}
\ No newline at end of file
+
+  @Test
+  void testAsyncTopicLifecycle() {
+    String topicName = "async-topic1";
+    assertTrue(kafkaManager.createTopicAsync(topicName, 1, (short) 1).join());
+    assertTrue(kafkaManager.topicExistsAsync(topicName).join());
+    kafkaManager.addPartitionsToTopicAsync(topicName, 2).join();
+    kafkaManager.updateTopicConfigAsync(topicName, Map.of("retention.ms", "1000")).join();
+    TopicDescription description = kafkaManager.describeTopicAsync(topicName).join();
+    assertEquals(2, description.partitions().size());
+    assertTrue(kafkaManager.deleteTopicAsync(topicName).join());
+  }
+
+  @Test
+  void testCreateTopicsConcurrentlyAsync() {
+    Set<String> topicNames = Set.of("async-topic2", "async-topic3", "async-topic4");
+    CompletableFuture.allOf(topicNames.stream()
+        .map(topicName -> kafkaManager.createTopicAsync(topicName, 1, (short) 1))
+        .toArray(CompletableFuture[]::new)).join();
+    assertTrue(kafkaManager.listTopicsAsync().join().containsAll(topicNames));
+  }
+
+  @Test
+  void testCreateExistingTopicAsync() {
+    String topicName = "async-topic5";
+    assertTrue(kafkaManager.createTopicAsync(topicName, 1, (short) 1).join());
+    assertFalse(kafkaManager.createTopicAsync(topicName, 1, (short) 1).join());
+  }
+
+  @Test
+  void testNonExistingTopicAsync() {
+    String topicName = "non-existing-topic5";
+    assertFalse(kafkaManager.topicExistsAsync(topicName).join());
+    assertFalse(kafkaManager.deleteTopicAsync(topicName).join());
+    assertNull(kafkaManager.describeTopicAsync(topicName).join());
+    CompletionException exception = assertThrows(CompletionException.class,
+        () -> kafkaManager.addPartitionsToTopicAsync(topicName, 3).join());
+    assertTrue(exception.getCause() instanceof UnknownTopicOrPartitionException);
+  }
+
+  @Test
+  void testBulkTopicOperations() {
+    List<NewTopic> newTopics = List.of(new NewTopic("bulk-topic1", 1, (short) 1),
+        new NewTopic("bulk-topic2", 1, (short) 1), new NewTopic("bulk-topic3", 1, (short) 1));
+    Map<String, TopicOperationResult> created = kafkaManager.createTopics(newTopics);
+    assertEquals(3, created.size());
+    assertTrue(created.values().stream().allMatch(TopicOperationResult::isSuccessful));
+
+    Map<String, TopicOperationResult> partitioned = kafkaManager.addPartitionsToTopics(
+        Map.of("bulk-topic1", 2, "bulk-topic2", 3));
+    assertTrue(partitioned.values().stream().allMatch(TopicOperationResult::isSuccessful));
+    assertEquals(3, kafkaManager.describeTopic("bulk-topic2").partitions().size());
+
+    Map<String, TopicOperationResult> updated = kafkaManager.updateTopicConfigs(
+        Map.of("bulk-topic1", Map.of("retention.ms", "1000"),
+            "bulk-topic3", Map.of("retention.ms", "2000")));
+    assertTrue(updated.values().stream().allMatch(TopicOperationResult::isSuccessful));
+
+    Map<String, TopicOperationResult> deleted = kafkaManager.deleteTopics(
+        List.of("bulk-topic1", "bulk-topic2", "bulk-topic3"));
+    assertTrue(deleted.values().stream().allMatch(TopicOperationResult::isSuccessful));
+  }
+
+  @Test
+  void testBulkOperationsReportPerTopicFailures() {
+    kafkaManager.createTopic("bulk-topic4", 1, (short) 1);
+    Map<String, TopicOperationResult> created = kafkaManager.createTopics(
+        List.of(new NewTopic("bulk-topic4", 1, (short) 1),
+            new NewTopic("bulk-topic5", 1, (short) 1)));
+    assertTrue(created.get("bulk-topic4").error() instanceof TopicExistsException);
+    assertTrue(created.get("bulk-topic5").isSuccessful());
+
+    Map<String, TopicOperationResult> deleted = kafkaManager.deleteTopics(
+        List.of("bulk-topic5", "non-existing-topic6"));
+    assertTrue(deleted.get("bulk-topic5").isSuccessful());
+    assertFalse(deleted.get("non-existing-topic6").isSuccessful());
+  }
+
+  @Test
+  void testBlockingBulkOperationsReportRequestFailures() {
+    KafkaManager failingManager = new KafkaManager(embeddedKafkaBroker.getBrokersAsString()) {
+      @Override
+      public CompletableFuture<Map<String, TopicOperationResult>> deleteTopicsAsync(
+          Collection<String> topicNames) {
+        return CompletableFuture.failedFuture(
+            new TimeoutException("Admin request timed out"));
+      }
+    };
+    try {
+      Map<String, TopicOperationResult> deleted = failingManager.deleteTopics(
+          List.of("bulk-topic7", "bulk-topic8"));
+      assertEquals(Set.of("bulk-topic7", "bulk-topic8"), deleted.keySet());
+      assertTrue(deleted.values().stream().allMatch(result -> result.error()
+          instanceof TimeoutException));
+    } finally {
+      failingManager.closeAdminClient();
+    }
+  }
+
+  @Test
+  void testBlockingBulkOperationsKeepInterrupts() {
+    KafkaManager hangingManager = new KafkaManager(embeddedKafkaBroker.getBrokersAsString()) {
+      @Override
+      public CompletableFuture<Map<String, TopicOperationResult>> deleteTopicsAsync(
+          Collection<String> topicNames) {
+        return new CompletableFuture<>();
+      }
+    };
+    try {
+      Thread.currentThread().interrupt();
+      Map<String, TopicOperationResult> deleted = hangingManager.deleteTopics(
+          List.of("bulk-topic9"));
+      assertTrue(Thread.interrupted());
+      assertTrue(deleted.get("bulk-topic9").error() instanceof InterruptedException);
+    } finally {
+      hangingManager.closeAdminClient();
+    }
+  }
+
+  @Test
+  void testAsyncStagesLeaveTheNetworkThread() {
+    // the AdminClient completes its futures on its network thread, named after the client
+    String threadName = kafkaManager.listTopicsAsync()
+        .thenApply(topics -> Thread.currentThread().getName())
+        .join();
+    assertFalse(threadName.startsWith("kafka-admin-client-thread"), threadName);
+    assertFalse(kafkaManager.describeTopicAsync("non-existing-topic7")
+        .thenApply(description -> Thread.currentThread().getName())
+        .join().startsWith("kafka-admin-client-thread"));
+  }
+
+  @Test
+  void testTopicCacheFollowsChanges() {
+    String topicName = "cached-topic1";
+    assertFalse(kafkaManager.topicExists(topicName));
+    kafkaManager.createTopic(topicName, 1, (short) 1);
+    assertTrue(kafkaManager.topicExists(topicName));
+    kafkaManager.addPartitionsToTopic(topicName, 2);
+    assertEquals(OptionalInt.of(2), kafkaManager.getPartitionCount(topicName));
+    kafkaManager.deleteTopic(topicName);
+    assertFalse(kafkaManager.topicExists(topicName));
+  }
+
+  @Test
+  void testTopicCacheInvalidation() throws ExecutionException, InterruptedException {
+    String topicName = "cached-topic2";
+    assertFalse(kafkaManager.topicExists(topicName));
+    adminClient.createTopics(Collections.singleton(new NewTopic(topicName, 1, (short) 1))).all()
+        .get();
+    kafkaManager.invalidateTopicCache().get();
+    assertTrue(kafkaManager.topicExists(topicName));
+    assertEquals(OptionalInt.of(1), kafkaManager.getPartitionCount(topicName));
+  }
+
+  @Test
+  void testTopicCacheKeepsSnapshotWhenDescribeFails() {
+    AtomicReference<RuntimeException> describeFailure = new AtomicReference<>();
+    KafkaManager failingManager = new KafkaManager(embeddedKafkaBroker.getBrokersAsString()) {
+      @Override
+      Map<String, CompletableFuture<TopicDescription>> describeTopicsForCache(
+          Collection<String> topicNames) {
+        Map<String, CompletableFuture<TopicDescription>> descriptions =
+            super.describeTopicsForCache(topicNames);
+        RuntimeException failure = describeFailure.get();
+        if (failure != null) {
+          descriptions.put("test-topic", CompletableFuture.failedFuture(failure));
+        }
+        return descriptions;
+      }
+    };
+    try {
+      assertTrue(failingManager.topicExists("test-topic"));
+
+      // a timeout fails the reload, and the last snapshot keeps being served
+      describeFailure.set(new TimeoutException("Describe timed out"));
+      CompletionException reloadFailure = assertThrows(CompletionException.class,
+          () -> failingManager.invalidateTopicCache().join());
+      assertTrue(reloadFailure.getCause() instanceof TimeoutException);
+      assertTrue(failingManager.topicExists("test-topic"));
+      assertEquals(OptionalInt.of(1), failingManager.getPartitionCount("test-topic"));
+
+      // a topic deleted between listing and describing it is left out of the snapshot
+      describeFailure.set(new UnknownTopicOrPartitionException("Topic deleted"));
+      failingManager.invalidateTopicCache().join();
+      assertFalse(failingManager.topicExists("test-topic"));
+    } finally {
+      failingManager.closeAdminClient();
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package com.sadramesbah.asynchronous_communicating_agents.kafka;
+
+import com.sadramesbah.asynchronous_communicating_agents.agent.MessagingAgent;
+import com.sadramesbah.asynchronous_communicating_agents.message.MessageType;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.Acknowledgment;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MessagingAgentPipelineTest {
+
+  private static final String INPUT_TOPIC = "agent-input";
+  private static final String OUTPUT_TOPIC = "agent-output";
+  private static final String AGENT_ID = "Agent-501";
+
+  private KafkaTemplate<String, byte[]> kafkaTemplate;
+  private Acknowledgment acknowledgment;
+  private MessagingAgentPipeline pipeline;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() throws Exception {
+    kafkaTemplate = mock(KafkaTemplate.class);
+    acknowledgment = mock(Acknowledgment.class);
+    pipeline = new MessagingAgentPipeline(new MessagingAgent(AGENT_ID), OUTPUT_TOPIC,
+        MessageType.JSON, kafkaTemplate, Executors.newFixedThreadPool(4));
+  }
+
+  @AfterEach
+  void shutdown() {
+    pipeline.close();
+  }
+
+  @Test
+  void testBatchIsProducedThenAcknowledged() {
+    when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class))).thenReturn(
+        CompletableFuture.completedFuture(null));
+    List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+    for (int offset = 0; offset < 20; offset++) {
+      records.add(new ConsumerRecord<>(INPUT_TOPIC, offset % 4, offset, "key-" + (offset % 4),
+          jsonMessage(offset + 1)));
+    }
+
+    pipeline.onBatch(records, acknowledgment);
+
+    ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> values = ArgumentCaptor.forClass(byte[].class);
+    verify(kafkaTemplate, times(20)).send(eq(OUTPUT_TOPIC), keys.capture(), values.capture());
+    verify(acknowledgment).acknowledge();
+    assertTrue(values.getAllValues().stream()
+        .map(value -> new String(value, StandardCharsets.UTF_8))
+        .allMatch(value -> value.contains("\"LastAgent\":\"" + AGENT_ID + "\"")));
+
+    // records sharing a key must be produced in their original offset order
+    List<Integer> key1MessageIds = new ArrayList<>();
+    for (int index = 0; index < keys.getAllValues().size(); index++) {
+      if ("key-1".equals(keys.getAllValues().get(index))) {
+        String value = new String(values.getAllValues().get(index), StandardCharsets.UTF_8);
+        key1MessageIds.add(Integer.parseInt(
+            value.substring(value.indexOf(':') + 1, value.indexOf(','))));
+      }
+    }
+    assertEquals(List.of(2, 6, 10, 14, 18), key1MessageIds);
+  }
+
+  @Test
+  void testBatchIsNotAcknowledgedWhenProduceFails() {
+    when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class))).thenReturn(
+        CompletableFuture.failedFuture(new IllegalStateException("Broker unavailable")));
+    List<ConsumerRecord<String, byte[]>> records = List.of(
+        new ConsumerRecord<>(INPUT_TOPIC, 0, 0, "key-0", jsonMessage(1)));
+
+    assertThrows(CompletionException.class, () -> pipeline.onBatch(records, acknowledgment));
+    verify(acknowledgment, never()).acknowledge();
+  }
+
+  @Test
+  void testInvalidRecordFailsBatchAtItsIndex() {
+    when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class))).thenReturn(
+        CompletableFuture.completedFuture(null));
+    byte[] invalidMessage = "{\"MessageID\":3}".getBytes(StandardCharsets.UTF_8);
+    List<ConsumerRecord<String, byte[]>> records = List.of(
+        new ConsumerRecord<>(INPUT_TOPIC, 0, 0, "key-0", jsonMessage(1)),
+        new ConsumerRecord<>(INPUT_TOPIC, 0, 1, "key-0", jsonMessage(2)),
+        new ConsumerRecord<>(INPUT_TOPIC, 0, 2, "key-0", invalidMessage),
+        new ConsumerRecord<>(INPUT_TOPIC, 0, 3, "key-0", jsonMessage(4)),
+        new ConsumerRecord<>(INPUT_TOPIC, 1, 0, "key-1", jsonMessage(5)),
+        new ConsumerRecord<>(INPUT_TOPIC, 1, 1, "key-1", invalidMessage));
+
+    BatchListenerFailedException failure = assertThrows(BatchListenerFailedException.class,
+        () -> pipeline.onBatch(records, acknowledgment));
+    // the earliest failed record of the batch, so only the records from it on are redelivered
+    assertEquals(2, failure.getIndex());
+    // the records before the failed one are produced, the partition stops at the failed record
+    verify(kafkaTemplate, times(3)).send(anyString(), anyString(), any(byte[].class));
+    verify(kafkaTemplate, never()).send(eq(OUTPUT_TOPIC), eq("key-0"), eq(records.get(3).value()));
+    verify(acknowledgment, never()).acknowledge();
+  }
+
+  @Test
+  void testMessageTypeIsReadFromHeader() {
+    when(kafkaTemplate.send(anyString(), anyString(), any(byte[].class))).thenReturn(
+        CompletableFuture.completedFuture(null));
+    ConsumerRecord<String, byte[]> xmlRecord = new ConsumerRecord<>(INPUT_TOPIC, 0, 0, "key-0",
+        ("<Message><MessageID>7</MessageID><MessageTitle>Title</MessageTitle>"
+            + "<MessageBody>Body</MessageBody><CreationTime>2024-12-20T10:25:00Z</CreationTime>"
+            + "<LastModified>2024-12-20T11:45:00Z</LastModified><LastAgent>Agent-1</LastAgent>"
+            + "<Status>Active</Status></Message>").getBytes(StandardCharsets.UTF_8));
+    xmlRecord.headers().add(MessagingAgentPipeline.MESSAGE_TYPE_HEADER,
+        MessageType.XML.name().getBytes(StandardCharsets.UTF_8));
+
+    pipeline.onBatch(List.of(xmlRecord), acknowledgment);
+
+    ArgumentCaptor<byte[]> values = ArgumentCaptor.forClass(byte[].class);
+    verify(kafkaTemplate).send(eq(OUTPUT_TOPIC), eq("key-0"), values.capture());
+    assertTrue(new String(values.getValue(), StandardCharsets.UTF_8)
+        .contains("<LastAgent>" + AGENT_ID + "</LastAgent>"));
+  }
+
+  private static byte[] jsonMessage(int messageId) {
+    return ("{\"MessageID\":" + messageId + ",\"MessageTitle\":\"Title\",\"MessageBody\":\"Body\","
+        + "\"CreationTime\":\"2024-12-20T11:25:00Z\",\"LastModified\":\"2024-12-20T11:50:00Z\","
+        + "\"LastAgent\":\"Agent-1\",\"Status\":\"Active\"}").getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,131 @@
+package com.sadramesbah.asynchronous_communicating_agents.kafka;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopicMetadataCacheTest {
+
+  private final AtomicLong nanoTime = new AtomicLong();
+  private final AtomicInteger loads = new AtomicInteger();
+  private volatile Map<String, Integer> brokerTopics;
+  private volatile CompletableFuture<Map<String, Integer>> nextLoad;
+  private TopicMetadataCache topicCache;
+
+  @BeforeEach
+  void setUp() {
+    brokerTopics = Map.of("topic1", 1, "topic2", 3);
+    topicCache = new TopicMetadataCache(() -> {
+      loads.incrementAndGet();
+      return CompletableFuture.completedFuture(brokerTopics);
+    }, Duration.ofSeconds(10), nanoTime::get);
+  }
+
+  @Test
+  void testLookupsAreServedFromMemoryWithinTtl() {
+    assertTrue(topicCache.contains("topic1"));
+    assertEquals(OptionalInt.of(3), topicCache.partitionCount("topic2"));
+    assertFalse(topicCache.contains("topic3"));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void testExpiredSnapshotIsReloaded() {
+    topicCache.contains("topic1");
+    brokerTopics = Map.of("topic3", 2);
+    nanoTime.addAndGet(Duration.ofSeconds(11).toNanos());
+    topicCache.contains("topic1");
+    assertEquals(2, loads.get());
+    assertTrue(topicCache.contains("topic3"));
+    assertFalse(topicCache.contains("topic1"));
+  }
+
+  @Test
+  void testLocalUpdatesAreVisibleWithoutReload() {
+    topicCache.contains("topic1");
+    topicCache.recordPartitions(Map.of("topic3", 4));
+    topicCache.recordDeleted(List.of("topic1"));
+    assertEquals(OptionalInt.of(4), topicCache.partitionCount("topic3"));
+    assertFalse(topicCache.contains("topic1"));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void testInvalidateForcesReload() {
+    topicCache.contains("topic1");
+    brokerTopics = Map.of("topic4", 1);
+    topicCache.invalidate();
+    assertTrue(topicCache.contains("topic4"));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void testConcurrentFirstLookupsShareOneLoad() throws InterruptedException {
+    CompletableFuture<Map<String, Integer>> pending = new CompletableFuture<>();
+    topicCache = pendingCache(pending);
+    CountDownLatch started = new CountDownLatch(8);
+    List<Thread> threads = new ArrayList<>();
+    AtomicInteger found = new AtomicInteger();
+    for (int thread = 0; thread < 8; thread++) {
+      threads.add(Thread.ofVirtual().start(() -> {
+        started.countDown();
+        if (topicCache.contains("topic1")) {
+          found.incrementAndGet();
+        }
+      }));
+    }
+    started.await();
+    pending.complete(brokerTopics);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(8, found.get());
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void testInvalidatedSnapshotIsServedWhileReloading() {
+    topicCache.contains("topic1");
+    CompletableFuture<Map<String, Integer>> pending = new CompletableFuture<>();
+    Map<String, Integer> firstSnapshot = brokerTopics;
+    topicCache = pendingCache(pending);
+    pending.complete(firstSnapshot);
+    topicCache.contains("topic1");
+
+    CompletableFuture<Map<String, Integer>> reload = new CompletableFuture<>();
+    nextLoad = reload;
+    CompletableFuture<Void> reloaded = topicCache.invalidate();
+    // lookups answer from the old snapshot and start no further reload
+    assertTrue(topicCache.contains("topic1"));
+    assertTrue(topicCache.contains("topic2"));
+    assertEquals(3, loads.get());
+    assertFalse(reloaded.isDone());
+
+    reload.complete(Map.of("topic4", 1));
+    assertTrue(reloaded.isDone());
+    assertTrue(topicCache.contains("topic4"));
+    assertFalse(topicCache.contains("topic1"));
+    assertEquals(3, loads.get());
+  }
+
+  // a cache whose loads return the given future first and nextLoad afterwards
+  private TopicMetadataCache pendingCache(CompletableFuture<Map<String, Integer>> firstLoad) {
+    nextLoad = firstLoad;
+    return new TopicMetadataCache(() -> {
+      loads.incrementAndGet();
+      return nextLoad;
+    }, Duration.ofSeconds(10), nanoTime::get);
+  }
+}
@@ -0,0 +1,81 @@
+package com.sadramesbah.asynchronous_communicating_agents.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitingTurboFilterTest {
+
+  private static final String HANDLER_LOGGER =
+      "com.sadramesbah.asynchronous_communicating_agents.handler";
+
+  @Test
+  void testLimitsEventsPerSecond() {
+    AtomicLong nanoTime = new AtomicLong();
+    RateLimitingTurboFilter filter = new RateLimitingTurboFilter(nanoTime::get);
+    filter.setLoggerName(HANDLER_LOGGER);
+    filter.setLevel("INFO");
+    filter.setEventsPerSecond(3);
+    filter.start();
+    LoggerContext context = new LoggerContext();
+    Logger handlerLogger = context.getLogger(HANDLER_LOGGER + ".JsonMessageHandler");
+    handlerLogger.setLevel(Level.DEBUG);
+
+    for (int event = 0; event < 2; event++) {
+      assertEquals(FilterReply.NEUTRAL, decide(filter, handlerLogger, Level.DEBUG));
+    }
+    assertEquals(FilterReply.NEUTRAL, decide(filter, handlerLogger, Level.INFO));
+    assertEquals(FilterReply.DENY, decide(filter, handlerLogger, Level.DEBUG));
+    assertEquals(FilterReply.DENY, decide(filter, handlerLogger, Level.INFO));
+    // other loggers and isEnabled checks are not limited
+    assertEquals(FilterReply.NEUTRAL,
+        decide(filter, context.getLogger(HANDLER_LOGGER + "s.Other"), Level.INFO));
+    assertEquals(FilterReply.NEUTRAL,
+        filter.decide(null, handlerLogger, Level.DEBUG, null, null, null));
+
+    nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertEquals(FilterReply.NEUTRAL, decide(filter, handlerLogger, Level.DEBUG));
+  }
+
+  @Test
+  void testNeverLimitsFailures() {
+    RateLimitingTurboFilter filter = new RateLimitingTurboFilter(() -> 0);
+    filter.setLoggerName(HANDLER_LOGGER);
+    filter.setLevel("ERROR");
+    filter.setEventsPerSecond(1);
+    filter.start();
+    Logger handlerLogger = new LoggerContext().getLogger(HANDLER_LOGGER + ".XmlMessageHandler");
+
+    for (int event = 0; event < 100; event++) {
+      assertEquals(FilterReply.NEUTRAL, decide(filter, handlerLogger, Level.WARN));
+      assertEquals(FilterReply.NEUTRAL, decide(filter, handlerLogger, Level.ERROR));
+    }
+  }
+
+  @Test
+  void testDisabledEventsDoNotUseUpTheBudget() {
+    RateLimitingTurboFilter filter = new RateLimitingTurboFilter(() -> 0);
+    filter.setLoggerName(HANDLER_LOGGER);
+    filter.setEventsPerSecond(1);
+    filter.start();
+    Logger handlerLogger = new LoggerContext().getLogger(HANDLER_LOGGER + ".SoapMessageHandler");
+    handlerLogger.setLevel(Level.INFO);
+
+    for (int event = 0; event < 100; event++) {
+      assertEquals(FilterReply.NEUTRAL, decide(filter, handlerLogger, Level.DEBUG));
+    }
+    assertEquals(FilterReply.NEUTRAL, decide(filter, handlerLogger, Level.INFO));
+    assertEquals(FilterReply.DENY, decide(filter, handlerLogger, Level.INFO));
+  }
+
+  private static FilterReply decide(RateLimitingTurboFilter filter, Logger logger, Level level) {
+    return filter.decide(null, logger, level, "Invalid message. MessageID: {}",
+        new Object[]{14}, null);
+  }
+}